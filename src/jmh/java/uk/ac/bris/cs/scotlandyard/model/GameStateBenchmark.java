@@ -0,0 +1,116 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.Move.DoubleMove;
+import uk.ac.bris.cs.scotlandyard.model.Move.SingleMove;
+
+/**
+ * Game state hot paths. Game states memoise their moves, so the move generation benchmarks build
+ * a fresh state first; subtract {@link #build()} or {@link #advanceSingle()} from them to get the
+ * cost of move generation alone.
+ * <br>
+ * Positions are seeded with {@link ScotlandYard#generateMrXLocation(int)} and
+ * {@link ScotlandYard#generateDetectiveLocations(int, int)}; the mid-game position follows
+ * {@link #MID_GAME_MOVES} moves picked by a {@link Random} with the same seed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameStateBenchmark {
+
+	static final int MID_GAME_MOVES = 30;
+
+	@Param({"my", "bitboard"}) public String factory;
+	@Param({"0", "1", "2"}) public int seed;
+
+	private ScotlandYard.Factory<GameState> stateFactory;
+	private GameSetup setup;
+	private Player mrX;
+	private ImmutableList<Player> detectives;
+	private GameState opening;
+	private SingleMove openingSingle;
+	private DoubleMove openingDouble;
+	private GameState beforeMidGame;
+	private Move lastMove;
+	private GameState midGame;
+
+	static ImmutableList<Move> sorted(GameState state) {
+		return state.getAvailableMoves().stream()
+				.sorted(Comparator.comparing(Object::toString))
+				.collect(ImmutableList.toImmutableList());
+	}
+
+	@Setup public void setUp() throws IOException {
+		stateFactory = factory.equals("bitboard") ? new BitboardGameStateFactory() : new MyGameStateFactory();
+		setup = new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES);
+		mrX = new Player(Piece.MrX.MRX, ScotlandYard.defaultMrXTickets(),
+				ScotlandYard.generateMrXLocation(seed));
+		var locations = ScotlandYard.generateDetectiveLocations(seed, 5);
+		var builder = ImmutableList.<Player>builder();
+		for (int i = 0; i < locations.size(); i++) {
+			builder.add(new Player(ScotlandYard.DETECTIVES.asList().get(i),
+					ScotlandYard.defaultDetectiveTickets(), locations.get(i)));
+		}
+		detectives = builder.build();
+		opening = stateFactory.build(setup, mrX, detectives);
+		var moves = sorted(opening);
+		openingSingle = (SingleMove) moves.stream().filter(m -> m instanceof SingleMove)
+				.findFirst().orElseThrow();
+		openingDouble = (DoubleMove) moves.stream().filter(m -> m instanceof DoubleMove)
+				.findFirst().orElseThrow();
+
+		var random = new Random(seed);
+		GameState state = opening;
+		GameState previous = opening;
+		Move move = null;
+		for (int i = 0; i < MID_GAME_MOVES && state.getWinner().isEmpty(); i++) {
+			var available = sorted(state);
+			previous = state;
+			move = available.get(random.nextInt(available.size()));
+			state = state.advance(move);
+		}
+		if (move == null || !state.getWinner().isEmpty())
+			throw new IllegalStateException("Seed " + seed + " does not reach the mid-game");
+		beforeMidGame = previous;
+		lastMove = move;
+		midGame = state;
+	}
+
+	@Benchmark public GameState build() { return stateFactory.build(setup, mrX, detectives); }
+
+	@Benchmark public Object openingMoves() {
+		return stateFactory.build(setup, mrX, detectives).getAvailableMoves();
+	}
+
+	@Benchmark public Object midGameMoves() {
+		return beforeMidGame.advance(lastMove).getAvailableMoves();
+	}
+
+	@Benchmark public GameState advanceSingle() { return opening.advance(openingSingle); }
+
+	@Benchmark public GameState advanceDouble() { return opening.advance(openingDouble); }
+
+	@Benchmark public ImmutableBoard immutableBoard() { return new ImmutableBoard(midGame); }
+}
@@ -0,0 +1,375 @@
+package uk.ac.bris.cs.scotlandyard;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import javax.annotation.Nonnull;
+
+import io.atlassian.fugue.Pair;
+import uk.ac.bris.cs.scotlandyard.model.Ai;
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.BitboardGameStateFactory;
+import uk.ac.bris.cs.scotlandyard.model.Deadline;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.Model;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.MyGameStateFactory;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+
+import static java.lang.String.format;
+
+/**
+ * Plays many games between two {@link Ai}s without a display and writes the results as CSV.
+ * <br>
+ * Games run in parallel on a fixed size pool. Every game gets fresh Ai instances and uses
+ * {@link ScotlandYard#generateMrXLocation(int)} and
+ * {@link ScotlandYard#generateDetectiveLocations(int, int)} with the game's seed. Each
+ * {@link Ai#pickMove} call gets the configured timeout pair and a {@link Deadline} that is
+ * cancelled if it runs over; an Ai that runs over, throws or returns an illegal move loses the
+ * game, like in the UI.
+ * <br>
+ * Usage: {@code BatchRunner <mrX ai> <detectives ai> [--games N] [--threads N] [--timeout seconds]
+ * [--seed N] [--detectives N] [--bitboard] [--out file.csv]}. Ais are matched by
+ * {@link Ai#name()}, simple class name or class name among {@link ResourceManager#scanAiClasses()}.
+ */
+public final class BatchRunner {
+
+	/**
+	 * How a game ended
+	 */
+	public enum Outcome {MRX, DETECTIVES, MRX_TIMEOUT, DETECTIVES_TIMEOUT, MRX_ERROR, DETECTIVES_ERROR, ERROR}
+
+	/**
+	 * The result of one game
+	 */
+	public static final class Result {
+		public final int game;
+		public final long seed;
+		public final String mrXAi;
+		public final String detectivesAi;
+		public final Outcome outcome;
+		public final ImmutableSet<Piece> winner;
+		public final int rounds;
+		public final int mrXMoves;
+		public final long mrXNanos;
+		public final long mrXMaxNanos;
+		public final int detectiveMoves;
+		public final long detectiveNanos;
+		public final long detectiveMaxNanos;
+		public final String message;
+
+		private Result(int game, long seed, String mrXAi, String detectivesAi, Outcome outcome,
+		               ImmutableSet<Piece> winner, int rounds, long[] times, String message) {
+			this.game = game;
+			this.seed = seed;
+			this.mrXAi = mrXAi;
+			this.detectivesAi = detectivesAi;
+			this.outcome = outcome;
+			this.winner = winner;
+			this.rounds = rounds;
+			this.mrXMoves = (int) times[0];
+			this.mrXNanos = times[1];
+			this.mrXMaxNanos = times[2];
+			this.detectiveMoves = (int) times[3];
+			this.detectiveNanos = times[4];
+			this.detectiveMaxNanos = times[5];
+			this.message = message;
+		}
+
+		/**
+		 * @return true if MrX won, including by the detectives' Ai failing
+		 */
+		public boolean mrXWon() {
+			return outcome == Outcome.MRX || outcome == Outcome.DETECTIVES_TIMEOUT
+					|| outcome == Outcome.DETECTIVES_ERROR;
+		}
+
+		/**
+		 * @return true if the detectives won, including by MrX's Ai failing
+		 */
+		public boolean detectivesWon() {
+			return outcome == Outcome.DETECTIVES || outcome == Outcome.MRX_TIMEOUT
+					|| outcome == Outcome.MRX_ERROR;
+		}
+
+		@Override public String toString() {
+			return format("Game %d (seed %d): %s after %d rounds", game, seed, outcome, rounds);
+		}
+	}
+
+	static final String CSV_HEADER = "game,seed,mrx_ai,detectives_ai,outcome,winner,rounds,"
+			+ "mrx_moves,mrx_mean_ms,mrx_max_ms,detective_moves,detective_mean_ms,detective_max_ms,message";
+
+	private final Supplier<? extends Ai> mrXAi;
+	private final Supplier<? extends Ai> detectivesAi;
+	private final ScotlandYard.Factory<GameState> factory;
+	private final GameSetup setup;
+	private final int detectives;
+	private final Pair<Long, TimeUnit> timeout;
+	private final int threads;
+
+	/**
+	 * @param mrXAi supplies a fresh Ai for MrX in every game
+	 * @param detectivesAi supplies a fresh Ai for the detectives in every game
+	 * @param factory the game state factory
+	 * @param setup the game setup
+	 * @param detectives the number of detectives, between 1 and 5
+	 * @param timeout the time each Ai has per move
+	 * @param threads the number of games to play at once
+	 */
+	public BatchRunner(@Nonnull Supplier<? extends Ai> mrXAi,
+	                   @Nonnull Supplier<? extends Ai> detectivesAi,
+	                   @Nonnull ScotlandYard.Factory<GameState> factory,
+	                   @Nonnull GameSetup setup,
+	                   int detectives,
+	                   @Nonnull Duration timeout,
+	                   int threads) {
+		this.mrXAi = Objects.requireNonNull(mrXAi);
+		this.detectivesAi = Objects.requireNonNull(detectivesAi);
+		this.factory = Objects.requireNonNull(factory);
+		this.setup = Objects.requireNonNull(setup);
+		if (detectives < 1 || detectives > ScotlandYard.DETECTIVES.size())
+			throw new IllegalArgumentException("Detective count out of range: " + detectives);
+		if (timeout.isNegative() || timeout.isZero())
+			throw new IllegalArgumentException("Timeout must be positive: " + timeout);
+		if (threads < 1) throw new IllegalArgumentException("Need at least one thread");
+		this.detectives = detectives;
+		this.timeout = new Pair<>(timeout.toMillis(), TimeUnit.MILLISECONDS);
+		this.threads = threads;
+	}
+
+	/**
+	 * Plays the games and waits for all of them to finish.
+	 *
+	 * @param games the number of games
+	 * @param seed the seed of the first game, game i uses seed + i
+	 * @return the results in game order
+	 * @throws InterruptedException if interrupted while waiting for games
+	 */
+	@Nonnull public ImmutableList<Result> run(int games, long seed) throws InterruptedException {
+		ExecutorService gamePool = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+				.setNameFormat("game-%d").setDaemon(true).build());
+		// Ai calls run on their own threads so that a stuck Ai can be abandoned
+		ExecutorService aiPool = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+				.setNameFormat("batch-ai-%d").setDaemon(true).build());
+		try {
+			List<Future<Result>> futures = new ArrayList<>();
+			for (int i = 0; i < games; i++) {
+				int game = i;
+				futures.add(gamePool.submit(() -> play(game, seed + game, aiPool)));
+			}
+			var results = ImmutableList.<Result>builderWithExpectedSize(games);
+			for (Future<Result> future : futures) {
+				try {
+					results.add(future.get());
+				} catch (ExecutionException e) {
+					throw new IllegalStateException("Game crashed", e.getCause());
+				}
+			}
+			return results.build();
+		} finally {
+			gamePool.shutdownNow();
+			aiPool.shutdownNow();
+		}
+	}
+
+	// Ais that observe the model, e.g. to ponder, see every move made as they would in the UI
+	private static void notifyObserver(Ai ai, GameState state) {
+		if (!(ai instanceof Model.Observer)) return;
+		((Model.Observer) ai).onModelChanged(state, state.getWinner().isEmpty()
+				? Model.Observer.Event.MOVE_MADE
+				: Model.Observer.Event.GAME_OVER);
+	}
+
+	private Result play(int game, long seed, ExecutorService aiPool) {
+		var locations = ScotlandYard.generateDetectiveLocations((int) seed, detectives);
+		var players = ImmutableList.<Player>builder();
+		for (int i = 0; i < detectives; i++) {
+			players.add(new Player(ScotlandYard.DETECTIVES.asList().get(i),
+					ScotlandYard.defaultDetectiveTickets(), locations.get(i)));
+		}
+		var mrX = new Player(Piece.MrX.MRX, ScotlandYard.defaultMrXTickets(),
+				ScotlandYard.generateMrXLocation((int) seed));
+		Ai mrXPlayer = mrXAi.get();
+		Ai detectivesPlayer = detectivesAi.get();
+		// mrX moves, total and max nanos then the same for the detectives
+		long[] times = new long[6];
+		GameState state = null;
+		Outcome outcome = null;
+		String message = "";
+		try {
+			mrXPlayer.onStart();
+			detectivesPlayer.onStart();
+			state = factory.build(setup, mrX, players.build());
+			while (state.getWinner().isEmpty()) {
+				var moves = state.getAvailableMoves();
+				boolean mrXTurn = moves.iterator().next().commencedBy().isMrX();
+				Ai ai = mrXTurn ? mrXPlayer : detectivesPlayer;
+				GameState board = state;
+				long start = System.nanoTime();
+				var deadline = Deadline.after(timeout);
+				Future<Move> pick = aiPool.submit(() -> ai.pickMove(board, timeout, deadline));
+				Move move;
+				try {
+					move = pick.get(timeout.left(), timeout.right());
+				} catch (TimeoutException e) {
+					deadline.cancel();
+					pick.cancel(true);
+					outcome = mrXTurn ? Outcome.MRX_TIMEOUT : Outcome.DETECTIVES_TIMEOUT;
+					break;
+				} catch (ExecutionException e) {
+					outcome = mrXTurn ? Outcome.MRX_ERROR : Outcome.DETECTIVES_ERROR;
+					message = String.valueOf(e.getCause());
+					break;
+				}
+				long elapsed = System.nanoTime() - start;
+				int t = mrXTurn ? 0 : 3;
+				times[t]++;
+				times[t + 1] += elapsed;
+				times[t + 2] = Math.max(times[t + 2], elapsed);
+				if (!moves.contains(move)) {
+					outcome = mrXTurn ? Outcome.MRX_ERROR : Outcome.DETECTIVES_ERROR;
+					message = "Ai(" + ai.name() + ") selected an invalid move: " + move;
+					break;
+				}
+				state = state.advance(move);
+				notifyObserver(mrXPlayer, state);
+				notifyObserver(detectivesPlayer, state);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			outcome = Outcome.ERROR;
+			message = "Interrupted";
+		} catch (RuntimeException e) {
+			outcome = Outcome.ERROR;
+			message = String.valueOf(e);
+		} finally {
+			mrXPlayer.onTerminate();
+			detectivesPlayer.onTerminate();
+		}
+		ImmutableSet<Piece> winner = ImmutableSet.of();
+		if (outcome == null && state != null) {
+			winner = state.getWinner();
+			outcome = winner.contains(Piece.MrX.MRX) ? Outcome.MRX : Outcome.DETECTIVES;
+		}
+		int rounds = state == null ? 0 : state.getMrXTravelLog().size();
+		return new Result(game, seed, mrXPlayer.name(), detectivesPlayer.name(), outcome, winner,
+				rounds, times, message);
+	}
+
+	private static String csv(String value) {
+		if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) return value;
+		return '"' + value.replace("\"", "\"\"") + '"';
+	}
+
+	private static String millis(long nanos, int count) {
+		return count == 0 ? "" : format("%.3f", nanos / 1e6 / count);
+	}
+
+	/**
+	 * Writes the results as CSV with a header row
+	 *
+	 * @param results the results
+	 * @param writer where to write
+	 * @throws IOException if writing fails
+	 */
+	public static void writeCsv(@Nonnull List<Result> results, @Nonnull Writer writer) throws IOException {
+		writer.write(CSV_HEADER);
+		writer.write('\n');
+		for (Result r : results) {
+			writer.write(String.join(",",
+					String.valueOf(r.game),
+					String.valueOf(r.seed),
+					csv(r.mrXAi),
+					csv(r.detectivesAi),
+					r.outcome.name(),
+					csv(r.winner.toString()),
+					String.valueOf(r.rounds),
+					String.valueOf(r.mrXMoves),
+					millis(r.mrXNanos, r.mrXMoves),
+					millis(r.mrXMaxNanos, r.mrXMoves == 0 ? 0 : 1),
+					String.valueOf(r.detectiveMoves),
+					millis(r.detectiveNanos, r.detectiveMoves),
+					millis(r.detectiveMaxNanos, r.detectiveMoves == 0 ? 0 : 1),
+					csv(r.message)));
+			writer.write('\n');
+		}
+		writer.flush();
+	}
+
+	private static Class<? extends Ai> findAi(ImmutableList<Class<? extends Ai>> classes, String name) {
+		for (Class<? extends Ai> cls : classes) {
+			if (cls.getName().equals(name) || cls.getSimpleName().equals(name)) return cls;
+		}
+		for (Class<? extends Ai> cls : classes) {
+			if (ResourceManager.instantiateAi(cls).name().equals(name)) return cls;
+		}
+		throw new IllegalArgumentException("No Ai named " + name + " among " + classes);
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		List<String> positional = new ArrayList<>();
+		int games = 100;
+		int threads = Runtime.getRuntime().availableProcessors();
+		long timeout = 15;
+		long seed = 0;
+		int detectives = ScotlandYard.DETECTIVES.size();
+		boolean bitboard = false;
+		Path out = Path.of("results.csv");
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+				case "--games": games = Integer.parseInt(args[++i]); break;
+				case "--threads": threads = Integer.parseInt(args[++i]); break;
+				case "--timeout": timeout = Long.parseLong(args[++i]); break;
+				case "--seed": seed = Long.parseLong(args[++i]); break;
+				case "--detectives": detectives = Integer.parseInt(args[++i]); break;
+				case "--bitboard": bitboard = true; break;
+				case "--out": out = Path.of(args[++i]); break;
+				default: positional.add(args[i]);
+			}
+		}
+		if (positional.size() != 2) {
+			System.err.println("Usage: BatchRunner <mrX ai> <detectives ai> [--games N] [--threads N]"
+					+ " [--timeout seconds] [--seed N] [--detectives N] [--bitboard] [--out file.csv]");
+			System.exit(2);
+		}
+		var classes = ResourceManager.scanAiClasses();
+		Class<? extends Ai> mrX = findAi(classes, positional.get(0));
+		Class<? extends Ai> detective = findAi(classes, positional.get(1));
+		var runner = new BatchRunner(
+				() -> ResourceManager.instantiateAi(mrX),
+				() -> ResourceManager.instantiateAi(detective),
+				bitboard ? new BitboardGameStateFactory() : new MyGameStateFactory(),
+				new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES),
+				detectives, Duration.ofSeconds(timeout), threads);
+		long start = System.nanoTime();
+		var results = runner.run(games, seed);
+		try (Writer writer = Files.newBufferedWriter(out, StandardCharsets.UTF_8)) {
+			writeCsv(results, writer);
+		}
+		System.out.printf("%d games in %.1fs, MrX won %d, detectives won %d; results in %s%n",
+				games, (System.nanoTime() - start) / 1e9,
+				results.stream().filter(Result::mrXWon).count(),
+				results.stream().filter(Result::detectivesWon).count(), out);
+	}
+}
@@ -7,6 +7,7 @@ import com.google.common.graph.ImmutableValueGraph;
 
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.stream.Stream;
@@ -77,7 +78,7 @@ public final class ResourceManager {
 		return new Point2D(entry.getKey(), entry.getValue());
 	}
 
-	public static Ai instantiateAi(Class<Ai> cls) {
+	public static Ai instantiateAi(Class<? extends Ai> cls) {
 		try {
 			return cls.getConstructor().newInstance();
 		} catch (InstantiationException
@@ -88,20 +89,30 @@ public final class ResourceManager {
 		}
 	}
 
-	@SuppressWarnings("unchecked") public static ImmutableList<Ai> scanAis() {
+	/**
+	 * @return all concrete classes on the classpath that implement {@link Ai}; use
+	 * {@link #instantiateAi(Class)} when a fresh instance is needed, e.g. one per game
+	 */
+	public static ImmutableList<Class<? extends Ai>> scanAiClasses() {
 		var found = new FastClasspathScanner()
 				.enableAllInfo()
 				.enableExternalClasses()
 				.scan()
 				.getClassesImplementing(Ai.class.getName());
-		return found.stream().map(c -> {
+		return found.stream().<Class<? extends Ai>>map(c -> {
 			try {
-				Class<Ai> clazz = (Class<Ai>) c.loadClass();
-				if (!Ai.class.isAssignableFrom(clazz))
-					throw new IllegalArgumentException(c + " does not implement " + Ai.class);
-				return instantiateAi(clazz);
-			} catch (Exception e) { throw new RuntimeException(e); }
-		}).collect(ImmutableList.toImmutableList());
+				return c.loadClass().asSubclass(Ai.class);
+			} catch (ClassCastException e) {
+				throw new IllegalArgumentException(c + " does not implement " + Ai.class, e);
+			}
+		}).filter(c -> !c.isInterface() && !Modifier.isAbstract(c.getModifiers()))
+				.collect(ImmutableList.toImmutableList());
+	}
+
+	public static ImmutableList<Ai> scanAis() {
+		return scanAiClasses().stream()
+				.map(ResourceManager::instantiateAi)
+				.collect(ImmutableList.toImmutableList());
 	}
 
 }
@@ -0,0 +1,301 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Deadline;
+import uk.ac.bris.cs.scotlandyard.model.DistanceOracle;
+import uk.ac.bris.cs.scotlandyard.model.IntMove;
+import uk.ac.bris.cs.scotlandyard.model.IntMoveList;
+import uk.ac.bris.cs.scotlandyard.model.SearchState;
+import uk.ac.bris.cs.scotlandyard.model.SearchState.Side;
+
+/**
+ * Iterative deepening alpha-beta minimax over a {@link SearchState}, MrX maximising.
+ * <br>
+ * A whole detective round is searched as one joint move: the remaining detectives move one at a
+ * time in {@link SearchState#getPieces()} order and only the completed round uses up a ply of
+ * depth. Fixing the order means each set of destinations is searched once rather than once per
+ * order the detectives could move in.
+ * <br>
+ * Moves are ordered by the previous iteration: root moves by their last scores and every other
+ * node's best move first, from a {@link TranspositionTable}. The table also cuts off positions
+ * already searched deep enough, which the detectives reach again whenever two of them could move
+ * in either order. It outlives each search and may be shared with other engines. The clock
+ * is checked every few thousand nodes; a search that runs out of time unwinds without finishing
+ * the iteration and {@link #search(SearchState, Deadline)} returns the best move found so far.
+ * <br>
+ * Instances are not thread safe, but engines on different threads may share a table.
+ */
+public final class AlphaBeta {
+
+	/**
+	 * Scores positions that are not over, from MrX's point of view
+	 */
+	@FunctionalInterface public interface Evaluator {
+		/**
+		 * @param state the state to score, must not be modified
+		 * @return the score; must stay well inside +/-{@link #WIN}
+		 */
+		int evaluate(SearchState state);
+	}
+
+	/**
+	 * The score of a win for MrX now; wins further away score one less per ply
+	 */
+	public static final int WIN = 1_000_000;
+
+	/**
+	 * The default iteration limit, in plies of full rounds
+	 */
+	public static final int DEFAULT_MAX_DEPTH = 64;
+
+	private static final int CLOCK_INTERVAL = 4096;
+	/**
+	 * The size of the table engines make for themselves, in MB
+	 */
+	public static final int DEFAULT_TABLE_MEGABYTES = 16;
+
+	// scores beyond this are wins found by the search rather than evaluations
+	private static final int PROVEN = WIN - 10_000;
+
+	/**
+	 * The outcome of a search
+	 */
+	public static final class Result {
+		/**
+		 * The best move found, {@link IntMove#NONE} if there were no moves
+		 */
+		public final int move;
+		/**
+		 * The score of the move at the deepest completed depth, from MrX's point of view
+		 */
+		public final int score;
+		/**
+		 * The deepest iteration completed, 0 if none was
+		 */
+		public final int depth;
+		public final long nodes;
+
+		Result(int move, int score, int depth, long nodes) {
+			this.move = move;
+			this.score = score;
+			this.depth = depth;
+			this.nodes = nodes;
+		}
+
+		@Override public String toString() {
+			return "Result{move=" + IntMove.toString(move) + ", score=" + score
+					+ ", depth=" + depth + ", nodes=" + nodes + "}";
+		}
+	}
+
+	/**
+	 * Scores a position by the detectives' distances to MrX, walking with detective tickets. Being
+	 * close to the nearest detective counts double.
+	 *
+	 * @param oracle the distance oracle of the graph
+	 * @return the evaluator
+	 */
+	@Nonnull public static Evaluator distanceEvaluator(@Nonnull DistanceOracle oracle) {
+		Objects.requireNonNull(oracle);
+		return state -> {
+			int mrX = state.location(0);
+			int nearest = Integer.MAX_VALUE;
+			int total = 0;
+			for (int i = 1; i < state.pieceCount(); i++) {
+				int distance = Math.min(oracle.distance(state.location(i), mrX,
+						DistanceOracle.DETECTIVE_TICKETS), 10);
+				nearest = Math.min(nearest, distance);
+				total += distance;
+			}
+			return nearest == Integer.MAX_VALUE ? 0 : nearest * 20 + total;
+		};
+	}
+
+	private final Evaluator evaluator;
+	private final int maxDepth;
+	private final TranspositionTable table;
+	private IntMoveList[] moveLists = new IntMoveList[0];
+	private Deadline deadline;
+	private boolean stopped;
+	private long nodes;
+	private int rootDepth;
+
+	/**
+	 * @param evaluator scores positions at the search horizon
+	 * @param maxDepth the deepest iteration, in plies of full rounds, at most
+	 * {@link TranspositionTable#MAX_DEPTH}
+	 * @param table where to keep searched positions
+	 */
+	public AlphaBeta(@Nonnull Evaluator evaluator, int maxDepth, @Nonnull TranspositionTable table) {
+		if (maxDepth < 1 || maxDepth > TranspositionTable.MAX_DEPTH)
+			throw new IllegalArgumentException("Depth must be between 1 and " + TranspositionTable.MAX_DEPTH);
+		this.evaluator = Objects.requireNonNull(evaluator);
+		this.maxDepth = maxDepth;
+		this.table = Objects.requireNonNull(table);
+	}
+
+	public AlphaBeta(@Nonnull Evaluator evaluator, int maxDepth) {
+		this(evaluator, maxDepth, new TranspositionTable(DEFAULT_TABLE_MEGABYTES));
+	}
+
+	public AlphaBeta(@Nonnull Evaluator evaluator) { this(evaluator, DEFAULT_MAX_DEPTH); }
+
+	/**
+	 * Searches one ply deeper every iteration until the deadline, the depth limit or a proven
+	 * result. The moves searched at the root are those of the piece to move: MrX or, on the
+	 * detectives' turn, the first remaining detective.
+	 *
+	 * @param state the state to search, modified during the search but restored
+	 * @param deadline when to stop
+	 * @return the best move of the deepest iteration, or of the interrupted one if it had already
+	 * found a better move; the first root move if not even one ply completed
+	 */
+	@Nonnull public Result search(@Nonnull SearchState state, @Nonnull Deadline deadline) {
+		this.deadline = Objects.requireNonNull(deadline);
+		this.stopped = false;
+		this.nodes = 0;
+		this.rootDepth = state.depth();
+		var rootMoves = new IntMoveList();
+		moves(state, rootMoves);
+		if (rootMoves.isEmpty()) return new Result(IntMove.NONE, 0, 0, 0);
+		int[] moves = rootMoves.toArray();
+		int[] scores = new int[moves.length];
+		boolean maximising = state.isMrXTurn();
+		int bestMove = moves[0];
+		int bestScore = 0;
+		int completed = 0;
+		for (int depth = 1; depth <= maxDepth && !stopped; depth++) {
+			int alpha = -Integer.MAX_VALUE, beta = Integer.MAX_VALUE;
+			int iterationMove = IntMove.NONE;
+			int iterationScore = maximising ? alpha : beta;
+			for (int i = 0; i < moves.length; i++) {
+				state.makeMove(moves[i]);
+				int score = search(state, childDepth(state, depth), alpha, beta);
+				state.unmakeMove();
+				if (stopped) break;
+				scores[i] = score;
+				if (maximising ? score > iterationScore : score < iterationScore) {
+					iterationMove = moves[i];
+					iterationScore = score;
+				}
+				if (maximising) alpha = Math.max(alpha, score);
+				else beta = Math.min(beta, score);
+			}
+			// the first move is last iteration's best, so a better move found after it is safe to use
+			if (iterationMove != IntMove.NONE) {
+				bestMove = iterationMove;
+				bestScore = iterationScore;
+			}
+			if (stopped) break;
+			completed = depth;
+			sortByScore(moves, scores, maximising);
+			if (Math.abs(bestScore) >= PROVEN) break;
+		}
+		return new Result(bestMove, bestScore, completed, nodes);
+	}
+
+	// stable insertion sort, best first, so ties keep the previous order
+	private static void sortByScore(int[] moves, int[] scores, boolean maximising) {
+		for (int i = 1; i < moves.length; i++) {
+			int move = moves[i], score = scores[i];
+			int j = i - 1;
+			while (j >= 0 && (maximising ? scores[j] < score : scores[j] > score)) {
+				moves[j + 1] = moves[j];
+				scores[j + 1] = scores[j];
+				j--;
+			}
+			moves[j + 1] = move;
+			scores[j + 1] = score;
+		}
+	}
+
+	// a ply of depth is used up when the side to move changes
+	private static int childDepth(SearchState state, int depth) {
+		return state.isMrXTurn() || state.isGameOver() ? depth - 1 : depth;
+	}
+
+	// MrX's moves, or the moves of the first remaining detective that can move
+	private static void moves(SearchState state, IntMoveList out) {
+		out.clear();
+		state.availableMoves(out);
+		if (state.isMrXTurn() || out.isEmpty()) return;
+		// detective moves are generated piece by piece, so the first piece's moves come first
+		int code = IntMove.pieceCode(out.get(0));
+		int size = 1;
+		while (size < out.size() && IntMove.pieceCode(out.get(size)) == code) size++;
+		out.truncate(size);
+	}
+
+	private IntMoveList moveList(int ply) {
+		if (ply >= moveLists.length) {
+			moveLists = Arrays.copyOf(moveLists, Math.max(ply + 1, moveLists.length * 2));
+		}
+		if (moveLists[ply] == null) moveLists[ply] = new IntMoveList();
+		return moveLists[ply];
+	}
+
+	private int search(SearchState state, int depth, int alpha, int beta) {
+		if (++nodes % CLOCK_INTERVAL == 0 && deadline.isExpired()) stopped = true;
+		if (stopped) return 0;
+		int ply = state.depth() - rootDepth;
+		Side winner = state.winner();
+		if (winner != null) return winner == Side.MRX ? WIN - ply : -WIN + ply;
+		if (depth <= 0) return evaluator.evaluate(state);
+
+		long key = state.zobristKey();
+		long entry = table.probe(key);
+		if (entry != TranspositionTable.MISS && TranspositionTable.depth(entry) >= depth) {
+			int score = fromTable(TranspositionTable.score(entry), ply);
+			int bound = TranspositionTable.bound(entry);
+			if (bound == TranspositionTable.EXACT
+					|| bound == TranspositionTable.LOWER && score >= beta
+					|| bound == TranspositionTable.UPPER && score <= alpha) return score;
+		}
+		IntMoveList moves = moveList(ply);
+		moves(state, moves);
+		if (entry != TranspositionTable.MISS) {
+			int index = moves.indexOf(TranspositionTable.move(entry));
+			if (index > 0) moves.swap(0, index);
+		}
+
+		int alphaBefore = alpha, betaBefore = beta;
+		boolean maximising = state.isMrXTurn();
+		int best = maximising ? -Integer.MAX_VALUE : Integer.MAX_VALUE;
+		int bestMove = IntMove.NONE;
+		for (int i = 0; i < moves.size(); i++) {
+			int move = moves.get(i);
+			state.makeMove(move);
+			int score = search(state, childDepth(state, depth), alpha, beta);
+			state.unmakeMove();
+			if (stopped) return 0;
+			if (maximising ? score > best : score < best) {
+				best = score;
+				bestMove = move;
+			}
+			if (maximising) alpha = Math.max(alpha, score);
+			else beta = Math.min(beta, score);
+			if (alpha >= beta) break;
+		}
+		int bound = best <= alphaBefore ? TranspositionTable.UPPER
+				: best >= betaBefore ? TranspositionTable.LOWER : TranspositionTable.EXACT;
+		if (bestMove != IntMove.NONE) table.store(key, bestMove, toTable(best, ply), depth, bound);
+		return best;
+	}
+
+	// proven wins are stored by their distance from the node rather than from the root
+	private static int toTable(int score, int ply) {
+		if (score >= PROVEN) return score + ply;
+		if (score <= -PROVEN) return score - ply;
+		return score;
+	}
+
+	private static int fromTable(int score, int ply) {
+		if (score >= PROVEN) return score - ply;
+		if (score <= -PROVEN) return score + ply;
+		return score;
+	}
+}
@@ -0,0 +1,40 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+
+import java.util.Random;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.Deadline;
+import uk.ac.bris.cs.scotlandyard.model.DistanceOracle;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+import uk.ac.bris.cs.scotlandyard.model.SearchState.Side;
+
+/**
+ * Plays the detectives with {@link AlphaBeta}, searching from a guess of MrX's location drawn
+ * from the {@link uk.ac.bris.cs.scotlandyard.model.MrXLocationTracker} candidates. Each call moves
+ * the first remaining detective, as part of the best joint move for the round. The engine is kept
+ * while the graph stays the same, so its move ordering carries over between calls.
+ */
+public final class AlphaBetaDetectivesAi extends SearchAi {
+
+	@Nullable private ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph;
+	@Nullable private AlphaBeta engine;
+
+	public AlphaBetaDetectivesAi() { this(new Random()); }
+
+	AlphaBetaDetectivesAi(@Nonnull Random random) { super(Side.DETECTIVES, "Alpha-beta detectives", random); }
+
+	@Override protected int bestMove(@Nonnull Board board, @Nonnull Deadline deadline) {
+		var graph = board.getSetup().graph;
+		if (engine == null || this.graph != graph) {
+			engine = new AlphaBeta(AlphaBeta.distanceEvaluator(DistanceOracle.of(graph)));
+			this.graph = graph;
+		}
+		return engine.search(seed(board), deadline).move;
+	}
+}
@@ -0,0 +1,290 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Deadline;
+import uk.ac.bris.cs.scotlandyard.model.IntMove;
+import uk.ac.bris.cs.scotlandyard.model.IntMoveList;
+import uk.ac.bris.cs.scotlandyard.model.SearchState;
+import uk.ac.bris.cs.scotlandyard.model.SearchState.Side;
+
+/**
+ * Tree-parallel UCT: any number of threads search one shared tree, each walking its own copy of
+ * the root {@link SearchState}. Follows {@link Mcts} except that
+ * <ul>
+ * <li>node statistics are updated with atomic adds, never under a lock;</li>
+ * <li>a node's moves are published once with a compare-and-set and children are claimed by
+ * incrementing a counter, so two threads never expand the same move;</li>
+ * <li>every node on a path being searched carries a virtual loss until its rollout is backed up,
+ * steering other threads towards different paths.</li>
+ * </ul>
+ * The tree's memory is budgeted as in {@link Mcts#Mcts(double, Mcts.Policy, int)}: every node
+ * costs {@link Mcts#NODE_BYTES} and every node's moves, listed when it is first visited, cost
+ * {@link #EDGES_BYTES} plus eight bytes per move for the move and its child slot. Move lists are
+ * kept, since threads may still be expanding them. Threads check the budget before adding, so
+ * a full tree overshoots by at most one node and move list per thread.
+ */
+public final class ConcurrentMcts {
+
+	/**
+	 * The default virtual loss, in visits
+	 */
+	public static final int DEFAULT_VIRTUAL_LOSS = 3;
+
+	/**
+	 * The estimated bytes of a node's move list without the moves: the list object, its claim
+	 * counter, child array wrapper and the headers of its two arrays
+	 */
+	static final int EDGES_BYTES = 96;
+
+	private static final int MAX_ROLLOUT_PLIES = 1000;
+
+	private static final VarHandle EDGES;
+	private static final VarHandle VISITS;
+	private static final VarHandle WINS;
+	private static final VarHandle VIRTUAL;
+
+	static {
+		try {
+			var lookup = MethodHandles.lookup();
+			EDGES = lookup.findVarHandle(Node.class, "edges", Edges.class);
+			VISITS = lookup.findVarHandle(Node.class, "visits", int.class);
+			WINS = lookup.findVarHandle(Node.class, "wins", int.class);
+			VIRTUAL = lookup.findVarHandle(Node.class, "virtual", int.class);
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	// the moves of a node in expansion order and the children created so far
+	private static final class Edges {
+		final int[] moves;
+		final AtomicReferenceArray<Node> children;
+		final AtomicInteger claimed = new AtomicInteger();
+
+		Edges(int[] moves) {
+			this.moves = moves;
+			this.children = new AtomicReferenceArray<>(moves.length);
+		}
+
+		long bytes() { return EDGES_BYTES + 2L * Integer.BYTES * moves.length; }
+	}
+
+	/**
+	 * A node of the shared tree; the root has no move
+	 */
+	public static final class Node {
+		final int move;
+		final Side mover;
+		final Node parent;
+		private volatile Edges edges;
+		private volatile int visits;
+		private volatile int wins;
+		private volatile int virtual;
+
+		Node(Node parent, int move, Side mover) {
+			this.parent = parent;
+			this.move = move;
+			this.mover = mover;
+		}
+
+		/**
+		 * @return the encoded move leading to this node, {@link IntMove#NONE} for the root
+		 */
+		public int move() { return move; }
+
+		public int visits() { return visits; }
+
+		/**
+		 * @return the number of rollouts won by the side that made {@link #move()}
+		 */
+		public int wins() { return wins; }
+
+		/**
+		 * @return the most visited child, null if there are none
+		 */
+		public Node mostVisited() {
+			Edges e = edges;
+			if (e == null) return null;
+			Node best = null;
+			for (int i = 0, n = Math.min(e.claimed.get(), e.moves.length); i < n; i++) {
+				Node child = e.children.get(i);
+				if (child != null && (best == null || child.visits > best.visits)) best = child;
+			}
+			return best;
+		}
+
+		/**
+		 * @return the number of moves listed for this node, 0 before it is first visited
+		 */
+		int moveCount() {
+			Edges e = edges;
+			return e == null ? 0 : e.moves.length;
+		}
+
+		/**
+		 * @return the child for the i-th listed move, null if it has not been expanded
+		 */
+		Node child(int i) {
+			Edges e = edges;
+			return e == null ? null : e.children.get(i);
+		}
+	}
+
+	private final double exploration;
+	private final Mcts.Policy rollout;
+	private final long maxBytes;
+	private final int virtualLoss;
+	private final AtomicLong bytes = new AtomicLong();
+
+	/**
+	 * @param exploration the UCB1 exploration constant
+	 * @param rollout the rollout policy, shared by all threads
+	 * @param maxNodes the memory limit of everything all threads together add, in bare nodes
+	 * @param virtualLoss the visits added to a node while a thread is searching below it
+	 */
+	public ConcurrentMcts(double exploration, @Nonnull Mcts.Policy rollout, int maxNodes, int virtualLoss) {
+		if (!(exploration >= 0)) throw new IllegalArgumentException("Exploration must be >= 0");
+		if (maxNodes < 1) throw new IllegalArgumentException("Need at least one node");
+		if (virtualLoss < 0) throw new IllegalArgumentException("Virtual loss must be >= 0");
+		this.exploration = exploration;
+		this.rollout = Objects.requireNonNull(rollout);
+		this.maxBytes = (long) maxNodes * Mcts.NODE_BYTES;
+		this.virtualLoss = virtualLoss;
+	}
+
+	public ConcurrentMcts() {
+		this(Mcts.DEFAULT_EXPLORATION, Mcts.RANDOM, Mcts.DEFAULT_MAX_NODES, DEFAULT_VIRTUAL_LOSS);
+	}
+
+	/**
+	 * @return a new tree with only a root
+	 */
+	@Nonnull public static Node newRoot() { return new Node(null, IntMove.NONE, null); }
+
+	/**
+	 * Searches the shared tree from one thread until the deadline or until the shared iteration
+	 * budget runs out. Every thread must pass its own state, at the root position.
+	 *
+	 * @param state this thread's state at the root, restored when this returns
+	 * @param root the shared root
+	 * @param deadline when to stop
+	 * @param iterations the iterations left for all threads together
+	 * @param random this thread's random source
+	 * @return the number of iterations this thread ran
+	 */
+	public long search(@Nonnull SearchState state, @Nonnull Node root, @Nonnull Deadline deadline,
+	                   @Nonnull AtomicLong iterations, @Nonnull Random random) {
+		var scratch = new IntMoveList(512);
+		int depth = state.depth();
+		long count = 0;
+		while (iterations.getAndDecrement() > 0) {
+			// reading the clock is not free, check it every 16 iterations
+			if ((count & 0xF) == 0 && deadline.isExpired()) break;
+			iterate(state, root, random, scratch);
+			while (state.depth() > depth) state.unmakeMove();
+			count++;
+		}
+		return count;
+	}
+
+	private static Side sideToMove(SearchState state) {
+		return state.isMrXTurn() ? Side.MRX : Side.DETECTIVES;
+	}
+
+	/**
+	 * @return the estimated bytes of everything this engine has added to its trees
+	 */
+	long bytes() { return bytes.get(); }
+
+	// the node's moves, listed on the first visit; null if the tree is full and they are not
+	private Edges edges(Node node, SearchState state, Random random, IntMoveList scratch) {
+		Edges edges = (Edges) EDGES.getAcquire(node);
+		if (edges != null) return edges;
+		if (bytes.get() >= maxBytes) return null;
+		scratch.clear();
+		state.availableMoves(scratch);
+		// expansion order is random so that threads and searches explore moves evenly
+		int[] moves = scratch.toArray();
+		for (int i = moves.length - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int move = moves[i];
+			moves[i] = moves[j];
+			moves[j] = move;
+		}
+		Edges created = new Edges(moves);
+		Edges witness = (Edges) EDGES.compareAndExchangeRelease(node, null, created);
+		if (witness != null) return witness;
+		bytes.addAndGet(created.bytes());
+		return created;
+	}
+
+	private void iterate(SearchState state, Node root, Random random, IntMoveList scratch) {
+		Node node = root;
+		while (!state.isGameOver()) {
+			Edges edges = edges(node, state, random, scratch);
+			if (edges == null) break;
+			if (edges.claimed.get() < edges.moves.length && bytes.get() < maxBytes) {
+				int i = edges.claimed.getAndIncrement();
+				if (i < edges.moves.length) {
+					Node child = new Node(node, edges.moves[i], sideToMove(state));
+					VIRTUAL.getAndAdd(child, virtualLoss);
+					edges.children.set(i, child);
+					bytes.addAndGet(Mcts.NODE_BYTES);
+					state.makeMove(child.move);
+					node = child;
+					break;
+				}
+			}
+			Node next = select(node, edges);
+			// every claimed child is still being created, play out from here
+			if (next == null) break;
+			VIRTUAL.getAndAdd(next, virtualLoss);
+			state.makeMove(next.move);
+			node = next;
+		}
+		Side winner = playOut(state, random, scratch);
+		for (Node n = node; n != null; n = n.parent) {
+			VISITS.getAndAdd(n, 1);
+			if (n.mover == winner) WINS.getAndAdd(n, 1);
+			if (n != root) VIRTUAL.getAndAdd(n, -virtualLoss);
+		}
+	}
+
+	private Node select(Node node, Edges edges) {
+		double log = Math.log(Math.max(node.visits + node.virtual, 1));
+		Node best = null;
+		double bestScore = Double.NEGATIVE_INFINITY;
+		for (int i = 0, n = Math.min(edges.claimed.get(), edges.moves.length); i < n; i++) {
+			Node child = edges.children.get(i);
+			if (child == null) continue;
+			// virtual visits count as losses
+			int visits = child.visits + child.virtual;
+			double score = visits == 0
+					? Double.POSITIVE_INFINITY
+					: (double) child.wins / visits + exploration * Math.sqrt(log / visits);
+			if (score > bestScore) {
+				best = child;
+				bestScore = score;
+			}
+		}
+		return best;
+	}
+
+	private Side playOut(SearchState state, Random random, IntMoveList scratch) {
+		for (int ply = 0; ply < MAX_ROLLOUT_PLIES && !state.isGameOver(); ply++) {
+			scratch.clear();
+			state.availableMoves(scratch);
+			state.makeMove(rollout.pick(state, scratch, random));
+		}
+		return state.winner();
+	}
+}
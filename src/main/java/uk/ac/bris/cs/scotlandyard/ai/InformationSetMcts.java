@@ -0,0 +1,255 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Random;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Deadline;
+import uk.ac.bris.cs.scotlandyard.model.IntMove;
+import uk.ac.bris.cs.scotlandyard.model.IntMoveList;
+import uk.ac.bris.cs.scotlandyard.model.SearchState;
+import uk.ac.bris.cs.scotlandyard.model.SearchState.Side;
+
+/**
+ * Single observer information set Monte Carlo tree search for a side that cannot see MrX.
+ * <br>
+ * Every iteration starts from a new determinization, a state with one possible location for MrX,
+ * and walks a single tree shared by all determinizations. A node's children are the moves seen in
+ * any determinization. Selection and expansion only consider the children that are legal in the
+ * current one, and UCB1 uses the number of times a child was available in place of its parent's
+ * visits. Statistics are therefore aggregated across every sampled location rather than kept
+ * per sample.
+ * <br>
+ * Instances are not thread safe; run one per thread and merge the roots.
+ */
+public final class InformationSetMcts {
+
+	/**
+	 * Creates the states that iterations start from
+	 */
+	@FunctionalInterface public interface Determinizer {
+		/**
+		 * @param random the search's random source
+		 * @return a state at the root position; it is modified during the iteration but restored
+		 * before the next call, so implementations may hand out the same states again
+		 */
+		SearchState sample(Random random);
+	}
+
+	private static final int MAX_ROLLOUT_PLIES = 1000;
+
+	private static final Node[] NO_CHILDREN = {};
+
+	/**
+	 * A node of the search tree; the root has no move
+	 */
+	public static final class Node {
+		final int move;
+		final Side mover;
+		final Node parent;
+		Node[] children = NO_CHILDREN;
+		int childCount;
+		int visits;
+		double wins;
+		// the number of iterations in which this node's move was legal in its parent
+		int available;
+
+		Node(Node parent, int move, Side mover) {
+			this.parent = parent;
+			this.move = move;
+			this.mover = mover;
+		}
+
+		/**
+		 * @return the encoded move leading to this node, {@link IntMove#NONE} for the root
+		 */
+		public int move() { return move; }
+
+		public int visits() { return visits; }
+
+		/**
+		 * @return the number of rollouts won by the side that made {@link #move()}
+		 */
+		public double wins() { return wins; }
+
+		public int childCount() { return childCount; }
+
+		@Nonnull public Node child(int i) {
+			if (i < 0 || i >= childCount) throw new IndexOutOfBoundsException(i);
+			return children[i];
+		}
+
+		/**
+		 * @return the most visited child, null if there are none
+		 */
+		public Node mostVisited() {
+			Node best = null;
+			for (int i = 0; i < childCount; i++) {
+				if (best == null || children[i].visits > best.visits) best = children[i];
+			}
+			return best;
+		}
+
+		// children are kept sorted by move
+		private int search(int move) {
+			int low = 0, high = childCount - 1;
+			while (low <= high) {
+				int mid = (low + high) >>> 1;
+				if (children[mid].move < move) low = mid + 1;
+				else if (children[mid].move > move) high = mid - 1;
+				else return mid;
+			}
+			return -(low + 1);
+		}
+
+		Node find(int move) {
+			int i = search(move);
+			return i < 0 ? null : children[i];
+		}
+
+		void addChild(Node child) {
+			int i = -(search(child.move) + 1);
+			if (childCount == children.length) children = Arrays.copyOf(children, Math.max(4, childCount * 2));
+			System.arraycopy(children, i, children, i + 1, childCount - i);
+			children[i] = child;
+			childCount++;
+		}
+	}
+
+	private final double exploration;
+	private final Mcts.Policy rollout;
+	private final long maxBytes;
+	private final IntMoveList scratch = new IntMoveList(512);
+	private final IntMoveList untried = new IntMoveList(512);
+	private Node[] legal = new Node[512];
+	private int legalCount;
+	private long bytes;
+
+	/**
+	 * The tree's memory is estimated as {@link Mcts#NODE_BYTES} per node plus four bytes per entry
+	 * of every node's child array. Unlike {@link Mcts} no moves are kept per node, so a search
+	 * grows to nearly {@code maxNodes} nodes and stays within about {@code maxNodes *
+	 * Mcts.NODE_BYTES} bytes.
+	 *
+	 * @param exploration the UCB1 exploration constant
+	 * @param rollout the rollout policy
+	 * @param maxNodes the memory limit of the nodes one search adds, in bare nodes
+	 */
+	public InformationSetMcts(double exploration, @Nonnull Mcts.Policy rollout, int maxNodes) {
+		if (!(exploration >= 0)) throw new IllegalArgumentException("Exploration must be >= 0");
+		if (maxNodes < 1) throw new IllegalArgumentException("Need at least one node");
+		this.exploration = exploration;
+		this.rollout = Objects.requireNonNull(rollout);
+		this.maxBytes = (long) maxNodes * Mcts.NODE_BYTES;
+	}
+
+	public InformationSetMcts() { this(Mcts.DEFAULT_EXPLORATION, Mcts.RANDOM, Mcts.DEFAULT_MAX_NODES); }
+
+	/**
+	 * @return a new tree with only a root
+	 */
+	@Nonnull public static Node newRoot() { return new Node(null, IntMove.NONE, null); }
+
+	/**
+	 * @return the estimated bytes of the nodes added by the last search
+	 */
+	long bytes() { return bytes; }
+
+	/**
+	 * Searches until the deadline or the iteration limit, whichever comes first.
+	 *
+	 * @param determinizer creates the state of every iteration
+	 * @param root the root node
+	 * @param deadline when to stop
+	 * @param maxIterations the most iterations to run
+	 * @param random the random source
+	 * @return the number of iterations run
+	 */
+	public long search(@Nonnull Determinizer determinizer, @Nonnull Node root, @Nonnull Deadline deadline,
+	                   long maxIterations, @Nonnull Random random) {
+		long iterations = 0;
+		bytes = 0;
+		while (iterations < maxIterations) {
+			// reading the clock is not free, check it every 16 iterations
+			if ((iterations & 0xF) == 0 && deadline.isExpired()) break;
+			SearchState state = determinizer.sample(random);
+			int depth = state.depth();
+			iterate(state, root, random);
+			while (state.depth() > depth) state.unmakeMove();
+			iterations++;
+		}
+		return iterations;
+	}
+
+	private static Side sideToMove(SearchState state) {
+		return state.isMrXTurn() ? Side.MRX : Side.DETECTIVES;
+	}
+
+	private void iterate(SearchState state, Node root, Random random) {
+		Node node = root;
+		while (!state.isGameOver()) {
+			scratch.clear();
+			state.availableMoves(scratch);
+			// children legal in this determinization were available, the rest are untried
+			untried.clear();
+			legalCount = 0;
+			for (int i = 0; i < scratch.size(); i++) {
+				Node child = node.find(scratch.get(i));
+				if (child == null) untried.add(scratch.get(i));
+				else {
+					child.available++;
+					if (legalCount == legal.length) legal = Arrays.copyOf(legal, legalCount * 2);
+					legal[legalCount++] = child;
+				}
+			}
+			if (!untried.isEmpty() && bytes < maxBytes) {
+				Node child = new Node(node, untried.get(random.nextInt(untried.size())), sideToMove(state));
+				child.available = 1;
+				int capacity = node.children.length;
+				node.addChild(child);
+				bytes += Mcts.NODE_BYTES + (long) Integer.BYTES * (node.children.length - capacity);
+				state.makeMove(child.move);
+				node = child;
+				break;
+			}
+			Node next = select();
+			if (next == null) break;
+			state.makeMove(next.move);
+			node = next;
+		}
+		Side winner = playOut(state, random);
+		for (Node n = node; n != null; n = n.parent) {
+			n.visits++;
+			if (n.mover == winner) n.wins++;
+		}
+	}
+
+	// UCB1 over the children legal in this determinization
+	private Node select() {
+		Node best = null;
+		double bestScore = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < legalCount; i++) {
+			Node child = legal[i];
+			double score = child.visits == 0
+					? Double.POSITIVE_INFINITY
+					: child.wins / child.visits
+							+ exploration * Math.sqrt(Math.log(child.available) / child.visits);
+			if (score > bestScore) {
+				best = child;
+				bestScore = score;
+			}
+		}
+		return best;
+	}
+
+	private Side playOut(SearchState state, Random random) {
+		for (int ply = 0; ply < MAX_ROLLOUT_PLIES && !state.isGameOver(); ply++) {
+			scratch.clear();
+			state.availableMoves(scratch);
+			state.makeMove(rollout.pick(state, scratch, random));
+		}
+		return state.winner();
+	}
+}
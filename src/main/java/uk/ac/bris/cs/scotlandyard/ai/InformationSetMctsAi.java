@@ -0,0 +1,86 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.Deadline;
+import uk.ac.bris.cs.scotlandyard.model.IntMove;
+import uk.ac.bris.cs.scotlandyard.model.MrXLocationTracker;
+import uk.ac.bris.cs.scotlandyard.model.SearchState;
+import uk.ac.bris.cs.scotlandyard.model.SearchState.Side;
+
+/**
+ * Plays the detectives with {@link InformationSetMcts}. MrX's location is sampled uniformly, every
+ * iteration, from the {@link MrXLocationTracker} candidates, which follow the travel log and the
+ * reveal rounds of {@link uk.ac.bris.cs.scotlandyard.model.GameSetup#moves}.
+ * <br>
+ * Each worker thread grows its own tree over all samples; the root visit counts of the trees are
+ * summed per move. A worker seeds a state for a candidate the first time it samples it and reuses
+ * it afterwards, so seeding cost does not grow with the number of iterations.
+ */
+public final class InformationSetMctsAi extends SearchAi {
+
+	private final WorkerPool pool;
+	private final long maxIterations;
+
+	public InformationSetMctsAi() {
+		this(Runtime.getRuntime().availableProcessors(), Long.MAX_VALUE, new Random());
+	}
+
+	/**
+	 * @param workers the number of worker threads
+	 * @param maxIterations the most iterations per move, across all workers
+	 * @param random the random source; workers get their own sources seeded from it
+	 */
+	InformationSetMctsAi(int workers, long maxIterations, @Nonnull Random random) {
+		super(Side.DETECTIVES, "ISMCTS detectives", random);
+		if (maxIterations < 1) throw new IllegalArgumentException("Need at least one iteration");
+		this.pool = new WorkerPool(workers);
+		this.maxIterations = maxIterations;
+	}
+
+	@Override public void onTerminate() { pool.shutdown(); }
+
+	@Override protected int bestMove(@Nonnull Board board, @Nonnull Deadline deadline) {
+		int[] candidates = mrXCandidates(board);
+		int workers = pool.workers();
+		long iterations = maxIterations == Long.MAX_VALUE
+				? maxIterations
+				: (maxIterations + workers - 1) / workers;
+		// the workers' trees together take the memory of one search
+		int nodes = Math.max(Mcts.DEFAULT_MAX_NODES / workers, 1);
+		List<Callable<InformationSetMcts.Node>> tasks = new ArrayList<>();
+		for (int i = 0; i < workers; i++) {
+			var random = new Random(random().nextLong());
+			tasks.add(() -> {
+				var states = new SearchState[candidates.length];
+				InformationSetMcts.Determinizer determinizer = r -> {
+					int sample = r.nextInt(candidates.length);
+					if (states[sample] == null) states[sample] = SearchState.of(board, candidates[sample]);
+					return states[sample];
+				};
+				var root = InformationSetMcts.newRoot();
+				new InformationSetMcts(Mcts.DEFAULT_EXPLORATION, Mcts.RANDOM, nodes).search(determinizer, root, deadline, iterations, random);
+				return root;
+			});
+		}
+		Map<Integer, Integer> visits = new HashMap<>();
+		for (InformationSetMcts.Node root : pool.runAll(tasks)) {
+			for (int i = 0; i < root.childCount(); i++) {
+				InformationSetMcts.Node child = root.child(i);
+				visits.merge(child.move(), child.visits(), Integer::sum);
+			}
+		}
+		return visits.entrySet().stream()
+				.max(Map.Entry.comparingByValue())
+				.map(Map.Entry::getKey)
+				.orElse(IntMove.NONE);
+	}
+}
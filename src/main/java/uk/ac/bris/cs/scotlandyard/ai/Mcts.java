@@ -0,0 +1,280 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Random;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Deadline;
+import uk.ac.bris.cs.scotlandyard.model.IntMove;
+import uk.ac.bris.cs.scotlandyard.model.IntMoveList;
+import uk.ac.bris.cs.scotlandyard.model.SearchState;
+import uk.ac.bris.cs.scotlandyard.model.SearchState.Side;
+
+/**
+ * Single threaded UCT Monte Carlo tree search over a {@link SearchState}.
+ * <br>
+ * Every iteration selects a path with UCB1, expands one untried move, plays the game out with the
+ * rollout {@link Policy} and scores 1 for every move on the path made by the winning side. Each
+ * detective move is a separate ply, as in the game. The state is walked with
+ * {@link SearchState#makeMove(int)} and restored with {@link SearchState#unmakeMove()} after
+ * every iteration, so no states are copied.
+ */
+public final class Mcts {
+
+	/**
+	 * Picks moves during rollouts
+	 */
+	@FunctionalInterface public interface Policy {
+		/**
+		 * @param state the current state, must not be modified
+		 * @param moves the available moves, never empty
+		 * @param random the search's random source
+		 * @return one of the moves
+		 */
+		int pick(SearchState state, IntMoveList moves, Random random);
+	}
+
+	/**
+	 * Picks uniformly at random
+	 */
+	public static final Policy RANDOM = (state, moves, random) -> moves.get(random.nextInt(moves.size()));
+
+	/**
+	 * The usual UCB1 exploration constant, sqrt(2)
+	 */
+	public static final double DEFAULT_EXPLORATION = Math.sqrt(2);
+
+	/**
+	 * A search stops growing the tree once it takes the memory of this many nodes, see
+	 * {@link #Mcts(double, Policy, int)}; iterations then only add rollouts
+	 */
+	public static final int DEFAULT_MAX_NODES = 1 << 21;
+
+	/**
+	 * The estimated bytes of a node without its arrays: header, fields and the parent's reference
+	 */
+	static final int NODE_BYTES = 64;
+
+	private static final int[] NO_MOVES = {};
+
+	private static final int MAX_ROLLOUT_PLIES = 1000;
+
+	/**
+	 * A node of the search tree; the root has no move
+	 */
+	public static final class Node {
+		final int move;
+		final Side mover;
+		Node parent;
+		Node[] children;
+		int childCount;
+		// moves not yet expanded, created the first time the node is expanded and dropped once
+		// they all are
+		int[] untried;
+		int untriedCount;
+		int visits;
+		double wins;
+
+		Node(Node parent, int move, Side mover) {
+			this.parent = parent;
+			this.move = move;
+			this.mover = mover;
+		}
+
+		/**
+		 * @return the encoded move leading to this node, {@link IntMove#NONE} for the root
+		 */
+		public int move() { return move; }
+
+		/**
+		 * @return the number of rollouts through this node
+		 */
+		public int visits() { return visits; }
+
+		/**
+		 * @return the number of those rollouts won by the side that made {@link #move()}
+		 */
+		public double wins() { return wins; }
+
+		public int childCount() { return childCount; }
+
+		@Nonnull public Node child(int i) {
+			if (i < 0 || i >= childCount) throw new IndexOutOfBoundsException(i);
+			return children[i];
+		}
+
+		/**
+		 * @return the child reached with the move, null if it has not been expanded
+		 */
+		public Node find(int move) {
+			for (int i = 0; i < childCount; i++) {
+				if (children[i].move == move) return children[i];
+			}
+			return null;
+		}
+
+		/**
+		 * @return the most visited child, null if there are none
+		 */
+		public Node mostVisited() {
+			Node best = null;
+			for (int i = 0; i < childCount; i++) {
+				if (best == null || children[i].visits > best.visits) best = children[i];
+			}
+			return best;
+		}
+
+		/**
+		 * Cuts this node from its parent so it can be the root of a later search
+		 *
+		 * @return this node
+		 */
+		@Nonnull public Node detach() {
+			parent = null;
+			return this;
+		}
+
+		void addChild(Node child) {
+			if (children == null) children = new Node[Math.max(untriedCount + 1, 4)];
+			else if (childCount == children.length) children = Arrays.copyOf(children, childCount * 2);
+			children[childCount++] = child;
+		}
+	}
+
+	private final double exploration;
+	private final Policy rollout;
+	private final long maxBytes;
+	private final IntMoveList scratch = new IntMoveList(512);
+	private long bytes;
+
+	/**
+	 * The tree's memory is estimated as {@link #NODE_BYTES} per node plus four bytes per entry of
+	 * every node's child array and list of moves not yet expanded, which are as long as the
+	 * node's legal moves; a move list is dropped once all its moves are expanded. A tree of nodes
+	 * with few moves grows to nearly {@code maxNodes} nodes, while one where many nodes list a few
+	 * hundred moves, as MrX's do, stops much sooner. Either way it stays within about
+	 * {@code maxNodes * NODE_BYTES} bytes, 128MB for {@link #DEFAULT_MAX_NODES}.
+	 *
+	 * @param exploration the UCB1 exploration constant
+	 * @param rollout the rollout policy
+	 * @param maxNodes the memory limit of the tree, counting a reused root's subtree, in bare nodes
+	 */
+	public Mcts(double exploration, @Nonnull Policy rollout, int maxNodes) {
+		if (!(exploration >= 0)) throw new IllegalArgumentException("Exploration must be >= 0");
+		if (maxNodes < 1) throw new IllegalArgumentException("Need at least one node");
+		this.exploration = exploration;
+		this.rollout = Objects.requireNonNull(rollout);
+		this.maxBytes = (long) maxNodes * NODE_BYTES;
+	}
+
+	public Mcts() { this(DEFAULT_EXPLORATION, RANDOM, DEFAULT_MAX_NODES); }
+
+	/**
+	 * @return a new tree with only a root
+	 */
+	@Nonnull public static Node newRoot() {
+		return new Node(null, IntMove.NONE, null);
+	}
+
+	/**
+	 * Searches until the deadline or the iteration limit, whichever comes first. The state is
+	 * back at the root position when this returns.
+	 *
+	 * @param state the state at the root, it is modified during the search but restored
+	 * @param root the root node, from {@link #newRoot()} or a previous search of the same
+	 * position; a subtree of a previous search must be {@link Node#detach() detached} first
+	 * @param deadline when to stop
+	 * @param maxIterations the most iterations to run
+	 * @param random the random source
+	 * @return the number of iterations run
+	 */
+	public long search(@Nonnull SearchState state, @Nonnull Node root, @Nonnull Deadline deadline,
+	                   long maxIterations, @Nonnull Random random) {
+		long iterations = 0;
+		// every iteration adds at most one node, so a reused subtree has at most visits + 1 nodes;
+		// their arrays are not counted
+		bytes = Math.min((long) root.visits * NODE_BYTES, maxBytes);
+		int depth = state.depth();
+		while (iterations < maxIterations) {
+			// reading the clock is not free, check it every 16 iterations
+			if ((iterations & 0xF) == 0 && deadline.isExpired()) break;
+			iterate(state, root, random);
+			while (state.depth() > depth) state.unmakeMove();
+			iterations++;
+		}
+		return iterations;
+	}
+
+	private static Side sideToMove(SearchState state) {
+		return state.isMrXTurn() ? Side.MRX : Side.DETECTIVES;
+	}
+
+	private void iterate(SearchState state, Node root, Random random) {
+		Node node = root;
+		// selection
+		while (!state.isGameOver()) {
+			if (node.untried == null) {
+				// a full tree does not list moves it cannot expand
+				if (bytes >= maxBytes) break;
+				scratch.clear();
+				state.availableMoves(scratch);
+				node.untried = scratch.toArray();
+				node.untriedCount = node.untried.length;
+				bytes += (long) Integer.BYTES * node.untriedCount;
+			}
+			if (node.untriedCount > 0 && bytes < maxBytes) {
+				// expansion
+				int i = random.nextInt(node.untriedCount);
+				int move = node.untried[i];
+				node.untried[i] = node.untried[--node.untriedCount];
+				if (node.untriedCount == 0) {
+					bytes -= (long) Integer.BYTES * node.untried.length;
+					node.untried = NO_MOVES;
+				}
+				Node child = new Node(node, move, sideToMove(state));
+				int capacity = node.children == null ? 0 : node.children.length;
+				node.addChild(child);
+				bytes += NODE_BYTES + (long) Integer.BYTES * (node.children.length - capacity);
+				state.makeMove(move);
+				node = child;
+				break;
+			}
+			if (node.childCount == 0) break;
+			node = select(node);
+			state.makeMove(node.move);
+		}
+		Side winner = playOut(state, random);
+		for (Node n = node; n != null; n = n.parent) {
+			n.visits++;
+			if (n.mover == winner) n.wins++;
+		}
+	}
+
+	private Node select(Node node) {
+		double log = Math.log(node.visits);
+		Node best = null;
+		double bestScore = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < node.childCount; i++) {
+			Node child = node.children[i];
+			double score = child.visits == 0
+					? Double.POSITIVE_INFINITY
+					: child.wins / child.visits + exploration * Math.sqrt(log / child.visits);
+			if (score > bestScore) {
+				best = child;
+				bestScore = score;
+			}
+		}
+		return best;
+	}
+
+	private Side playOut(SearchState state, Random random) {
+		for (int ply = 0; ply < MAX_ROLLOUT_PLIES && !state.isGameOver(); ply++) {
+			scratch.clear();
+			state.availableMoves(scratch);
+			state.makeMove(rollout.pick(state, scratch, random));
+		}
+		return state.winner();
+	}
+}
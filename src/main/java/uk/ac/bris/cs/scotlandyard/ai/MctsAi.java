@@ -0,0 +1,244 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.Deadline;
+import uk.ac.bris.cs.scotlandyard.model.IntMove;
+import uk.ac.bris.cs.scotlandyard.model.Model;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.SearchState;
+import uk.ac.bris.cs.scotlandyard.model.SearchState.Side;
+
+/**
+ * Base class for {@link SearchAi}s that pick moves with {@link Mcts}. Subclasses choose the side
+ * they play and may tune the search by overriding the protected methods.
+ * <br>
+ * Each move searches until the deadline and returns the most visited move. If
+ * {@link #reusesTree()}, the subtree of that move is kept and the next call starts from its node
+ * for the new board, found by following the moves made since: detectives' moves must end where
+ * the board has them, and MrX's where the travel log allows (his location on his own turn, a
+ * {@link #mrXCandidates(Board)} candidate on the detectives'). Where several nodes fit, the most
+ * visited one is used, so detectives also take their guess of MrX's location from it. The rest
+ * of the tree is released, and {@link Mcts} counts the reused nodes towards its node limit.
+ * Without a fitting node the search starts from {@link #seed(Board)}.
+ * <br>
+ * If {@link #ponders()}, the kept subtree is also searched on a background thread until the next
+ * turn. Registered as a {@link Model.Observer}, every move made re-roots that search the same way.
+ */
+public abstract class MctsAi extends SearchAi implements Model.Observer {
+
+	// a node of the kept tree and the board's position it stands for
+	private static final class Match {
+		final SearchState state;
+		final Mcts.Node node;
+
+		Match(SearchState state, Mcts.Node node) {
+			this.state = state;
+			this.node = node;
+		}
+	}
+
+	// the kept position and its tree, guarded by this; the state is busy while pondering
+	@Nullable private SearchState keptState;
+	@Nullable private Mcts.Node keptRoot;
+	@Nullable private Deadline ponderDeadline;
+	@Nullable private Future<?> pondering;
+	@Nullable private ExecutorService ponderThread;
+	private int reusedVisits;
+	// the position the last pickMove searched, events for it may arrive after the search
+	private long searchedKey;
+	private int searchedMrX = -1;
+
+	/**
+	 * @param side the side this Ai plays
+	 * @param name the name of this Ai
+	 * @param random the random source of the search
+	 */
+	protected MctsAi(@Nonnull Side side, @Nonnull String name, @Nonnull Random random) {
+		super(side, name, random);
+	}
+
+	protected MctsAi(@Nonnull Side side, @Nonnull String name) { this(side, name, new Random()); }
+
+	/**
+	 * @return a new search engine; called for every move
+	 */
+	@Nonnull protected Mcts engine() { return new Mcts(); }
+
+	/**
+	 * @return the most iterations to run per move, unlimited by default
+	 */
+	protected long maxIterations() { return Long.MAX_VALUE; }
+
+	/**
+	 * @return whether to keep the search tree between moves, on by default
+	 */
+	protected boolean reusesTree() { return true; }
+
+	/**
+	 * @return whether to search on the opponent's time, off by default; keeps the tree regardless
+	 * of {@link #reusesTree()}
+	 */
+	protected boolean ponders() { return false; }
+
+	/**
+	 * @return the visits of the kept node the last search started from, 0 if it started cold
+	 */
+	synchronized int reusedVisits() { return reusedVisits; }
+
+	/**
+	 * Searches until the deadline and picks a move; by default a single threaded {@link #engine()}
+	 * search from the kept subtree for the board, or from the seeded state if there is none.
+	 */
+	@Override protected int bestMove(@Nonnull Board board, @Nonnull Deadline deadline) {
+		Match match;
+		synchronized (this) {
+			stopPondering();
+			match = keptRoot == null ? null : match(board);
+			keptState = null;
+			keptRoot = null;
+			reusedVisits = match == null ? 0 : match.node.visits();
+		}
+		SearchState state = match == null ? seed(board) : match.state;
+		Mcts.Node root = match == null ? Mcts.newRoot() : match.node.detach();
+		engine().search(state, root, deadline, maxIterations(), random());
+		Mcts.Node best = root.mostVisited();
+		if (best == null) return IntMove.NONE;
+		if (reusesTree() || ponders()) {
+			long key = state.zobristKey();
+			int mrX = state.mrXLocation();
+			state.makeMove(best.move());
+			synchronized (this) {
+				searchedKey = key;
+				searchedMrX = mrX;
+				keptState = state;
+				keptRoot = best.detach();
+				if (ponders()) startPondering();
+			}
+		}
+		return best.move();
+	}
+
+	/**
+	 * Re-roots the pondered search at the position after the move, or drops it if the tree has no
+	 * node for that position
+	 */
+	@Override public synchronized void onModelChanged(@Nonnull Board board, @Nonnull Event event) {
+		if (pondering == null) return;
+		if (event == Event.MOVE_MADE && isSearched(board)) return;
+		stopPondering();
+		Match match = event == Event.MOVE_MADE && keptRoot != null ? match(board) : null;
+		keptState = match == null ? null : match.state;
+		keptRoot = match == null ? null : match.node.detach();
+		if (match != null) startPondering();
+	}
+
+	@Override public void onTerminate() {
+		ExecutorService thread;
+		synchronized (this) {
+			stopPondering();
+			keptState = null;
+			keptRoot = null;
+			thread = ponderThread;
+			ponderThread = null;
+		}
+		if (thread != null) thread.shutdownNow();
+	}
+
+	// whether the board is the position the last pickMove searched from
+	private boolean isSearched(Board board) {
+		if (searchedMrX < 0 || board.getAvailableMoves().isEmpty()) return false;
+		try {
+			return SearchState.of(board, searchedMrX).zobristKey() == searchedKey;
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+	}
+
+	// the most visited node of the kept tree that fits the board, null if none does
+	@Nullable private Match match(Board board) {
+		var moves = board.getAvailableMoves();
+		if (!board.getWinner().isEmpty() || moves.isEmpty()) return null;
+		Map<Integer, SearchState> targets = new HashMap<>();
+		var next = moves.iterator().next();
+		try {
+			if (next.commencedBy().isMrX()) targets.put(next.source(), null);
+			else for (int location : mrXCandidates(board)) targets.put(location, null);
+			return match(board, targets, keptState, keptRoot);
+		} catch (IllegalArgumentException | IllegalStateException e) {
+			return null;
+		}
+	}
+
+	// targets maps MrX's possible locations to the board's position with him there, made lazily
+	@Nullable private static Match match(Board board, Map<Integer, SearchState> targets,
+	                                     SearchState state, Mcts.Node node) {
+		int mrX = state.mrXLocation();
+		if (targets.containsKey(mrX)) {
+			SearchState target = targets.get(mrX);
+			if (target == null) targets.put(mrX, target = SearchState.of(board, mrX));
+			if (target.zobristKey() == state.zobristKey()) return new Match(target, node);
+		}
+		Match best = null;
+		for (int i = 0; i < node.childCount(); i++) {
+			Mcts.Node child = node.child(i);
+			int move = child.move();
+			Piece piece = IntMove.piece(move);
+			int destination = IntMove.destination(move);
+			boolean fits = piece.isMrX()
+					? targets.containsKey(destination)
+					: board.getDetectiveLocation((Piece.Detective) piece).orElse(-1) == destination;
+			if (!fits) continue;
+			state.makeMove(move);
+			Match found = match(board, targets, state, child);
+			state.unmakeMove();
+			if (found != null && (best == null || found.node.visits() > best.node.visits())) best = found;
+		}
+		return best;
+	}
+
+	private void startPondering() {
+		if (ponderThread == null) ponderThread = Executors.newSingleThreadExecutor(
+				new ThreadFactoryBuilder().setNameFormat("ponder-%d").setDaemon(true).build());
+		SearchState state = keptState;
+		Mcts.Node root = keptRoot;
+		Deadline deadline = Deadline.never();
+		Random random = new Random(random().nextLong());
+		Mcts engine = engine();
+		ponderDeadline = deadline;
+		pondering = ponderThread.submit(() -> {
+			if (!state.isGameOver()) engine.search(state, root, deadline, Long.MAX_VALUE, random);
+		});
+	}
+
+	// waits for the pondering search, if any, to hand back the kept state and tree
+	private void stopPondering() {
+		if (pondering == null) return;
+		ponderDeadline.cancel();
+		try {
+			pondering.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			keptState = null;
+			keptRoot = null;
+		} catch (ExecutionException e) {
+			// a failed search may have left the state part way through an iteration
+			keptState = null;
+			keptRoot = null;
+		}
+		pondering = null;
+		ponderDeadline = null;
+	}
+}
@@ -0,0 +1,10 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import uk.ac.bris.cs.scotlandyard.model.SearchState.Side;
+
+/**
+ * Plays the detectives with {@link MctsAi}'s defaults
+ */
+public final class MctsDetectivesAi extends MctsAi {
+	public MctsDetectivesAi() { super(Side.DETECTIVES, "MCTS detectives"); }
+}
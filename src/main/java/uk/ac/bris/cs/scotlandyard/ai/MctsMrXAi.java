@@ -0,0 +1,10 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import uk.ac.bris.cs.scotlandyard.model.SearchState.Side;
+
+/**
+ * Plays MrX with {@link MctsAi}'s defaults
+ */
+public final class MctsMrXAi extends MctsAi {
+	public MctsMrXAi() { super(Side.MRX, "MCTS MrX"); }
+}
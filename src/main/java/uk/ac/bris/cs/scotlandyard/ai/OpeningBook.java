@@ -0,0 +1,195 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.GraphIndex;
+import uk.ac.bris.cs.scotlandyard.model.IntMove;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+import uk.ac.bris.cs.scotlandyard.model.SearchState;
+
+/**
+ * MrX's first move for every start of the standard game, made offline by
+ * {@link OpeningBookBuilder}.
+ * <br>
+ * A start is MrX on one of {@link ScotlandYard#MRX_LOCATIONS} and the detectives on distinct
+ * {@link ScotlandYard#DETECTIVE_LOCATIONS}, everyone holding their default tickets. Detectives
+ * all hold the same tickets, so which detective stands where does not matter and a start is
+ * keyed by MrX's location and the set of detective locations.
+ * <br>
+ * Books are files of the magic number, version, {@link GraphIndex#contentHash()} of the graph,
+ * entry count and then the entries' keys and moves sorted by key. The standard book, made for
+ * five detectives, is read from the {@value #RESOURCE} resource the first time it is used;
+ * without the resource it is empty.
+ * <br>
+ * The game does not ship the resource. A book is only worth playing if each start was searched
+ * for at least as long as a move in play, {@link OpeningBookBuilder}'s default of two seconds,
+ * and at that budget the 24024 starts of five detectives take about 13 hours of CPU time. Run
+ * the builder and copy its output to {@code src/main/resources/}{@value #RESOURCE} to use one.
+ */
+public final class OpeningBook {
+
+	/**
+	 * The resource {@link #standard()} is read from
+	 */
+	public static final String RESOURCE = "openings.bin";
+
+	private static final int MAGIC = 0x5359424B;
+	private static final int VERSION = 1;
+	private static final int LOCATION_BITS = 14;
+
+	private static final Supplier<OpeningBook> STANDARD = Suppliers.memoize(() -> load(RESOURCE));
+
+	private final long graphHash;
+	private final int[] keys;
+	private final int[] moves;
+
+	private OpeningBook(long graphHash, int[] keys, int[] moves) {
+		this.graphHash = graphHash;
+		this.keys = keys;
+		this.moves = moves;
+	}
+
+	/**
+	 * @return a book without entries
+	 */
+	@Nonnull public static OpeningBook empty() { return new OpeningBook(0, new int[0], new int[0]); }
+
+	/**
+	 * @return the book in the {@value #RESOURCE} resource, empty if there is none or it cannot be
+	 * read
+	 */
+	@Nonnull public static OpeningBook standard() { return STANDARD.get(); }
+
+	static OpeningBook load(String resource) {
+		InputStream in = OpeningBook.class.getClassLoader().getResourceAsStream(resource);
+		if (in == null) return empty();
+		try (in) {
+			return read(in);
+		} catch (IOException e) {
+			return empty();
+		}
+	}
+
+	/**
+	 * @param graph the graph the moves were found on
+	 * @param entries moves by {@link #key(SearchState)}
+	 * @return the book
+	 */
+	@Nonnull static OpeningBook of(@Nonnull ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph,
+	                               @Nonnull Map<Integer, Integer> entries) {
+		int[] keys = entries.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+		int[] moves = Arrays.stream(keys).map(entries::get).toArray();
+		return new OpeningBook(GraphIndex.of(graph).contentHash(), keys, moves);
+	}
+
+	/**
+	 * @param in the book, left open
+	 * @return the book
+	 * @throws IOException if the stream cannot be read or is not a book
+	 */
+	@Nonnull public static OpeningBook read(@Nonnull InputStream in) throws IOException {
+		var data = new DataInputStream(new BufferedInputStream(in));
+		if (data.readInt() != MAGIC) throw new IOException("Not an opening book");
+		int version = data.readInt();
+		if (version != VERSION) throw new IOException("Unsupported opening book version " + version);
+		long graphHash = data.readLong();
+		int size = data.readInt();
+		if (size < 0 || size > 1 << (LOCATION_BITS + 4)) throw new IOException("Corrupt opening book size " + size);
+		int[] keys = new int[size];
+		int[] moves = new int[size];
+		for (int i = 0; i < size; i++) {
+			keys[i] = data.readInt();
+			moves[i] = data.readInt();
+			if (i > 0 && keys[i] <= keys[i - 1]) throw new IOException("Opening book keys out of order");
+		}
+		return new OpeningBook(graphHash, keys, moves);
+	}
+
+	/**
+	 * @param out where to write the book, left open but flushed
+	 */
+	public void write(@Nonnull OutputStream out) throws IOException {
+		var data = new DataOutputStream(new BufferedOutputStream(out));
+		data.writeInt(MAGIC);
+		data.writeInt(VERSION);
+		data.writeLong(graphHash);
+		data.writeInt(keys.length);
+		for (int i = 0; i < keys.length; i++) {
+			data.writeInt(keys[i]);
+			data.writeInt(moves[i]);
+		}
+		data.flush();
+	}
+
+	/**
+	 * @return the number of starts in the book
+	 */
+	public int size() { return keys.length; }
+
+	/**
+	 * @param graph a game graph
+	 * @return whether the book was made for the graph
+	 */
+	public boolean isFor(@Nonnull ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph) {
+		return keys.length > 0 && GraphIndex.of(graph).contentHash() == graphHash;
+	}
+
+	/**
+	 * @param state a state
+	 * @return the book move for the state, {@link IntMove#NONE} if the state is not a start in
+	 * the book
+	 */
+	public int move(@Nonnull SearchState state) {
+		int key = key(state);
+		if (key < 0) return IntMove.NONE;
+		int i = Arrays.binarySearch(keys, key);
+		if (i < 0 || !isFor(state.getSetup().graph)) return IntMove.NONE;
+		return moves[i];
+	}
+
+	/**
+	 * @param state a state
+	 * @return the key of the start, -1 if the state is not one
+	 */
+	static int key(@Nonnull SearchState state) {
+		if (!state.isMrXTurn() || state.round() != 0) return -1;
+		int mrX = ScotlandYard.MRX_LOCATIONS.indexOf(state.mrXLocation());
+		if (mrX < 0 || !holdsDefaultTickets(state, Piece.MrX.MRX)) return -1;
+		var pieces = state.getPieces();
+		int detectives = 0;
+		for (int i = 1; i < pieces.size(); i++) {
+			int location = ScotlandYard.DETECTIVE_LOCATIONS.indexOf(state.location(i));
+			if (location < 0 || !holdsDefaultTickets(state, pieces.get(i))) return -1;
+			detectives |= 1 << location;
+		}
+		return mrX << LOCATION_BITS | detectives;
+	}
+
+	private static boolean holdsDefaultTickets(SearchState state, Piece piece) {
+		var tickets = piece.isMrX()
+				? ScotlandYard.defaultMrXTickets()
+				: ScotlandYard.defaultDetectiveTickets();
+		for (Ticket ticket : Ticket.values()) {
+			if (state.ticketCount(piece, ticket) != tickets.getOrDefault(ticket, 0)) return false;
+		}
+		return true;
+	}
+}
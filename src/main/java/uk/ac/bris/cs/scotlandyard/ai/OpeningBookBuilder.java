@@ -0,0 +1,126 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import com.google.common.collect.ImmutableList;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Deadline;
+import uk.ac.bris.cs.scotlandyard.model.DistanceOracle;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+import uk.ac.bris.cs.scotlandyard.model.SearchState;
+
+/**
+ * Makes {@link OpeningBook}s offline by searching every start with {@link AlphaBeta} for a fixed
+ * time. The workers share one {@link TranspositionTable}, as starts that differ in a single
+ * detective share most of their trees.
+ */
+public final class OpeningBookBuilder {
+
+	private OpeningBookBuilder() {}
+
+	/**
+	 * @param setup the game setup
+	 * @param detectives the number of detectives, between 1 and the number of
+	 * {@link ScotlandYard#DETECTIVE_LOCATIONS}
+	 * @return every start, see {@link OpeningBook}, with the detectives given their locations in
+	 * ascending order
+	 */
+	@Nonnull static List<SearchState> starts(@Nonnull GameSetup setup, int detectives) {
+		var locations = ScotlandYard.DETECTIVE_LOCATIONS;
+		if (detectives < 1 || detectives > Math.min(locations.size(), ScotlandYard.DETECTIVES.size()))
+			throw new IllegalArgumentException("Bad number of detectives: " + detectives);
+		List<SearchState> starts = new ArrayList<>();
+		for (int mrX : ScotlandYard.MRX_LOCATIONS) {
+			for (int set = 0; set < 1 << locations.size(); set++) {
+				if (Integer.bitCount(set) != detectives) continue;
+				var players = ImmutableList.<Player>builder();
+				for (int i = 0, d = 0; i < locations.size(); i++) {
+					if ((set & 1 << i) == 0) continue;
+					players.add(new Player(ScotlandYard.DETECTIVES.asList().get(d++),
+							ScotlandYard.defaultDetectiveTickets(), locations.get(i)));
+				}
+				starts.add(SearchState.of(setup,
+						new Player(Piece.MrX.MRX, ScotlandYard.defaultMrXTickets(), mrX), players.build()));
+			}
+		}
+		return starts;
+	}
+
+	/**
+	 * @param setup the game setup
+	 * @param detectives the number of detectives
+	 * @param millis how long to search each start for
+	 * @param threads how many starts to search at once
+	 * @return the book
+	 */
+	@Nonnull public static OpeningBook build(@Nonnull GameSetup setup, int detectives, long millis,
+	                                         int threads) {
+		var starts = starts(setup, detectives);
+		var evaluator = AlphaBeta.distanceEvaluator(DistanceOracle.of(setup.graph));
+		var table = new TranspositionTable(AlphaBeta.DEFAULT_TABLE_MEGABYTES * threads);
+		var pool = new WorkerPool(threads);
+		List<Callable<Map<Integer, Integer>>> tasks = new ArrayList<>();
+		for (int w = 0; w < threads; w++) {
+			int worker = w;
+			tasks.add(() -> {
+				var engine = new AlphaBeta(evaluator, AlphaBeta.DEFAULT_MAX_DEPTH, table);
+				Map<Integer, Integer> moves = new HashMap<>();
+				for (int i = worker; i < starts.size(); i += threads) {
+					var state = starts.get(i);
+					moves.put(OpeningBook.key(state),
+							engine.search(state, Deadline.after(millis, TimeUnit.MILLISECONDS)).move);
+				}
+				return moves;
+			});
+		}
+		Map<Integer, Integer> entries = new HashMap<>();
+		try {
+			for (var moves : pool.runAll(tasks)) entries.putAll(moves);
+		} finally {
+			pool.shutdown();
+		}
+		return OpeningBook.of(setup.graph, entries);
+	}
+
+	public static void main(String[] args) throws IOException {
+		List<String> positional = new ArrayList<>();
+		int detectives = ScotlandYard.DETECTIVES.size();
+		long millis = 2000;
+		int threads = Runtime.getRuntime().availableProcessors();
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+				case "--detectives": detectives = Integer.parseInt(args[++i]); break;
+				case "--millis": millis = Long.parseLong(args[++i]); break;
+				case "--threads": threads = Integer.parseInt(args[++i]); break;
+				default: positional.add(args[i]);
+			}
+		}
+		if (positional.size() != 1) {
+			System.err.println("Usage: OpeningBookBuilder <out file> [--detectives N] [--millis N] [--threads N]");
+			System.exit(2);
+		}
+		Path out = Path.of(positional.get(0));
+		long start = System.nanoTime();
+		var book = build(new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES),
+				detectives, millis, threads);
+		try (OutputStream stream = Files.newOutputStream(out)) {
+			book.write(stream);
+		}
+		System.out.printf("%d starts in %.1fs; book in %s, copy it to src/main/resources/%s%n",
+				book.size(), (System.nanoTime() - start) / 1e9, out, OpeningBook.RESOURCE);
+	}
+}
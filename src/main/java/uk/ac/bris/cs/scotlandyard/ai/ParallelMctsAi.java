@@ -0,0 +1,140 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.Deadline;
+import uk.ac.bris.cs.scotlandyard.model.IntMove;
+import uk.ac.bris.cs.scotlandyard.model.SearchState;
+import uk.ac.bris.cs.scotlandyard.model.SearchState.Side;
+
+/**
+ * An {@link MctsAi} that spreads every decision over several worker threads.
+ * <ul>
+ * <li>{@link Mode#ROOT}: every worker grows its own {@link Mcts} tree from its own
+ * {@link #seed(Board)}, so detectives search from a different guess of MrX's location per worker.
+ * The trees' root visit counts are summed per move. Each tree gets an equal share of
+ * {@link Mcts#DEFAULT_MAX_NODES}, so the trees together take no more memory than one.</li>
+ * <li>{@link Mode#TREE}: all workers grow one {@link ConcurrentMcts} tree from copies of a
+ * single seed.</li>
+ * </ul>
+ * Trees are not kept between moves and pondering is not supported, so {@link #reusesTree()} and
+ * {@link #ponders()} are always false.
+ * <br>
+ * Workers run on a pool owned by the Ai, created on first use and shut down by
+ * {@link #onTerminate()}. {@link #maxIterations()} limits
+ * all workers together.
+ */
+public abstract class ParallelMctsAi extends MctsAi {
+
+	/**
+	 * How the workers share the search
+	 */
+	public enum Mode {ROOT, TREE}
+
+	private final Mode mode;
+	private final WorkerPool pool;
+
+	/**
+	 * @param side the side this Ai plays
+	 * @param name the name of this Ai
+	 * @param mode how the workers share the search
+	 * @param workers the number of worker threads
+	 * @param random the random source; workers get their own sources seeded from it
+	 */
+	protected ParallelMctsAi(@Nonnull Side side, @Nonnull String name, @Nonnull Mode mode,
+	                         int workers, @Nonnull Random random) {
+		super(side, name, random);
+		this.mode = Objects.requireNonNull(mode);
+		this.pool = new WorkerPool(workers);
+	}
+
+	/**
+	 * Uses one worker per available processor
+	 */
+	protected ParallelMctsAi(@Nonnull Side side, @Nonnull String name, @Nonnull Mode mode) {
+		this(side, name, mode, Runtime.getRuntime().availableProcessors(), new Random());
+	}
+
+	@Nonnull public Mode mode() { return mode; }
+
+	public int workers() { return pool.workers(); }
+
+	/**
+	 * @return a new shared tree engine; called for every move in {@link Mode#TREE}
+	 */
+	@Nonnull protected ConcurrentMcts concurrentEngine() { return new ConcurrentMcts(); }
+
+	/**
+	 * @return a new engine for one worker's tree in {@link Mode#ROOT}, called for every worker and
+	 * move; by default limited to an equal share of {@link Mcts#DEFAULT_MAX_NODES}
+	 */
+	@Nonnull @Override protected Mcts engine() {
+		return new Mcts(Mcts.DEFAULT_EXPLORATION, Mcts.RANDOM, Math.max(Mcts.DEFAULT_MAX_NODES / workers(), 1));
+	}
+
+	@Override protected final boolean reusesTree() { return false; }
+
+	@Override protected final boolean ponders() { return false; }
+
+	@Override public void onTerminate() {
+		super.onTerminate();
+		pool.shutdown();
+	}
+
+	@Override protected int bestMove(@Nonnull Board board, @Nonnull Deadline deadline) {
+		return mode == Mode.ROOT ? rootParallel(board, deadline) : treeParallel(board, deadline);
+	}
+
+	private int rootParallel(Board board, Deadline deadline) {
+		// the iteration limit is split evenly between the trees
+		long limit = maxIterations();
+		long iterations = limit == Long.MAX_VALUE ? limit : (limit + workers() - 1) / workers();
+		List<Callable<Mcts.Node>> tasks = new ArrayList<>();
+		for (int i = 0; i < workers(); i++) {
+			SearchState state = seed(board);
+			var random = new Random(random().nextLong());
+			tasks.add(() -> {
+				var root = Mcts.newRoot();
+				engine().search(state, root, deadline, iterations, random);
+				return root;
+			});
+		}
+		Map<Integer, Integer> visits = new HashMap<>();
+		for (Mcts.Node root : pool.runAll(tasks)) {
+			for (int i = 0; i < root.childCount(); i++) {
+				Mcts.Node child = root.child(i);
+				visits.merge(child.move(), child.visits(), Integer::sum);
+			}
+		}
+		return visits.entrySet().stream()
+				.max(Map.Entry.comparingByValue())
+				.map(Map.Entry::getKey)
+				.orElse(IntMove.NONE);
+	}
+
+	private int treeParallel(Board board, Deadline deadline) {
+		var engine = concurrentEngine();
+		var root = ConcurrentMcts.newRoot();
+		var iterations = new AtomicLong(maxIterations());
+		SearchState seeded = seed(board);
+		List<Callable<Long>> tasks = new ArrayList<>();
+		for (int i = 0; i < workers(); i++) {
+			SearchState state = seeded.copy();
+			var random = new Random(random().nextLong());
+			tasks.add(() -> engine.search(state, root, deadline, iterations, random));
+		}
+		pool.runAll(tasks);
+		ConcurrentMcts.Node best = root.mostVisited();
+		return best == null ? IntMove.NONE : best.move();
+	}
+}
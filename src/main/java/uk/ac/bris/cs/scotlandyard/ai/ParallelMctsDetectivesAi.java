@@ -0,0 +1,11 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import uk.ac.bris.cs.scotlandyard.model.SearchState.Side;
+
+/**
+ * Plays the detectives with a root-parallel search on every core, each tree searching from its
+ * own guess of MrX's location
+ */
+public final class ParallelMctsDetectivesAi extends ParallelMctsAi {
+	public ParallelMctsDetectivesAi() { super(Side.DETECTIVES, "Parallel MCTS detectives", Mode.ROOT); }
+}
@@ -0,0 +1,10 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import uk.ac.bris.cs.scotlandyard.model.SearchState.Side;
+
+/**
+ * Plays MrX with a tree-parallel search on every core
+ */
+public final class ParallelMctsMrXAi extends ParallelMctsAi {
+	public ParallelMctsMrXAi() { super(Side.MRX, "Parallel MCTS MrX", Mode.TREE); }
+}
@@ -0,0 +1,12 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import uk.ac.bris.cs.scotlandyard.model.SearchState.Side;
+
+/**
+ * Plays MrX with {@link MctsAi}'s defaults, searching on the detectives' time as well
+ */
+public final class PonderingMctsMrXAi extends MctsAi {
+	public PonderingMctsMrXAi() { super(Side.MRX, "MCTS MrX (pondering)"); }
+
+	@Override protected boolean ponders() { return true; }
+}
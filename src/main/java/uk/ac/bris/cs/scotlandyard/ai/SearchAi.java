@@ -0,0 +1,161 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import com.google.common.collect.ImmutableSet;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+
+import io.atlassian.fugue.Pair;
+import uk.ac.bris.cs.scotlandyard.model.Ai;
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.Deadline;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.IntMove;
+import uk.ac.bris.cs.scotlandyard.model.LogEntry;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.MrXLocationTracker;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+import uk.ac.bris.cs.scotlandyard.model.SearchState;
+import uk.ac.bris.cs.scotlandyard.model.SearchState.Side;
+
+/**
+ * Base class for {@link Ai}s that play one side by searching a {@link SearchState}.
+ * <br>
+ * Each call to {@link #pickMove(Board, Pair)} checks that it is this Ai's side to move, then
+ * searches with {@link #bestMove(Board, Deadline)} until a share of the timeout given by
+ * {@link #budgetNanos(Pair)} has passed. Detectives do not know where MrX is; by default they
+ * search from a location drawn from the {@link MrXLocationTracker} candidates, see
+ * {@link #seed(Board)}; the tracker is kept between calls and only reads the travel log entries
+ * added since the last one. MrX plays his first move from the {@link #book()} without searching when
+ * the start is in it.
+ */
+public abstract class SearchAi implements Ai {
+
+	private final Side side;
+	private final String name;
+	private final Random random;
+
+	// follows the game being played, see mrXCandidates
+	private MrXLocationTracker tracker;
+	private GameSetup trackedSetup;
+	private List<LogEntry> trackedLog;
+
+	/**
+	 * @param side the side this Ai plays
+	 * @param name the name of this Ai
+	 * @param random the random source of the search
+	 */
+	protected SearchAi(@Nonnull Side side, @Nonnull String name, @Nonnull Random random) {
+		this.side = Objects.requireNonNull(side);
+		this.name = Objects.requireNonNull(name);
+		this.random = Objects.requireNonNull(random);
+	}
+
+	@Nonnull @Override public String name() { return name; }
+
+	@Nonnull public Side side() { return side; }
+
+	@Nonnull protected Random random() { return random; }
+
+	/**
+	 * @param timeoutPair the timeout given to {@link #pickMove(Board, Pair)}
+	 * @return how long to search for; by default 80% of the timeout, leaving at least 50ms
+	 */
+	protected long budgetNanos(Pair<Long, TimeUnit> timeoutPair) {
+		long timeout = timeoutPair.right().toNanos(timeoutPair.left());
+		return Math.max(Math.min(timeout * 4 / 5, timeout - TimeUnit.MILLISECONDS.toNanos(50)), 0);
+	}
+
+	/**
+	 * @return where MrX looks up his first move, {@link OpeningBook#standard()} by default
+	 */
+	@Nonnull protected OpeningBook book() { return OpeningBook.standard(); }
+
+	/**
+	 * Creates the state to search from. MrX's location is known on his turn; on the detectives'
+	 * turn it is drawn uniformly from the {@link MrXLocationTracker} candidates.
+	 *
+	 * @param board the board to move on
+	 * @return the root state
+	 */
+	@Nonnull protected SearchState seed(@Nonnull Board board) {
+		var moves = board.getAvailableMoves();
+		if (moves.iterator().next().commencedBy().isMrX()) return SearchState.of(board);
+		return SearchState.of(board, guessMrXLocation(board));
+	}
+
+	/**
+	 * @param board a board where it is the detectives' turn
+	 * @return the nodes MrX could be on, starting from {@link ScotlandYard#MRX_LOCATIONS}; never
+	 * empty
+	 */
+	@Nonnull protected synchronized int[] mrXCandidates(@Nonnull Board board) {
+		var log = board.getMrXTravelLog();
+		// a new game, or another one, starts a new tracker; otherwise only the new entries are read
+		if (tracker == null || trackedSetup != board.getSetup() || log.size() < tracker.processed()
+				|| !log.subList(0, tracker.processed()).equals(trackedLog)) {
+			tracker = new MrXLocationTracker(board.getSetup(), ScotlandYard.MRX_LOCATIONS);
+			if (tracker.size() == 0) tracker = new MrXLocationTracker(board.getSetup());
+			trackedSetup = board.getSetup();
+		}
+		tracker.update(board);
+		trackedLog = log;
+		int[] candidates = tracker.toArray();
+		if (candidates.length == 0)
+			throw new IllegalStateException("No location is consistent with MrX's travel log");
+		return candidates;
+	}
+
+	/**
+	 * @param board a board where it is the detectives' turn
+	 * @return a node MrX could be on, drawn uniformly from {@link #mrXCandidates(Board)}
+	 */
+	protected int guessMrXLocation(@Nonnull Board board) {
+		int[] candidates = mrXCandidates(board);
+		return candidates[random.nextInt(candidates.length)];
+	}
+
+	/**
+	 * Searches until the deadline and picks a move. Only called when there is more than one
+	 * move to pick from.
+	 *
+	 * @param board the board to move on
+	 * @param deadline when to stop
+	 * @return the encoded move to play, {@link IntMove#NONE} if none was found
+	 */
+	protected abstract int bestMove(@Nonnull Board board, @Nonnull Deadline deadline);
+
+	@Nonnull @Override public Move pickMove(@Nonnull Board board, Pair<Long, TimeUnit> timeoutPair) {
+		return pickMove(board, timeoutPair, Deadline.after(timeoutPair));
+	}
+
+	/**
+	 * Searches until {@link #budgetNanos(Pair)} has passed or the deadline expires, whichever is
+	 * first.
+	 */
+	@Nonnull @Override public Move pickMove(@Nonnull Board board, Pair<Long, TimeUnit> timeoutPair,
+	                                        @Nonnull Deadline deadline) {
+		Deadline budget = deadline.within(budgetNanos(timeoutPair), TimeUnit.NANOSECONDS);
+		ImmutableSet<Move> moves = board.getAvailableMoves();
+		if (moves.isEmpty()) throw new IllegalArgumentException("No moves to pick from");
+		Piece mover = moves.iterator().next().commencedBy();
+		if (mover.isMrX() != (side == Side.MRX))
+			throw new IllegalArgumentException(name + " plays " + side + " but " + mover + " is to move");
+		if (moves.size() == 1) return moves.iterator().next();
+		if (side == Side.MRX && board.getMrXTravelLog().isEmpty()) {
+			int booked = book().move(SearchState.of(board));
+			if (booked != IntMove.NONE && moves.contains(IntMove.decode(booked))) return IntMove.decode(booked);
+		}
+		int best = bestMove(board, budget);
+		if (best != IntMove.NONE) {
+			Move move = IntMove.decode(best);
+			if (moves.contains(move)) return move;
+		}
+		return moves.iterator().next();
+	}
+}
@@ -0,0 +1,166 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.GraphIndex;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+import uk.ac.bris.cs.scotlandyard.model.SearchState;
+
+/**
+ * A memory mapped endgame table, made by {@link TablebaseGenerator}, of how many more rounds MrX
+ * can survive from each position with him to move against a fixed number of detectives. Values
+ * are capped at {@link #rounds()}: MrX with {@code r} rounds left wins a position if and only if
+ * its value is at least {@code r}, for every {@code r} up to the cap.
+ * <br>
+ * Tickets are not tracked: the detectives may use every edge but the ferry, MrX every edge, and
+ * nobody plays double moves. The values are exact for that game and an estimate for positions
+ * where running out of tickets matters. Detectives move in the order they are given, as in
+ * {@link SearchState}.
+ * <br>
+ * Files start with a header of the magic number, version, {@link #graphHash(ImmutableValueGraph)}
+ * of the graph they were made for, node count, detective count and round cap, followed by one
+ * byte per position indexed by MrX's location and then each detective's. Probes read a single
+ * byte; tables are safe to share between threads.
+ * <br>
+ * This is an offline analysis tool for small games of one or two detectives, see
+ * {@link TablebaseGenerator#MAX_DETECTIVES}; no Ai or search probes it. The standard game's five
+ * detectives need {@code 200^6} positions, far more than a file can hold, and as tickets are not
+ * tracked the values could not be trusted as exact scores in a search anyway.
+ */
+public final class Tablebase {
+
+	/**
+	 * Returned by {@link #survivableRounds(SearchState)} for positions the table does not cover
+	 */
+	public static final int UNKNOWN = -1;
+
+	static final int MAGIC = 0x53595442;
+	static final int VERSION = 1;
+	static final int HEADER_BYTES = 28;
+
+	private final ByteBuffer values;
+	private final long graphHash;
+	private final int nodes;
+	private final int detectives;
+	private final int rounds;
+
+	private Tablebase(ByteBuffer values, long graphHash, int nodes, int detectives, int rounds) {
+		this.values = values;
+		this.graphHash = graphHash;
+		this.nodes = nodes;
+		this.detectives = detectives;
+		this.rounds = rounds;
+	}
+
+	/**
+	 * Maps a table file into memory; the file may be closed or moved once this returns
+	 *
+	 * @param file the table file
+	 * @return the table
+	 * @throws IOException if the file cannot be read or is not a table
+	 */
+	@Nonnull public static Tablebase open(@Nonnull Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size < HEADER_BYTES) throw new IOException("Not a tablebase: " + file);
+			var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			if (buffer.getInt() != MAGIC) throw new IOException("Not a tablebase: " + file);
+			int version = buffer.getInt();
+			if (version != VERSION) throw new IOException("Unsupported tablebase version " + version);
+			long graphHash = buffer.getLong();
+			int nodes = buffer.getInt();
+			int detectives = buffer.getInt();
+			int rounds = buffer.getInt();
+			if (nodes < 1 || detectives < 1 || rounds < 1 || rounds > 0xFF
+					|| size != HEADER_BYTES + positions(nodes, detectives))
+				throw new IOException("Corrupt tablebase header: " + file);
+			return new Tablebase(buffer.slice(), graphHash, nodes, detectives, rounds);
+		}
+	}
+
+	/**
+	 * @param graph a game graph
+	 * @return a hash of the graph's nodes, edges and transports; equal graphs hash equally
+	 * whatever order they were built in
+	 */
+	public static long graphHash(@Nonnull ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph) {
+		return GraphIndex.of(graph).contentHash();
+	}
+
+	// the number of positions, or -1 if they do not fit in a mapped file
+	static long positions(int nodes, int detectives) {
+		long positions = nodes;
+		for (int i = 0; i < detectives; i++) {
+			positions *= nodes;
+			if (positions > Integer.MAX_VALUE - HEADER_BYTES) return -1;
+		}
+		return positions;
+	}
+
+	/**
+	 * @return the hash of the graph the table was made for
+	 */
+	public long graphHash() { return graphHash; }
+
+	/**
+	 * @param graph a game graph
+	 * @return whether the table was made for the graph
+	 */
+	public boolean isFor(@Nonnull ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph) {
+		return graphHash(graph) == graphHash;
+	}
+
+	/**
+	 * @return the number of detectives in every position
+	 */
+	public int detectives() { return detectives; }
+
+	/**
+	 * @return the most rounds a value counts up to
+	 */
+	public int rounds() { return rounds; }
+
+	/**
+	 * @param mrX MrX's location
+	 * @param detectives the detectives' locations, in the order they move
+	 * @return the rounds MrX can survive with him to move, at most {@link #rounds()}; 0 for
+	 * positions that cannot happen, such as MrX sharing a node with a detective
+	 * @throws IllegalArgumentException if the number of detectives is not {@link #detectives()} or
+	 * a location is outside the graph
+	 */
+	public int survivableRounds(int mrX, @Nonnull int... detectives) {
+		if (detectives.length != this.detectives)
+			throw new IllegalArgumentException("Table is for " + this.detectives + " detectives");
+		int index = node(mrX);
+		for (int detective : detectives) index = index * nodes + node(detective);
+		return values.get(index) & 0xFF;
+	}
+
+	/**
+	 * @param state a state of the graph the table was made for
+	 * @return the rounds MrX can survive, see {@link #survivableRounds(int, int...)}, or
+	 * {@link #UNKNOWN} if it is not MrX's turn, the game is over or the number of detectives
+	 * differs
+	 */
+	public int survivableRounds(@Nonnull SearchState state) {
+		if (state.pieceCount() != detectives + 1 || !state.isMrXTurn() || state.isGameOver())
+			return UNKNOWN;
+		int index = node(state.location(0));
+		for (int i = 1; i <= detectives; i++) index = index * nodes + node(state.location(i));
+		return values.get(index) & 0xFF;
+	}
+
+	private int node(int node) {
+		if (node < 0 || node >= nodes) throw new IllegalArgumentException("Node out of range: " + node);
+		return node;
+	}
+}
@@ -0,0 +1,226 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.DistanceOracle;
+import uk.ac.bris.cs.scotlandyard.model.GraphIndex;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+/**
+ * Makes {@link Tablebase} files offline by retrograde analysis.
+ * <br>
+ * Round {@code r} values all positions from the values of round {@code r - 1}, so the whole table
+ * takes {@link Tablebase#rounds()} passes. Each pass moves the detectives back one at a time,
+ * last first, each step keeping the best reply of a single detective, and then MrX, so a pass
+ * costs the number of positions times the detectives plus one times the average degree rather
+ * than every joint move. Positions are split between threads by MrX's location.
+ * <br>
+ * Solving keeps a few arrays of one byte per position in memory, about 8 million positions for
+ * two detectives on the standard map; three detectives would already need several gigabytes, so
+ * at most {@link #MAX_DETECTIVES} are supported.
+ */
+public final class TablebaseGenerator {
+
+	/**
+	 * The most detectives a table can be made for
+	 */
+	public static final int MAX_DETECTIVES = 2;
+
+	private TablebaseGenerator() {}
+
+	/**
+	 * Solves every position and writes the table
+	 *
+	 * @param file where to write the table, replaced if it exists
+	 * @param graph the game graph
+	 * @param detectives the number of detectives, between 1 and {@link #MAX_DETECTIVES}
+	 * @param rounds the most rounds a value counts up to, between 1 and 255
+	 * @throws IllegalArgumentException if the table would not fit in a file {@link Tablebase} can map
+	 */
+	public static void write(@Nonnull Path file,
+	                         @Nonnull ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph,
+	                         int detectives, int rounds) throws IOException {
+		int nodes = GraphIndex.of(graph).maxNode() + 1;
+		byte[] values = solve(graph, detectives, rounds);
+		var header = ByteBuffer.allocate(Tablebase.HEADER_BYTES)
+				.putInt(Tablebase.MAGIC)
+				.putInt(Tablebase.VERSION)
+				.putLong(Tablebase.graphHash(graph))
+				.putInt(nodes)
+				.putInt(detectives)
+				.putInt(rounds)
+				.flip();
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			while (header.hasRemaining()) channel.write(header);
+			var body = ByteBuffer.wrap(values);
+			while (body.hasRemaining()) channel.write(body);
+		}
+	}
+
+	/**
+	 * @return the table's values, laid out as in the file
+	 */
+	@Nonnull static byte[] solve(@Nonnull ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph,
+	                             int detectives, int rounds) {
+		if (detectives < 1 || detectives > MAX_DETECTIVES)
+			throw new IllegalArgumentException("Tables are for 1 to " + MAX_DETECTIVES + " detectives");
+		if (rounds < 1 || rounds > 0xFF) throw new IllegalArgumentException("Rounds must be between 1 and 255");
+		var index = GraphIndex.of(graph);
+		int nodes = index.maxNode() + 1;
+		long positions = Tablebase.positions(nodes, detectives);
+		if (positions < 0) throw new IllegalArgumentException("Too many positions for " + detectives + " detectives");
+		int[][] mrXMoves = new int[nodes][];
+		int[][] detectiveMoves = new int[nodes][];
+		for (int node = 0; node < nodes; node++) {
+			mrXMoves[node] = neighbours(index, node, DistanceOracle.ALL_TICKETS);
+			detectiveMoves[node] = neighbours(index, node, DistanceOracle.DETECTIVE_TICKETS);
+		}
+		// strides[0] is MrX's, strides[j] detective j's
+		int[] strides = new int[detectives + 1];
+		strides[detectives] = 1;
+		for (int j = detectives - 1; j >= 0; j--) strides[j] = strides[j + 1] * nodes;
+
+		var solver = new Solver(nodes, detectives, strides, mrXMoves, detectiveMoves, (int) positions);
+		byte[] values = new byte[(int) positions];
+		for (int round = 1; round <= rounds; round++) values = solver.pass(values);
+		return values;
+	}
+
+	private static int[] neighbours(GraphIndex index, int node, int tickets) {
+		if (!index.contains(node)) return new int[0];
+		return IntStream.range(index.start(node), index.end(node))
+				.filter(i -> (index.tickets(i) & tickets) != 0)
+				.map(index::neighbour)
+				.toArray();
+	}
+
+	private static final class Solver {
+		final int nodes;
+		final int detectives;
+		final int[] strides;
+		final int[][] mrXMoves;
+		final int[][] detectiveMoves;
+		byte[] layer;
+		byte[] scratch;
+
+		Solver(int nodes, int detectives, int[] strides, int[][] mrXMoves, int[][] detectiveMoves,
+		       int positions) {
+			this.nodes = nodes;
+			this.detectives = detectives;
+			this.strides = strides;
+			this.mrXMoves = mrXMoves;
+			this.detectiveMoves = detectiveMoves;
+			this.layer = new byte[positions];
+			this.scratch = new byte[positions];
+		}
+
+		// the values one round deeper than the given ones
+		byte[] pass(byte[] previous) {
+			// every detective has moved and MrX was not caught: he survived this round
+			for (int p = 0; p < previous.length; p++) layer[p] = (byte) (previous[p] + 1);
+			for (int j = detectives; j >= 1; j--) {
+				int detective = j;
+				byte[] from = layer, to = scratch;
+				IntStream.range(0, nodes).parallel().forEach(m -> detectiveStep(from, to, m, detective));
+				scratch = layer;
+				layer = to;
+			}
+			byte[] result = new byte[previous.length];
+			byte[] from = layer;
+			IntStream.range(0, nodes).parallel().forEach(m -> mrXStep(from, result, m));
+			return result;
+		}
+
+		void locations(int p, int[] out) {
+			for (int j = detectives; j >= 0; j--) {
+				out[j] = p % nodes;
+				p /= nodes;
+			}
+		}
+
+		// detective j moves to the reply worst for MrX; earlier detectives have already moved
+		void detectiveStep(byte[] from, byte[] to, int mrX, int j) {
+			int[] at = new int[detectives + 1];
+			for (int p = mrX * strides[0], end = p + strides[0]; p < end; p++) {
+				locations(p, at);
+				int best = Integer.MAX_VALUE;
+				for (int destination : detectiveMoves[at[j]]) {
+					if (occupied(at, destination, j)) continue;
+					if (destination == mrX) {
+						best = 0;
+						break;
+					}
+					best = Math.min(best, from[p + (destination - at[j]) * strides[j]] & 0xFF);
+				}
+				// a detective with nowhere to go stays put
+				to[p] = best == Integer.MAX_VALUE ? from[p] : (byte) best;
+			}
+		}
+
+		// MrX moves to the reply best for him, positions he cannot be in are worth nothing
+		void mrXStep(byte[] from, byte[] to, int mrX) {
+			int[] at = new int[detectives + 1];
+			for (int p = mrX * strides[0], end = p + strides[0]; p < end; p++) {
+				locations(p, at);
+				if (!valid(at)) continue;
+				int best = 0;
+				for (int destination : mrXMoves[mrX]) {
+					if (occupied(at, destination, 0)) continue;
+					best = Math.max(best, from[p + (destination - mrX) * strides[0]] & 0xFF);
+				}
+				to[p] = (byte) best;
+			}
+		}
+
+		// whether a detective other than the given piece is at the node
+		boolean occupied(int[] at, int node, int piece) {
+			for (int i = 1; i <= detectives; i++) if (i != piece && at[i] == node) return true;
+			return false;
+		}
+
+		// every piece on a node of its own; nodes without edges are taken to be missing
+		boolean valid(int[] at) {
+			for (int i = 0; i <= detectives; i++) {
+				if (mrXMoves[at[i]].length == 0) return false;
+				for (int k = 0; k < i; k++) if (at[k] == at[i]) return false;
+			}
+			return true;
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		List<String> positional = new ArrayList<>();
+		int detectives = 2;
+		int rounds = 8;
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+				case "--detectives": detectives = Integer.parseInt(args[++i]); break;
+				case "--rounds": rounds = Integer.parseInt(args[++i]); break;
+				default: positional.add(args[i]);
+			}
+		}
+		if (positional.size() != 1) {
+			System.err.println("Usage: TablebaseGenerator <out file> [--detectives N] [--rounds N]");
+			System.exit(2);
+		}
+		Path out = Path.of(positional.get(0));
+		long start = System.nanoTime();
+		write(out, ScotlandYard.standardGraph(), detectives, rounds);
+		System.out.printf("%d detectives, %d rounds in %.1fs; table in %s%n",
+				detectives, rounds, (System.nanoTime() - start) / 1e9, out);
+	}
+}
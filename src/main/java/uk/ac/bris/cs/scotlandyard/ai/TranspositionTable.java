@@ -0,0 +1,166 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.IntMove;
+import uk.ac.bris.cs.scotlandyard.model.Zobrist;
+
+/**
+ * A fixed size table of search results keyed by {@link Zobrist} keys, safe to share between
+ * search threads without locks.
+ * <br>
+ * Entries are packed into a {@code long}, read back with {@link #move(long)},
+ * {@link #score(long)}, {@link #depth(long)} and {@link #bound(long)}. Each key maps to a bucket
+ * of two entries: a depth-preferred one, replaced only by searches at least as deep or of the
+ * same position, and one that every other store replaces. An entry is stored as its data and
+ * the data XOR its key, so a read that races a write sees a key that does not match and misses
+ * rather than returning a torn entry.
+ * <br>
+ * Scores are stored as given; searches that score wins by distance should store them relative
+ * to the node.
+ */
+public final class TranspositionTable {
+
+	/**
+	 * Returned by {@link #probe(long)} when the table has no entry for the key
+	 */
+	public static final long MISS = 0;
+
+	/**
+	 * The score is exact
+	 */
+	public static final int EXACT = 1;
+	/**
+	 * The score is a lower bound, the search failed high
+	 */
+	public static final int LOWER = 2;
+	/**
+	 * The score is an upper bound, the search failed low
+	 */
+	public static final int UPPER = 3;
+
+	/**
+	 * The largest score that can be stored, and the negation of the smallest
+	 */
+	public static final int MAX_SCORE = (1 << 21) - 1;
+
+	/**
+	 * The largest depth that can be stored
+	 */
+	public static final int MAX_DEPTH = 0xFF;
+
+	// layout: move in bits 0-31, score 32-53, depth 54-61, bound 62-63
+	private static final int SCORE_SHIFT = 32;
+	private static final int DEPTH_SHIFT = 54;
+	private static final int BOUND_SHIFT = 62;
+	private static final long SCORE_MASK = (1L << 22) - 1;
+
+	// two entries of two longs each
+	private static final int BUCKET_BYTES = 32;
+	private static final int MAX_BUCKETS = 1 << 28;
+
+	private final AtomicLongArray entries;
+	private final int mask;
+
+	/**
+	 * @param megabytes the most memory the table may use, at least 1; rounded down to a power of
+	 * two number of buckets
+	 */
+	public TranspositionTable(int megabytes) {
+		if (megabytes < 1) throw new IllegalArgumentException("Table needs at least 1 MB");
+		long buckets = Math.min(Long.highestOneBit((long) megabytes << 20) / BUCKET_BYTES, MAX_BUCKETS);
+		this.entries = new AtomicLongArray((int) buckets * 4);
+		this.mask = (int) buckets - 1;
+	}
+
+	/**
+	 * @return the number of entries the table holds
+	 */
+	public int capacity() { return entries.length() / 2; }
+
+	/**
+	 * @param key the position's key
+	 * @return the entry for the key, {@link #MISS} if there is none
+	 */
+	public long probe(long key) {
+		int base = bucket(key);
+		for (int i = base; i < base + 4; i += 2) {
+			long data = entries.get(i + 1);
+			if ((entries.get(i) ^ data) == key && bound(data) != 0) return data;
+		}
+		return MISS;
+	}
+
+	/**
+	 * See {@link #probe(long)}
+	 */
+	public long probe(@Nonnull Zobrist.Keyed state) { return probe(state.zobristKey()); }
+
+	/**
+	 * @param key the position's key
+	 * @param move the best move found, or {@link IntMove#NONE}
+	 * @param score the score, at most {@link #MAX_SCORE} either way
+	 * @param depth the depth searched, between 0 and {@link #MAX_DEPTH}
+	 * @param bound one of {@link #EXACT}, {@link #LOWER} and {@link #UPPER}
+	 */
+	public void store(long key, int move, int score, int depth, int bound) {
+		if (score < -MAX_SCORE || score > MAX_SCORE)
+			throw new IllegalArgumentException("Score out of range: " + score);
+		if (depth < 0 || depth > MAX_DEPTH) throw new IllegalArgumentException("Depth out of range: " + depth);
+		if (bound < EXACT || bound > UPPER) throw new IllegalArgumentException("Bad bound: " + bound);
+		long data = (move & 0xFFFFFFFFL)
+				| (score & SCORE_MASK) << SCORE_SHIFT
+				| (long) depth << DEPTH_SHIFT
+				| (long) bound << BOUND_SHIFT;
+		int base = bucket(key);
+		long preferred = entries.get(base + 1);
+		boolean replace = bound(preferred) == 0
+				|| (entries.get(base) ^ preferred) == key
+				|| depth >= depth(preferred);
+		int slot = replace ? base : base + 2;
+		entries.set(slot, key ^ data);
+		entries.set(slot + 1, data);
+	}
+
+	/**
+	 * See {@link #store(long, int, int, int, int)}
+	 */
+	public void store(@Nonnull Zobrist.Keyed state, int move, int score, int depth, int bound) {
+		store(state.zobristKey(), move, score, depth, bound);
+	}
+
+	/**
+	 * Empties the table; not atomic with respect to concurrent stores
+	 */
+	public void clear() {
+		for (int i = 0; i < entries.length(); i++) entries.set(i, 0);
+	}
+
+	/**
+	 * @param entry an entry other than {@link #MISS}
+	 * @return the entry's move, which may not be legal if another position's key collided
+	 */
+	public static int move(long entry) { return (int) entry; }
+
+	/**
+	 * @param entry an entry other than {@link #MISS}
+	 * @return the entry's score
+	 */
+	public static int score(long entry) { return (int) (entry << (64 - DEPTH_SHIFT) >> (64 - DEPTH_SHIFT + SCORE_SHIFT)); }
+
+	/**
+	 * @param entry an entry other than {@link #MISS}
+	 * @return the entry's depth
+	 */
+	public static int depth(long entry) { return (int) (entry >>> DEPTH_SHIFT) & MAX_DEPTH; }
+
+	/**
+	 * @param entry an entry other than {@link #MISS}
+	 * @return the entry's bound, {@link #EXACT}, {@link #LOWER} or {@link #UPPER}
+	 */
+	public static int bound(long entry) { return (int) (entry >>> BOUND_SHIFT); }
+
+	private int bucket(long key) { return ((int) (key ^ (key >>> 32)) & mask) * 4; }
+}
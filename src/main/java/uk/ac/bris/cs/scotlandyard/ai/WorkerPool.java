@@ -0,0 +1,57 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A fixed pool of daemon search threads, created on first use
+ */
+final class WorkerPool {
+
+	private final int workers;
+	private ExecutorService pool;
+
+	WorkerPool(int workers) {
+		if (workers < 1) throw new IllegalArgumentException("Need at least one worker");
+		this.workers = workers;
+	}
+
+	int workers() { return workers; }
+
+	private synchronized ExecutorService pool() {
+		if (pool == null) pool = Executors.newFixedThreadPool(workers, new ThreadFactoryBuilder()
+				.setNameFormat("search-worker-%d").setDaemon(true).build());
+		return pool;
+	}
+
+	/**
+	 * Runs the tasks and waits for all of them
+	 *
+	 * @return the results in task order
+	 * @throws IllegalStateException if a task failed or the caller was interrupted
+	 */
+	<T> List<T> runAll(List<Callable<T>> tasks) {
+		List<T> results = new ArrayList<>(tasks.size());
+		try {
+			for (Future<T> future : pool().invokeAll(tasks)) results.add(future.get());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while searching", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Search worker failed", e.getCause());
+		}
+		return results;
+	}
+
+	synchronized void shutdown() {
+		if (pool != null) pool.shutdownNow();
+		pool = null;
+	}
+}
@@ -5,7 +5,6 @@ package uk.ac.bris.cs.scotlandyard.model;
 import io.atlassian.fugue.Pair;
 
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.annotation.Nonnull;
 
@@ -34,6 +33,21 @@ public interface Ai {
 	 */
 	@Nonnull Move pickMove(@Nonnull Board board, Pair<Long, TimeUnit> timeoutPair);
 
+	/**
+	 * Same as {@link #pickMove(Board, Pair)}, with a {@link Deadline} that is cancelled when the
+	 * caller stops waiting for the move. AIs that search should poll {@link Deadline#isExpired()}
+	 * and return as soon as it is true. Defaults to ignoring the deadline.
+	 *
+	 * @param board       the game board
+	 * @param timeoutPair the time the AI has to make a decision, see {@link #pickMove(Board, Pair)}
+	 * @param deadline    expires when the timeout has passed or the caller gives up, whichever is first
+	 * @return a correct move from {@link Board#getAvailableMoves()} in the game board
+	 */
+	@Nonnull default Move pickMove(@Nonnull Board board, Pair<Long, TimeUnit> timeoutPair,
+	                               @Nonnull Deadline deadline) {
+		return pickMove(board, timeoutPair);
+	}
+
 
 	/**
 	 * Called after the game has ended and that this Ai is about to be terminated
@@ -0,0 +1,390 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.Objects;
+import java.util.Optional;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.Move.DoubleMove;
+import uk.ac.bris.cs.scotlandyard.model.Move.SingleMove;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Factory;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+/**
+ * A {@link GameState} factory that follows the same rules as {@link MyGameStateFactory} but keeps
+ * all per-player data in primitive arrays so that {@link GameState#advance(Move)} only copies a
+ * handful of small arrays.
+ * <br>
+ * Players are addressed by index where 0 is always MrX and the detectives follow in the order
+ * given to {@link #build(GameSetup, Player, ImmutableList)}. Locations are stored in an
+ * {@code int[]}, tickets are packed into one {@code long} per player (see {@link PackedTickets})
+ * and detective occupancy is a bit mask over the graph's nodes.
+ * <br>
+ * States created by this factory implement {@link Zobrist.Keyed}; the key is updated
+ * incrementally by {@link GameState#advance(Move)}.
+ */
+public final class BitboardGameStateFactory implements Factory<GameState> {
+
+	private static final Ticket[] TICKETS = Ticket.values();
+	private static final int SECRET_BIT = 1 << Ticket.SECRET.ordinal();
+
+	private static final class BitboardGameState implements GameState, Zobrist.Keyed {
+
+		private final GameSetup setup;
+		private final GraphIndex graph;
+		private final Piece[] pieces;
+		private final int[] locations;
+		private final long[] tickets;
+		private final long[] occupied;
+		private final int remaining;
+		private final ImmutableList<LogEntry> log;
+		private final long key;
+		private final ImmutableSet<Piece> winner;
+		private ImmutableSet<Move> moves;
+
+		private BitboardGameState(GameSetup setup,
+		                          GraphIndex graph,
+		                          Piece[] pieces,
+		                          int[] locations,
+		                          long[] tickets,
+		                          long[] occupied,
+		                          int remaining,
+		                          ImmutableList<LogEntry> log,
+		                          long key) {
+			this.setup = setup;
+			this.graph = graph;
+			this.pieces = pieces;
+			this.locations = locations;
+			this.tickets = tickets;
+			this.occupied = occupied;
+			this.remaining = remaining;
+			this.log = log;
+			this.key = key;
+			this.winner = computeWinner();
+		}
+
+		static BitboardGameState initial(GameSetup setup,
+		                                 Player mrX,
+		                                 ImmutableList<Player> detectives) {
+			if (setup.moves.isEmpty())
+				throw new IllegalArgumentException("Moves list provided in setup is empty");
+			if (setup.graph.nodes().isEmpty())
+				throw new IllegalArgumentException("Graph provided in setup is empty");
+			Objects.requireNonNull(mrX, "Null MrX provided");
+			if (!mrX.isMrX()) throw new IllegalArgumentException("MrX provided is a detective");
+			Objects.requireNonNull(detectives, "Null detectives list provided");
+
+			int players = detectives.size() + 1;
+			var pieces = new Piece[players];
+			var locations = new int[players];
+			var tickets = new long[players];
+			pieces[0] = mrX.piece();
+			locations[0] = mrX.location();
+			tickets[0] = PackedTickets.pack(mrX.tickets());
+
+			var graph = GraphIndex.of(setup.graph);
+			int maxNode = Math.max(graph.maxNode(), mrX.location());
+			for (Player detective : detectives) maxNode = Math.max(maxNode, detective.location());
+			var occupied = new long[(maxNode >>> 6) + 1];
+
+			for (int i = 1; i < players; i++) {
+				Player detective = detectives.get(i - 1);
+				if (detective.isMrX())
+					throw new IllegalArgumentException("MrX provided as a detective");
+				if (detective.has(Ticket.SECRET))
+					throw new IllegalArgumentException("Detectives should not have secret tickets");
+				if (detective.has(Ticket.DOUBLE))
+					throw new IllegalArgumentException("Detectives should not have double tickets");
+				for (int j = 1; j < i; j++) {
+					if (pieces[j] == detective.piece())
+						throw new IllegalArgumentException("Duplicate detective " + detective.piece());
+				}
+				if (isSet(occupied, detective.location()))
+					throw new IllegalArgumentException("more than one detective is in the same location");
+				pieces[i] = detective.piece();
+				locations[i] = detective.location();
+				tickets[i] = PackedTickets.pack(detective.tickets());
+				set(occupied, detective.location());
+			}
+
+			return new BitboardGameState(setup, graph, pieces, locations, tickets, occupied,
+					1, ImmutableList.of(), Zobrist.hash(pieces, locations, tickets, 1, 0));
+		}
+
+		private static boolean isSet(long[] mask, int node) {
+			return (mask[node >>> 6] & (1L << node)) != 0;
+		}
+
+		private static void set(long[] mask, int node) { mask[node >>> 6] |= 1L << node; }
+
+		private static void clear(long[] mask, int node) { mask[node >>> 6] &= ~(1L << node); }
+
+		private boolean isOccupied(int node) {
+			return node >>> 6 < occupied.length && isSet(occupied, node);
+		}
+
+		private boolean isMrXTurn() { return (remaining & 1) != 0; }
+
+		private int indexOf(Piece piece) {
+			for (int i = 0; i < pieces.length; i++) {
+				if (pieces[i] == piece) return i;
+			}
+			return -1;
+		}
+
+		/**
+		 * @return bit mask of available tickets that can be used on an edge with the given ticket
+		 * mask, see {@link GraphIndex#tickets(int)}; {@link Ticket#SECRET} is valid for any edge
+		 */
+		private static int usableTickets(int available, int edgeTickets) {
+			return (edgeTickets & available) | (available & SECRET_BIT);
+		}
+
+		private boolean hasAnyMove(int player) {
+			int source = locations[player];
+			int available = PackedTickets.availableMask(tickets[player]);
+			for (int i = graph.start(source), end = graph.end(source); i < end; i++) {
+				if (isOccupied(graph.neighbour(i))) continue;
+				if (usableTickets(available, graph.tickets(i)) != 0) return true;
+			}
+			return false;
+		}
+
+		private boolean hasAnyMove() {
+			if (isMrXTurn()) return hasAnyMove(0);
+			for (int i = 1; i < pieces.length; i++) {
+				if ((remaining & (1 << i)) != 0 && hasAnyMove(i)) return true;
+			}
+			return false;
+		}
+
+		private ImmutableSet<Piece> computeWinner() {
+			boolean captured = isOccupied(locations[0]);
+			boolean detectivesOut = true;
+			for (int i = 1; i < pieces.length; i++) {
+				if (tickets[i] != 0) detectivesOut = false;
+			}
+			boolean canMove = hasAnyMove();
+			boolean detectiveWin = captured || (isMrXTurn() && !canMove) || tickets[0] == 0;
+			// a capture wins for the detectives even if it used their last tickets
+			boolean mrXWin = !captured && ((isMrXTurn() && log.size() == setup.moves.size())
+					|| (!isMrXTurn() && !canMove)
+					|| detectivesOut);
+			if (mrXWin && detectiveWin)
+				throw new IllegalArgumentException("Mr X and detectives can't both win");
+			if (mrXWin) return ImmutableSet.of(pieces[0]);
+			if (detectiveWin) {
+				var builder = ImmutableSet.<Piece>builderWithExpectedSize(pieces.length - 1);
+				for (int i = 1; i < pieces.length; i++) builder.add(pieces[i]);
+				return builder.build();
+			}
+			return ImmutableSet.of();
+		}
+
+		private void addSingleMoves(ImmutableSet.Builder<Move> builder, int player) {
+			int source = locations[player];
+			int available = PackedTickets.availableMask(tickets[player]);
+			for (int i = graph.start(source), end = graph.end(source); i < end; i++) {
+				int destination = graph.neighbour(i);
+				if (isOccupied(destination)) continue;
+				int usable = usableTickets(available, graph.tickets(i));
+				for (int t = 0; usable != 0; t++, usable >>>= 1) {
+					if ((usable & 1) != 0)
+						builder.add(new SingleMove(pieces[player], source, TICKETS[t], destination));
+				}
+			}
+		}
+
+		private void addMrXMoves(ImmutableSet.Builder<Move> builder) {
+			int source = locations[0];
+			long packed = tickets[0];
+			boolean canDouble = PackedTickets.count(packed, Ticket.DOUBLE) > 0
+					&& setup.moves.size() - log.size() > 1;
+			int available = PackedTickets.availableMask(packed);
+			for (int i = graph.start(source), end = graph.end(source); i < end; i++) {
+				int destination1 = graph.neighbour(i);
+				if (isOccupied(destination1)) continue;
+				int usable1 = usableTickets(available, graph.tickets(i));
+				for (int t1 = 0; usable1 != 0; t1++, usable1 >>>= 1) {
+					if ((usable1 & 1) == 0) continue;
+					builder.add(new SingleMove(pieces[0], source, TICKETS[t1], destination1));
+					if (!canDouble) continue;
+					int availableAfter = PackedTickets.availableMask(PackedTickets.use(packed, TICKETS[t1]));
+					for (int j = graph.start(destination1), end2 = graph.end(destination1); j < end2; j++) {
+						int destination2 = graph.neighbour(j);
+						if (isOccupied(destination2)) continue;
+						int usable2 = usableTickets(availableAfter, graph.tickets(j));
+						for (int t2 = 0; usable2 != 0; t2++, usable2 >>>= 1) {
+							if ((usable2 & 1) != 0) builder.add(new DoubleMove(pieces[0], source,
+									TICKETS[t1], destination1, TICKETS[t2], destination2));
+						}
+					}
+				}
+			}
+		}
+
+		private ImmutableSet<Move> computeMoves() {
+			var builder = ImmutableSet.<Move>builder();
+			if (isMrXTurn()) addMrXMoves(builder);
+			else for (int i = 1; i < pieces.length; i++) {
+				if ((remaining & (1 << i)) != 0) addSingleMoves(builder, i);
+			}
+			return builder.build();
+		}
+
+		private boolean canTravel(long packed, Ticket ticket, int source, int destination) {
+			if (PackedTickets.count(packed, ticket) == 0 || isOccupied(destination)) return false;
+			int edge = graph.edge(source, destination);
+			if (edge < 0) return false;
+			return ticket == Ticket.SECRET || (graph.tickets(edge) & (1 << ticket.ordinal())) != 0;
+		}
+
+		private boolean isLegal(SingleMove move, int player) {
+			return canTravel(tickets[player], move.ticket, move.source(), move.destination);
+		}
+
+		private boolean isLegal(DoubleMove move) {
+			long packed = tickets[0];
+			if (PackedTickets.count(packed, Ticket.DOUBLE) == 0
+					|| setup.moves.size() - log.size() <= 1
+					|| !canTravel(packed, move.ticket1, move.source(), move.destination1))
+				return false;
+			return canTravel(PackedTickets.use(packed, move.ticket1),
+					move.ticket2, move.destination1, move.destination2);
+		}
+
+		private LogEntry logEntry(int round, Ticket ticket, int destination) {
+			return setup.moves.get(round)
+					? LogEntry.reveal(ticket, destination)
+					: LogEntry.hidden(ticket);
+		}
+
+		private int detectivesWithTickets() {
+			int mask = 0;
+			for (int i = 1; i < pieces.length; i++) {
+				if (tickets[i] != 0) mask |= 1 << i;
+			}
+			return mask;
+		}
+
+		private GameState advanceMrX(SingleMove move) {
+			var newLocations = locations.clone();
+			var newTickets = tickets.clone();
+			newLocations[0] = move.destination;
+			newTickets[0] = PackedTickets.use(tickets[0], move.ticket);
+			var newLog = ImmutableList.<LogEntry>builderWithExpectedSize(log.size() + 1)
+					.addAll(log)
+					.add(logEntry(log.size(), move.ticket, move.destination))
+					.build();
+			int newRemaining = detectivesWithTickets();
+			long newKey = key
+					^ Zobrist.location(pieces[0], move.source())
+					^ Zobrist.location(pieces[0], move.destination)
+					^ Zobrist.ticketsDelta(pieces[0], tickets[0], newTickets[0])
+					^ Zobrist.remainingDelta(pieces, remaining, newRemaining)
+					^ Zobrist.round(log.size()) ^ Zobrist.round(newLog.size());
+			return new BitboardGameState(setup, graph, pieces, newLocations, newTickets, occupied,
+					newRemaining, newLog, newKey);
+		}
+
+		private GameState advanceDetective(SingleMove move, int player) {
+			var newLocations = locations.clone();
+			var newTickets = tickets.clone();
+			var newOccupied = occupied.clone();
+			newLocations[player] = move.destination;
+			newTickets[player] = PackedTickets.use(tickets[player], move.ticket);
+			newTickets[0] = PackedTickets.give(tickets[0], move.ticket);
+			clear(newOccupied, move.source());
+			set(newOccupied, move.destination);
+			int newRemaining = Integer.bitCount(remaining) != 1
+					? remaining & ~(1 << player) & detectivesWithTickets()
+					: 1;
+			long newKey = key
+					^ Zobrist.location(pieces[player], move.source())
+					^ Zobrist.location(pieces[player], move.destination)
+					^ Zobrist.ticketsDelta(pieces[player], tickets[player], newTickets[player])
+					^ Zobrist.ticketsDelta(pieces[0], tickets[0], newTickets[0])
+					^ Zobrist.remainingDelta(pieces, remaining, newRemaining);
+			return new BitboardGameState(setup, graph, pieces, newLocations, newTickets, newOccupied,
+					newRemaining, log, newKey);
+		}
+
+		private GameState advanceMrX(DoubleMove move) {
+			var newLocations = locations.clone();
+			var newTickets = tickets.clone();
+			newLocations[0] = move.destination2;
+			long packed = PackedTickets.use(tickets[0], move.ticket1);
+			packed = PackedTickets.use(packed, move.ticket2);
+			newTickets[0] = PackedTickets.use(packed, Ticket.DOUBLE);
+			var newLog = ImmutableList.<LogEntry>builderWithExpectedSize(log.size() + 2)
+					.addAll(log)
+					.add(logEntry(log.size(), move.ticket1, move.destination1))
+					.add(logEntry(log.size() + 1, move.ticket2, move.destination2))
+					.build();
+			int newRemaining = detectivesWithTickets();
+			long newKey = key
+					^ Zobrist.location(pieces[0], move.source())
+					^ Zobrist.location(pieces[0], move.destination2)
+					^ Zobrist.ticketsDelta(pieces[0], tickets[0], newTickets[0])
+					^ Zobrist.remainingDelta(pieces, remaining, newRemaining)
+					^ Zobrist.round(log.size()) ^ Zobrist.round(newLog.size());
+			return new BitboardGameState(setup, graph, pieces, newLocations, newTickets, occupied,
+					newRemaining, newLog, newKey);
+		}
+
+		@Override public long zobristKey() { return key; }
+
+		@Nonnull @Override public GameSetup getSetup() { return setup; }
+
+		@Nonnull @Override public ImmutableSet<Piece> getPlayers() { return ImmutableSet.copyOf(pieces); }
+
+		@Nonnull @Override public Optional<Integer> getDetectiveLocation(Piece.Detective detective) {
+			int index = indexOf(detective);
+			return index < 0 ? Optional.empty() : Optional.of(locations[index]);
+		}
+
+		@Nonnull @Override public Optional<TicketBoard> getPlayerTickets(Piece piece) {
+			int index = indexOf(piece);
+			if (index < 0) return Optional.empty();
+			long packed = tickets[index];
+			return Optional.of(ticket -> PackedTickets.count(packed, ticket));
+		}
+
+		@Nonnull @Override public ImmutableList<LogEntry> getMrXTravelLog() { return log; }
+
+		@Nonnull @Override public ImmutableSet<Piece> getWinner() { return winner; }
+
+		@Nonnull @Override public ImmutableSet<Move> getAvailableMoves() {
+			if (!winner.isEmpty()) return ImmutableSet.of();
+			var result = moves;
+			if (result == null) moves = result = computeMoves();
+			return result;
+		}
+
+		@Nonnull @Override public GameState advance(Move move) {
+			// like MyGameState, legality ignores the winner so a finished game can still be advanced
+			int player = move == null ? -1 : indexOf(move.commencedBy());
+			boolean legal = player >= 0
+					&& (remaining & (1 << player)) != 0
+					&& move.source() == locations[player]
+					&& move.accept(new Move.FunctionalVisitor<>(
+							m -> isLegal(m, player),
+							m -> player == 0 && isLegal(m)));
+			if (!legal) throw new IllegalArgumentException("Illegal move: " + move);
+			return move.accept(new Move.FunctionalVisitor<>(
+					m -> player == 0 ? advanceMrX(m) : advanceDetective(m, player),
+					this::advanceMrX));
+		}
+	}
+
+	@Nonnull @Override public GameState build(
+			GameSetup setup,
+			Player mrX,
+			ImmutableList<Player> detectives) {
+		return BitboardGameState.initial(setup, mrX, detectives);
+	}
+}
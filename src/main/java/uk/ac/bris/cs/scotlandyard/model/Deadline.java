@@ -0,0 +1,102 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import io.atlassian.fugue.Pair;
+
+/**
+ * A point in time by which an {@link Ai} must have decided, which whoever asked for the decision
+ * can also bring forward by cancelling it. Searches should poll {@link #isExpired()} (a volatile
+ * read and, for bounded deadlines, a {@link System#nanoTime()} call) and return their best answer
+ * as soon as it is true.
+ * <br>
+ * A deadline made with {@link #within(long, TimeUnit)} expires when its parent does, so an Ai can
+ * keep a margin for itself while still seeing the caller's cancellation.
+ * <br>
+ * Instances are thread safe.
+ */
+public final class Deadline {
+
+	@Nullable private final Deadline parent;
+	private final boolean bounded;
+	private final long nanos;
+	private volatile boolean cancelled;
+
+	private Deadline(@Nullable Deadline parent, boolean bounded, long nanos) {
+		this.parent = parent;
+		this.bounded = bounded;
+		this.nanos = nanos;
+	}
+
+	/**
+	 * @return a deadline that only expires when cancelled
+	 */
+	@Nonnull public static Deadline never() { return new Deadline(null, false, 0); }
+
+	/**
+	 * @param duration the time from now; negative durations are already expired
+	 * @param unit the unit of the duration
+	 * @return a deadline the given time from now
+	 */
+	@Nonnull public static Deadline after(long duration, @Nonnull TimeUnit unit) {
+		return new Deadline(null, true, System.nanoTime() + Math.max(unit.toNanos(duration), -1));
+	}
+
+	/**
+	 * @param timeoutPair a timeout as given to {@link Ai#pickMove(Board, Pair)}
+	 * @return a deadline the timeout from now
+	 */
+	@Nonnull public static Deadline after(@Nonnull Pair<Long, TimeUnit> timeoutPair) {
+		return after(timeoutPair.left(), timeoutPair.right());
+	}
+
+	/**
+	 * @param duration the most time from now
+	 * @param unit the unit of the duration
+	 * @return a deadline that expires the given time from now or when this one does, whichever is
+	 * first; cancelling it does not cancel this one
+	 */
+	@Nonnull public Deadline within(long duration, @Nonnull TimeUnit unit) {
+		Objects.requireNonNull(unit);
+		long child = System.nanoTime() + Math.max(unit.toNanos(duration), -1);
+		if (bounded && nanos - child < 0) child = nanos;
+		return new Deadline(this, true, child);
+	}
+
+	/**
+	 * Expires this deadline, and any made from it, now
+	 */
+	public void cancel() { cancelled = true; }
+
+	/**
+	 * @return whether this deadline or a parent was cancelled
+	 */
+	public boolean isCancelled() {
+		return cancelled || (parent != null && parent.isCancelled());
+	}
+
+	/**
+	 * @return whether this deadline was cancelled or has passed
+	 */
+	public boolean isExpired() {
+		return isCancelled() || (bounded && System.nanoTime() - nanos >= 0);
+	}
+
+	/**
+	 * @return the nanoseconds left, 0 if expired and {@link Long#MAX_VALUE} if unbounded
+	 */
+	public long remainingNanos() {
+		if (isCancelled()) return 0;
+		if (!bounded) return Long.MAX_VALUE;
+		return Math.max(nanos - System.nanoTime(), 0);
+	}
+
+	@Override public String toString() {
+		if (isCancelled()) return "Deadline{cancelled}";
+		return bounded ? "Deadline{" + remainingNanos() + "ns}" : "Deadline{never}";
+	}
+}
@@ -0,0 +1,184 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.TicketBoard;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+/**
+ * All-pairs shortest hop distances of a game graph. Distances only use edges that can be
+ * travelled with a given set of tickets, expressed as a mask with bit {@link Ticket#ordinal()}
+ * set for every usable ticket; a {@link Ticket#SECRET} ticket can travel along any edge and
+ * {@link Ticket#DOUBLE} is ignored. Ticket counts are not considered, only which tickets are held.
+ * <br>
+ * Each ticket mask has its own table of one byte per pair of nodes, computed the first time the
+ * mask is used. Distances longer than {@link #MAX_DISTANCE} hops are reported as
+ * {@link #MAX_DISTANCE}. Oracles are shared per graph, see {@link #of(ImmutableValueGraph)}, and
+ * are safe to use from multiple threads.
+ */
+public final class DistanceOracle {
+
+	/**
+	 * Returned by the distance methods when the destination cannot be reached
+	 */
+	public static final int UNREACHABLE = Integer.MAX_VALUE;
+
+	/**
+	 * The longest distance that can be stored
+	 */
+	public static final int MAX_DISTANCE = 0xFE;
+
+	/**
+	 * Mask of the tickets detectives can hold
+	 */
+	public static final int DETECTIVE_TICKETS =
+			mask(Ticket.TAXI, Ticket.BUS, Ticket.UNDERGROUND);
+
+	/**
+	 * Mask of every ticket, any edge can be used
+	 */
+	public static final int ALL_TICKETS = DETECTIVE_TICKETS | mask(Ticket.SECRET);
+
+	private static final int NONE = 0xFF;
+	private static final int SECRET_BIT = 1 << Ticket.SECRET.ordinal();
+	private static final int MASK = ((1 << Ticket.values().length) - 1) & ~(1 << Ticket.DOUBLE.ordinal());
+
+	private static final LoadingCache<ImmutableValueGraph<Integer, ImmutableSet<Transport>>, DistanceOracle>
+			ORACLES = CacheBuilder.newBuilder().weakKeys().build(CacheLoader.from(DistanceOracle::new));
+
+	private final GraphIndex index;
+	private final int size;
+	private final AtomicReferenceArray<byte[]> tables = new AtomicReferenceArray<>(MASK + 1);
+
+	private DistanceOracle(ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph) {
+		this.index = GraphIndex.of(graph);
+		this.size = index.maxNode() + 1;
+	}
+
+	/**
+	 * @param graph the graph
+	 * @return the shared oracle of the graph
+	 * @throws IllegalArgumentException if the graph has negative nodes
+	 */
+	@Nonnull public static DistanceOracle of(
+			@Nonnull ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph) {
+		try {
+			return ORACLES.getUnchecked(graph);
+		} catch (RuntimeException e) {
+			if (e.getCause() instanceof IllegalArgumentException)
+				throw (IllegalArgumentException) e.getCause();
+			throw e;
+		}
+	}
+
+	/**
+	 * @param tickets the tickets
+	 * @return the mask of the given tickets
+	 */
+	public static int mask(@Nonnull Ticket... tickets) {
+		int mask = 0;
+		for (Ticket ticket : tickets) mask |= 1 << ticket.ordinal();
+		return mask;
+	}
+
+	/**
+	 * @param board the tickets of a player
+	 * @return the mask of tickets the player holds at least one of
+	 */
+	public static int mask(@Nonnull TicketBoard board) {
+		int mask = 0;
+		for (Ticket ticket : Ticket.values()) {
+			if (board.getCount(ticket) > 0) mask |= 1 << ticket.ordinal();
+		}
+		return mask;
+	}
+
+	/**
+	 * @return the distance using any edge of the graph
+	 */
+	public int distance(int source, int destination) {
+		return distance(source, destination, ALL_TICKETS);
+	}
+
+	/**
+	 * @param source the source node
+	 * @param destination the destination node
+	 * @param tickets the mask of usable tickets
+	 * @return the number of hops from source to destination or {@link #UNREACHABLE}; nodes outside
+	 * the graph are unreachable except from themselves
+	 */
+	public int distance(int source, int destination, int tickets) {
+		if (source == destination) return 0;
+		if (!index.contains(source) || !index.contains(destination)) return UNREACHABLE;
+		int distance = table(tickets)[source * size + destination] & 0xFF;
+		return distance == NONE ? UNREACHABLE : distance;
+	}
+
+	/**
+	 * @param source the source node
+	 * @param tickets the mask of usable tickets
+	 * @return the distances from the source to every node, indexed by node; nodes that cannot be
+	 * reached (or are not in the graph) are {@link #UNREACHABLE}
+	 */
+	@Nonnull public int[] distances(int source, int tickets) {
+		var distances = new int[size];
+		if (!index.contains(source)) {
+			Arrays.fill(distances, UNREACHABLE);
+			return distances;
+		}
+		byte[] table = table(tickets);
+		for (int node = 0; node < size; node++) {
+			int distance = table[source * size + node] & 0xFF;
+			distances[node] = distance == NONE ? UNREACHABLE : distance;
+		}
+		return distances;
+	}
+
+	private byte[] table(int tickets) {
+		int mask = tickets & MASK;
+		if ((mask & SECRET_BIT) != 0) mask = ALL_TICKETS;
+		byte[] table = tables.get(mask);
+		if (table == null) {
+			table = compute(mask);
+			if (!tables.compareAndSet(mask, null, table)) table = tables.get(mask);
+		}
+		return table;
+	}
+
+	// breadth first search from every node over the edges usable with the mask
+	private byte[] compute(int mask) {
+		var table = new byte[size * size];
+		Arrays.fill(table, (byte) NONE);
+		var queue = new int[size];
+		for (int source = 0; source < size; source++) {
+			if (!index.contains(source)) continue;
+			int row = source * size;
+			table[row + source] = 0;
+			int head = 0;
+			int tail = 0;
+			queue[tail++] = source;
+			while (head < tail) {
+				int node = queue[head++];
+				int next = Math.min((table[row + node] & 0xFF) + 1, MAX_DISTANCE);
+				for (int i = index.start(node), end = index.end(node); i < end; i++) {
+					int neighbour = index.neighbour(i);
+					if ((table[row + neighbour] & 0xFF) != NONE) continue;
+					if (mask != ALL_TICKETS && (index.tickets(i) & mask) == 0) continue;
+					table[row + neighbour] = (byte) next;
+					queue[tail++] = neighbour;
+				}
+			}
+		}
+		return table;
+	}
+}
@@ -0,0 +1,167 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+
+import java.util.Arrays;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+/**
+ * An immutable compressed sparse row view of a game graph for move generation. The neighbours of
+ * a node are the entries from {@link #start(int)} (inclusive) to {@link #end(int)} (exclusive),
+ * sorted by node number; each entry also holds a bit mask of the tickets that can travel along
+ * the edge, bit {@link Ticket#ordinal()} for every {@link Transport#requiredTicket()}.
+ * <br>
+ * Indices are built once per graph and shared, see {@link #of(ImmutableValueGraph)}. The graph in
+ * {@link GameSetup#graph} is unchanged and remains the source of truth for everything else.
+ */
+public final class GraphIndex {
+
+	private static final LoadingCache<ImmutableValueGraph<Integer, ImmutableSet<Transport>>, GraphIndex>
+			INDICES = CacheBuilder.newBuilder().weakKeys().build(CacheLoader.from(GraphIndex::new));
+
+	private final int maxNode;
+	private final long[] nodes;
+	private final int[] offsets;
+	private final int[] neighbours;
+	private final byte[] tickets;
+	private final long contentHash;
+
+	private GraphIndex(ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph) {
+		int max = -1;
+		for (int node : graph.nodes()) {
+			if (node < 0) throw new IllegalArgumentException("Negative node in graph: " + node);
+			max = Math.max(max, node);
+		}
+		this.maxNode = max;
+		// an empty graph has no words; -1 >>> 6 would be huge
+		this.nodes = new long[max < 0 ? 0 : (max >>> 6) + 1];
+		this.offsets = new int[max + 2];
+		for (int node : graph.nodes()) {
+			nodes[node >>> 6] |= 1L << node;
+			offsets[node + 1] = graph.adjacentNodes(node).size();
+		}
+		for (int node = 0; node <= max; node++) offsets[node + 1] += offsets[node];
+		this.neighbours = new int[offsets[max + 1]];
+		this.tickets = new byte[neighbours.length];
+		for (int node : graph.nodes()) {
+			int start = offsets[node];
+			int i = start;
+			for (int neighbour : graph.adjacentNodes(node)) neighbours[i++] = neighbour;
+			Arrays.sort(neighbours, start, i);
+			for (int j = start; j < i; j++) {
+				int mask = 0;
+				for (Transport t : graph.edgeValueOrDefault(node, neighbours[j], ImmutableSet.of()))
+					mask |= 1 << t.requiredTicket().ordinal();
+				tickets[j] = (byte) mask;
+			}
+		}
+		this.contentHash = hash();
+	}
+
+	// SplitMix64's finaliser over every node and edge in order
+	private long hash() {
+		long hash = mix(maxNode);
+		for (int node = 0; node <= maxNode; node++) {
+			if (!contains(node)) continue;
+			hash = mix(hash ^ node);
+			for (int i = offsets[node]; i < offsets[node + 1]; i++)
+				hash = mix(hash ^ ((long) neighbours[i] << 8 | tickets[i]));
+		}
+		return hash;
+	}
+
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * @param graph the graph
+	 * @return the shared index of the graph
+	 * @throws IllegalArgumentException if the graph has negative nodes
+	 */
+	@Nonnull public static GraphIndex of(
+			@Nonnull ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph) {
+		try {
+			return INDICES.getUnchecked(graph);
+		} catch (RuntimeException e) {
+			if (e.getCause() instanceof IllegalArgumentException)
+				throw (IllegalArgumentException) e.getCause();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return a hash of the graph's nodes, edges and transports; equal graphs hash equally
+	 * whatever order they were built in, so files can refer to a graph by it
+	 */
+	public long contentHash() { return contentHash; }
+
+	/**
+	 * @return the largest node in the graph, -1 if the graph is empty
+	 */
+	public int maxNode() { return maxNode; }
+
+	public boolean contains(int node) {
+		return node >= 0 && node <= maxNode && (nodes[node >>> 6] & (1L << node)) != 0;
+	}
+
+	/**
+	 * @param node the node
+	 * @return the index of the node's first neighbour
+	 * @throws IllegalArgumentException if the node is not in the graph, like
+	 * {@link ImmutableValueGraph#adjacentNodes(Object)}
+	 */
+	public int start(int node) {
+		if (!contains(node)) throw new IllegalArgumentException("Node " + node + " is not in the graph");
+		return offsets[node];
+	}
+
+	/**
+	 * @param node a node in the graph
+	 * @return one past the index of the node's last neighbour
+	 */
+	public int end(int node) { return offsets[node + 1]; }
+
+	public int degree(int node) { return contains(node) ? offsets[node + 1] - offsets[node] : 0; }
+
+	/**
+	 * @param i an index between {@link #start(int)} and {@link #end(int)}
+	 * @return the neighbour at the index
+	 */
+	public int neighbour(int i) { return neighbours[i]; }
+
+	/**
+	 * @param i an index between {@link #start(int)} and {@link #end(int)}
+	 * @return the ticket mask of the edge at the index
+	 */
+	public int tickets(int i) { return tickets[i]; }
+
+	/**
+	 * @return the index of the edge or -1 if there is none
+	 */
+	public int edge(int source, int destination) {
+		if (!contains(source)) return -1;
+		int i = Arrays.binarySearch(neighbours, offsets[source], offsets[source + 1], destination);
+		return i < 0 ? -1 : i;
+	}
+
+	public boolean isAdjacent(int source, int destination) { return edge(source, destination) >= 0; }
+
+	/**
+	 * @return the ticket mask of the edge, 0 if there is no edge
+	 */
+	public int edgeTickets(int source, int destination) {
+		int i = edge(source, destination);
+		return i < 0 ? 0 : tickets[i];
+	}
+}
@@ -0,0 +1,163 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Move.DoubleMove;
+import uk.ac.bris.cs.scotlandyard.model.Move.SingleMove;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+/**
+ * Encodes {@link Move}s losslessly as a single {@code int} so that move lists can be kept in
+ * primitive arrays, see {@link IntMoveList}.
+ * <br>
+ * Layout, from the least significant bit:
+ * <pre>
+ *  0-7   source
+ *  8-15  destination (first destination of a double move)
+ * 16-23  second destination, 0 for single moves
+ * 24-25  ticket (first ticket of a double move)
+ * 26-27  second ticket, 0 for single moves
+ * 28-30  piece, index in {@link ScotlandYard#ALL_PIECES}
+ * 31     set for double moves
+ * </pre>
+ * Tickets are encoded as TAXI, BUS, UNDERGROUND, SECRET; {@link Ticket#DOUBLE} is implied by the
+ * double move bit. Nodes must be between 0 and {@link #MAX_NODE}, which covers the standard map.
+ */
+public final class IntMove {
+
+	/**
+	 * The largest node number that can be encoded
+	 */
+	public static final int MAX_NODE = 0xFF;
+
+	/**
+	 * A value that is never a valid encoded move
+	 */
+	public static final int NONE = -1;
+
+	private static final Ticket[] CODE_TICKETS =
+			{Ticket.TAXI, Ticket.BUS, Ticket.UNDERGROUND, Ticket.SECRET};
+	private static final int[] TICKET_CODES = new int[Ticket.values().length];
+	private static final Piece[] PIECES = ScotlandYard.ALL_PIECES.toArray(new Piece[0]);
+	private static final int DOUBLE_BIT = 1 << 31;
+
+	static {
+		for (Ticket ticket : Ticket.values()) TICKET_CODES[ticket.ordinal()] = -1;
+		for (int i = 0; i < CODE_TICKETS.length; i++) TICKET_CODES[CODE_TICKETS[i].ordinal()] = i;
+	}
+
+	private IntMove() {}
+
+	/**
+	 * @param piece the piece
+	 * @return the index of the piece in {@link ScotlandYard#ALL_PIECES}
+	 */
+	public static int pieceCode(@Nonnull Piece piece) {
+		return piece.isMrX() ? 0 : 1 + ((Piece.Detective) piece).ordinal();
+	}
+
+	private static int ticketCode(Ticket ticket) {
+		int code = TICKET_CODES[ticket.ordinal()];
+		if (code < 0) throw new IllegalArgumentException("Ticket cannot be encoded: " + ticket);
+		return code;
+	}
+
+	private static int node(int node) {
+		if (node < 0 || node > MAX_NODE)
+			throw new IllegalArgumentException("Node out of range: " + node);
+		return node;
+	}
+
+	/**
+	 * Encodes without range checks; ticket arguments are {@link Ticket#ordinal()}s of tickets
+	 * other than {@link Ticket#DOUBLE}.
+	 */
+	static int single(int pieceCode, int source, int ticket, int destination) {
+		return pieceCode << 28 | TICKET_CODES[ticket] << 24 | destination << 8 | source;
+	}
+
+	/**
+	 * See {@link #single(int, int, int, int)}
+	 */
+	static int doubleMove(int pieceCode, int source, int ticket1, int destination1,
+	                      int ticket2, int destination2) {
+		return DOUBLE_BIT | pieceCode << 28 | TICKET_CODES[ticket2] << 26 | TICKET_CODES[ticket1] << 24
+				| destination2 << 16 | destination1 << 8 | source;
+	}
+
+	/**
+	 * @param move the move
+	 * @return the encoded move
+	 * @throws IllegalArgumentException if a node is out of range or a move uses
+	 * {@link Ticket#DOUBLE} as one of its travel tickets
+	 */
+	public static int encode(@Nonnull Move move) {
+		return move.accept(new Move.Visitor<>() {
+			@Override public Integer visit(SingleMove m) {
+				return pieceCode(m.commencedBy()) << 28 | ticketCode(m.ticket) << 24
+						| node(m.destination) << 8 | node(m.source());
+			}
+			@Override public Integer visit(DoubleMove m) {
+				return DOUBLE_BIT | pieceCode(m.commencedBy()) << 28
+						| ticketCode(m.ticket2) << 26 | ticketCode(m.ticket1) << 24
+						| node(m.destination2) << 16 | node(m.destination1) << 8 | node(m.source());
+			}
+		});
+	}
+
+	/**
+	 * @param move the encoded move
+	 * @return the equivalent {@link Move}
+	 */
+	@Nonnull public static Move decode(int move) {
+		if (isDouble(move)) return new DoubleMove(piece(move), source(move),
+				ticket1(move), destination1(move), ticket2(move), destination2(move));
+		return new SingleMove(piece(move), source(move), ticket1(move), destination1(move));
+	}
+
+	public static boolean isDouble(int move) { return move < 0; }
+
+	public static int pieceCode(int move) { return (move >>> 28) & 0x7; }
+
+	/**
+	 * @throws IllegalArgumentException if the move has no valid piece, e.g. {@link #NONE}
+	 */
+	@Nonnull public static Piece piece(int move) {
+		int code = pieceCode(move);
+		if (code >= PIECES.length) throw new IllegalArgumentException("Not a move: " + move);
+		return PIECES[code];
+	}
+
+	public static int source(int move) { return move & 0xFF; }
+
+	/**
+	 * @return the destination of a single move or the first destination of a double move
+	 */
+	public static int destination1(int move) { return (move >>> 8) & 0xFF; }
+
+	/**
+	 * @return the second destination of a double move
+	 */
+	public static int destination2(int move) { return (move >>> 16) & 0xFF; }
+
+	/**
+	 * @return where the piece ends up after the move
+	 */
+	public static int destination(int move) {
+		return isDouble(move) ? destination2(move) : destination1(move);
+	}
+
+	/**
+	 * @return the ticket of a single move or the first ticket of a double move
+	 */
+	@Nonnull public static Ticket ticket1(int move) { return CODE_TICKETS[(move >>> 24) & 0x3]; }
+
+	/**
+	 * @return the second ticket of a double move
+	 */
+	@Nonnull public static Ticket ticket2(int move) { return CODE_TICKETS[(move >>> 26) & 0x3]; }
+
+	@Nonnull public static String toString(int move) {
+		return pieceCode(move) < PIECES.length ? decode(move).toString() : "NONE(" + move + ")";
+	}
+}
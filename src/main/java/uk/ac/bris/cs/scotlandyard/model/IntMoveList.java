@@ -0,0 +1,89 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableSet;
+
+import java.util.Arrays;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A growable list of moves encoded with {@link IntMove}. Lists are meant to be reused: call
+ * {@link #clear()} and refill instead of creating a new list per position.
+ */
+public final class IntMoveList {
+
+	private int[] moves;
+	private int size;
+
+	public IntMoveList() { this(64); }
+
+	public IntMoveList(int capacity) { this.moves = new int[Math.max(capacity, 1)]; }
+
+	public int size() { return size; }
+
+	public boolean isEmpty() { return size == 0; }
+
+	public void clear() { size = 0; }
+
+	/**
+	 * Drops every move from the index on
+	 *
+	 * @param size the number of moves to keep
+	 */
+	public void truncate(int size) {
+		if (size < 0 || size > this.size) throw new IndexOutOfBoundsException(size);
+		this.size = size;
+	}
+
+	/**
+	 * @param move the encoded move to append
+	 */
+	public void add(int move) {
+		if (size == moves.length) moves = Arrays.copyOf(moves, size * 2);
+		moves[size++] = move;
+	}
+
+	/**
+	 * @param index the index
+	 * @return the encoded move at the index
+	 */
+	public int get(int index) {
+		if (index < 0 || index >= size) throw new IndexOutOfBoundsException(index);
+		return moves[index];
+	}
+
+	/**
+	 * Swaps two moves, useful for ordering moves in place
+	 */
+	public void swap(int i, int j) {
+		int move = get(i);
+		moves[i] = get(j);
+		moves[j] = move;
+	}
+
+	/**
+	 * @param move the encoded move
+	 * @return the index of the move or -1 if not present
+	 */
+	public int indexOf(int move) {
+		for (int i = 0; i < size; i++) {
+			if (moves[i] == move) return i;
+		}
+		return -1;
+	}
+
+	public boolean contains(int move) { return indexOf(move) >= 0; }
+
+	@Nonnull public int[] toArray() { return Arrays.copyOf(moves, size); }
+
+	/**
+	 * @return the decoded moves
+	 */
+	@Nonnull public ImmutableSet<Move> toMoves() {
+		var builder = ImmutableSet.<Move>builderWithExpectedSize(size);
+		for (int i = 0; i < size; i++) builder.add(IntMove.decode(moves[i]));
+		return builder.build();
+	}
+
+	@Override public String toString() { return toMoves().toString(); }
+}
@@ -54,4 +54,10 @@ public interface Model {
 	 * {@link uk.ac.bris.cs.scotlandyard.model.Board.GameState}
 	 */
 	void chooseMove(@Nonnull Move move);
+	/**
+	 * Releases what the model holds for its observers, such as delivery threads. Events already
+	 * waiting are still delivered but no new ones are; a game abandoned before it is over should
+	 * be closed. Closing more than once has no effect.
+	 */
+	default void close() {}
 }
@@ -0,0 +1,184 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableSet;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.function.IntConsumer;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+/**
+ * Tracks the nodes MrX could be on given his travel log and the detectives' locations, for
+ * detective AIs. Candidates are kept as a bit set over the graph's nodes.
+ * <br>
+ * {@link #update(Board)} only consumes the log entries added since the previous update, each in
+ * O(edges): a reveal collapses the candidates to one node, a hidden entry moves every candidate
+ * along the edges its ticket can use. Nodes occupied by detectives are then removed, as MrX
+ * cannot be on them while the game is running.
+ * <br>
+ * A tracker follows a single game; use {@link #copy()} to explore hypothetical entries.
+ */
+public final class MrXLocationTracker {
+
+	private final GraphIndex graph;
+	private long[] candidates;
+	private long[] next;
+	private int processed;
+
+	private MrXLocationTracker(GraphIndex graph, long[] candidates, int processed) {
+		this.graph = graph;
+		this.candidates = candidates;
+		this.next = new long[candidates.length];
+		this.processed = processed;
+	}
+
+	/**
+	 * Creates a tracker where MrX could start on any node of the graph
+	 *
+	 * @param setup the game setup
+	 */
+	public MrXLocationTracker(@Nonnull GameSetup setup) {
+		this(GraphIndex.of(setup.graph), mask(GraphIndex.of(setup.graph)), 0);
+		for (int node = 0; node <= graph.maxNode(); node++) {
+			if (graph.contains(node)) set(candidates, node);
+		}
+	}
+
+	/**
+	 * Creates a tracker where MrX starts on one of the given nodes, typically
+	 * {@link ScotlandYard#MRX_LOCATIONS}
+	 *
+	 * @param setup the game setup
+	 * @param starts the possible start locations; nodes outside the graph are ignored
+	 */
+	public MrXLocationTracker(@Nonnull GameSetup setup, @Nonnull Collection<Integer> starts) {
+		this(GraphIndex.of(setup.graph), mask(GraphIndex.of(setup.graph)), 0);
+		for (int node : starts) {
+			if (graph.contains(node)) set(candidates, node);
+		}
+	}
+
+	// a bit set covering every node of the graph, empty for an empty graph
+	private static long[] mask(GraphIndex graph) {
+		return new long[graph.maxNode() < 0 ? 0 : (graph.maxNode() >>> 6) + 1];
+	}
+
+	private static void set(long[] mask, int node) { mask[node >>> 6] |= 1L << node; }
+
+	/**
+	 * @return an independent copy of this tracker
+	 */
+	@Nonnull public MrXLocationTracker copy() {
+		return new MrXLocationTracker(graph, candidates.clone(), processed);
+	}
+
+	/**
+	 * Consumes the travel log entries added since the last update and removes the detectives'
+	 * current locations, unless the game is over.
+	 *
+	 * @param board the current board of the tracked game
+	 * @throws IllegalArgumentException if the board's log is shorter than what was already consumed
+	 */
+	public void update(@Nonnull Board board) {
+		var log = board.getMrXTravelLog();
+		if (log.size() < processed)
+			throw new IllegalArgumentException("Travel log is shorter than the " + processed
+					+ " entries already seen, is this the same game?");
+		for (int i = processed; i < log.size(); i++) accept(log.get(i));
+		if (!board.getWinner().isEmpty()) return;
+		for (Piece piece : board.getPlayers()) {
+			if (piece.isDetective())
+				board.getDetectiveLocation((Piece.Detective) piece).ifPresent(this::exclude);
+		}
+	}
+
+	/**
+	 * Applies one travel log entry.
+	 *
+	 * @param entry the next entry of MrX's travel log
+	 */
+	public void accept(@Nonnull LogEntry entry) {
+		processed++;
+		Optional<Integer> location = entry.location();
+		if (location.isPresent()) {
+			Arrays.fill(candidates, 0);
+			if (graph.contains(location.get())) set(candidates, location.get());
+			return;
+		}
+		int ticket = 1 << entry.ticket().ordinal();
+		boolean secret = entry.ticket() == Ticket.SECRET;
+		Arrays.fill(next, 0);
+		for (int word = 0; word < candidates.length; word++) {
+			for (long bits = candidates[word]; bits != 0; bits &= bits - 1) {
+				int node = word << 6 | Long.numberOfTrailingZeros(bits);
+				for (int i = graph.start(node), end = graph.end(node); i < end; i++) {
+					if (secret || (graph.tickets(i) & ticket) != 0) set(next, graph.neighbour(i));
+				}
+			}
+		}
+		long[] swap = candidates;
+		candidates = next;
+		next = swap;
+	}
+
+	/**
+	 * Removes a node from the candidates, e.g. a node a detective has just moved to
+	 */
+	public void exclude(int node) {
+		if (node >= 0 && node >>> 6 < candidates.length) candidates[node >>> 6] &= ~(1L << node);
+	}
+
+	/**
+	 * @return the number of travel log entries consumed so far
+	 */
+	public int processed() { return processed; }
+
+	public boolean contains(int node) {
+		return node >= 0 && node >>> 6 < candidates.length
+				&& (candidates[node >>> 6] & (1L << node)) != 0;
+	}
+
+	/**
+	 * @return the number of candidate nodes; 0 if the log and detective locations are inconsistent
+	 */
+	public int size() {
+		int size = 0;
+		for (long word : candidates) size += Long.bitCount(word);
+		return size;
+	}
+
+	/**
+	 * Calls the consumer with every candidate node in ascending order, without boxing
+	 */
+	public void forEach(@Nonnull IntConsumer consumer) {
+		for (int word = 0; word < candidates.length; word++) {
+			for (long bits = candidates[word]; bits != 0; bits &= bits - 1)
+				consumer.accept(word << 6 | Long.numberOfTrailingZeros(bits));
+		}
+	}
+
+	/**
+	 * @return the candidate nodes in ascending order
+	 */
+	@Nonnull public int[] toArray() {
+		var nodes = new int[size()];
+		int[] i = {0};
+		forEach(node -> nodes[i[0]++] = node);
+		return nodes;
+	}
+
+	/**
+	 * @return the candidate nodes
+	 */
+	@Nonnull public ImmutableSet<Integer> candidates() {
+		var builder = ImmutableSet.<Integer>builderWithExpectedSize(size());
+		forEach(builder::add);
+		return builder.build();
+	}
+
+	@Override public String toString() { return candidates().toString(); }
+}
@@ -11,13 +11,72 @@ import java.util.*;
 /**
  * cw-model
  * Stage 1: Complete this class
+ * <br>
+ * States created by this factory implement {@link Zobrist.Keyed}, with the same keys as
+ * {@link BitboardGameStateFactory} and {@link SearchState}; {@code advance} updates the key from
+ * the previous state's rather than hashing the whole position again.
  */
 public final class MyGameStateFactory implements Factory<GameState> {
 
-	private final class MyGameState implements GameState {
+	private static final ImmutableList<ImmutableList<ScotlandYard.Ticket>> TICKETS_BY_MASK = ticketsByMask();
+	//for every ticket bit mask in GraphIndex, the list of tickets in it
+
+	private static ImmutableList<ImmutableList<ScotlandYard.Ticket>> ticketsByMask() {
+		ImmutableList.Builder<ImmutableList<ScotlandYard.Ticket>> masks = ImmutableList.builder();
+		for (int mask = 0; mask < 1 << ScotlandYard.Ticket.values().length; mask++) {
+			ImmutableList.Builder<ScotlandYard.Ticket> tickets = ImmutableList.builder();
+			for (ScotlandYard.Ticket ticket : ScotlandYard.Ticket.values()) {
+				if ((mask & (1 << ticket.ordinal())) != 0) tickets.add(ticket);
+			}
+			masks.add(tickets.build());
+		}
+		return masks.build();
+	}
+
+	private static final ScotlandYard.Ticket[] TICKETS = ScotlandYard.Ticket.values();
+
+	private static long playerKey(Player player) {
+		//the Zobrist key of a player's location and every one of its ticket counts
+		long key = Zobrist.location(player.piece(), player.location());
+		for (ScotlandYard.Ticket ticket : TICKETS)
+			key ^= Zobrist.ticket(player.piece(), ticket, player.tickets().getOrDefault(ticket, 0));
+		return key;
+	}
+
+	private static long playerDelta(Player before, Player after) {
+		//the key change when a player moves or its tickets change, only touching what changed
+		long key = 0;
+		if (before.location() != after.location())
+			key ^= Zobrist.location(before.piece(), before.location()) ^ Zobrist.location(after.piece(), after.location());
+		for (ScotlandYard.Ticket ticket : TICKETS) {
+			int from = before.tickets().getOrDefault(ticket, 0);
+			int to = after.tickets().getOrDefault(ticket, 0);
+			if (from != to) key ^= Zobrist.ticket(before.piece(), ticket, from) ^ Zobrist.ticket(after.piece(), ticket, to);
+		}
+		return key;
+	}
+
+	private static long remainingDelta(Set<Piece> before, Set<Piece> after) {
+		//pieces in exactly one of the sets flip their key
+		long key = 0;
+		for (Piece piece : before) if (!after.contains(piece)) key ^= Zobrist.remaining(piece);
+		for (Piece piece : after) if (!before.contains(piece)) key ^= Zobrist.remaining(piece);
+		return key;
+	}
+
+	private static long hash(Set<Piece> remaining, List<LogEntry> log, Player mrX, List<Player> detectives) {
+		//the full key of a state, the same as the one BitboardGameStateFactory and SearchState keep
+		long key = Zobrist.round(log.size()) ^ remainingDelta(ImmutableSet.of(), remaining) ^ playerKey(mrX);
+		for (Player detective : detectives) key ^= playerKey(detective);
+		return key;
+	}
+
+	private final class MyGameState implements GameState, Zobrist.Keyed {
 
 		private final GameSetup setup;
 		//holds the current game state
+		private final GraphIndex graphIndex;
+		//flat arrays of the neighbours of every node in setup.graph, shared by all states on the same graph
 		private final ImmutableSet<Piece> remaining;
 		//holds the pieces of every player that is yet to move in the current turn
 		private final ImmutableList<LogEntry> log;
@@ -26,10 +85,12 @@ public final class MyGameStateFactory implements Factory<GameState> {
 		//the player mr X
 		private final List<Player> detectives;
 		//a list of detective players
-		private final ImmutableSet<Move> moves;
-		//a set of all possible moves the players in remaining can make
+		private ImmutableSet<Move> moves;
+		//a set of all possible moves the players in remaining can make, only computed when first asked for
 		private final ImmutableSet<Piece> winner;
 		//a set containing the player(s) (if any) who won the game
+		private final long key;
+		//the Zobrist key of this state, updated from the previous state's key on every move
 
 		private Player getPlayerFromPiece(Piece piece) {
 			//method that finds a player from all the pieces
@@ -113,25 +174,31 @@ public final class MyGameStateFactory implements Factory<GameState> {
 
 		}
 
+		private List<ScotlandYard.Ticket> edgeTickets(int edge) {
+			//the tickets needed to travel along an edge in graphIndex (one ticket per transport, so a ferry edge gives SECRET)
+			return TICKETS_BY_MASK.get(graphIndex.tickets(edge));
+		}
+
 		private Set<Move.SingleMove> makeSingleMoves(GameSetup setup, List<Player> detectives, Player player, int source) {
 
 			HashSet<Move.SingleMove> availableMoves = new HashSet<>();
 			//creates a new hashset to hold all doable moves
 
-			for(int destination : setup.graph.adjacentNodes(source)) {
+			for (int i = graphIndex.start(source); i < graphIndex.end(source); i++) {
 				//iterates over all possible single moves
+				int destination = graphIndex.neighbour(i);
 
 				TicketBoard playerTickets = getPlayerTickets(player.piece()).get();
 				//gets a ticketBoard of all the player's tickets
 				ArrayList<ScotlandYard.Ticket> validTicketTypes = new ArrayList<>();
 				//creates an array to store all valid modes of transport
 
-				for (ScotlandYard.Transport t : setup.graph.edgeValueOrDefault(source, destination, ImmutableSet.of())) {
-					//iterates over the set of possible transport methods to get from source to destination
+				for (ScotlandYard.Ticket t : edgeTickets(i)) {
+					//iterates over the tickets of the possible transport methods to get from source to destination
 
-					if (playerTickets.getCount(t.requiredTicket()) > 0) {
+					if (playerTickets.getCount(t) > 0) {
 						//if the player has at least one of the correct ticket
-						validTicketTypes.add(t.requiredTicket());
+						validTicketTypes.add(t);
 						//add possible ticket to the validTicketTypes list
 					}
 
@@ -155,28 +222,61 @@ public final class MyGameStateFactory implements Factory<GameState> {
 
 		}
 
+		private boolean hasAnyMove() {
+			//checks whether at least one legal move exists without generating the full move set
+			//double moves always start with a valid single move, so only single moves need checking
+
+			for (Piece piece : remaining) {
+				Player player = getPlayerFromPiece(piece);
+				if (player == null) continue;
+				TicketBoard playerTickets = getPlayerTickets(piece).get();
+
+				for (int i = graphIndex.start(player.location()); i < graphIndex.end(player.location()); i++) {
+					int destination = graphIndex.neighbour(i);
+					ArrayList<ScotlandYard.Ticket> validTicketTypes = new ArrayList<>();
+
+					for (ScotlandYard.Ticket t : edgeTickets(i)) {
+						if (playerTickets.getCount(t) > 0) validTicketTypes.add(t);
+					}
+					if (playerTickets.getCount(ScotlandYard.Ticket.SECRET) > 0) validTicketTypes.add(ScotlandYard.Ticket.SECRET);
+
+					if (validMoveCheck(destination, validTicketTypes)) return true;
+					//stop at the first move found
+				}
+			}
+			return false;
+		}
+
+		private ImmutableSet<Move> getMoves() {
+			//the move set is only made the first time it is needed, states that are only read (e.g. for the winner)
+			//never pay for making all the single and double moves
+			if (moves == null) moves = makeAllMoves();
+			return moves;
+		}
+
 		private Set<Move.DoubleMove> makeDoubleMoves(GameSetup setup, List<Player> detectives, Player player, Move.SingleMove firstMove) {
 
 			HashSet<Move.DoubleMove> availableMoves = new HashSet<>();
 			//initialises set to contain all valid moves
 
-			for (int destination : setup.graph.adjacentNodes(firstMove.destination)) {
+			for (int i = graphIndex.start(firstMove.destination); i < graphIndex.end(firstMove.destination); i++) {
 				//iterates over every node adjacent to the destination node of the first move
+				int destination = graphIndex.neighbour(i);
 
 				TicketBoard playerTickets = getPlayerTickets(player.piece()).get();
 				//gets the player's tickets
 				ArrayList<ScotlandYard.Ticket> validTicketTypes = new ArrayList<>();
 				//makes an arrayList to hold all valid tickets that can be used
 
-				for (ScotlandYard.Transport t: setup.graph.edgeValueOrDefault(firstMove.destination, destination, ImmutableSet.of())) {
-					//iterate over all possible methods of transport to get from destination of first move to destination of second
+				for (ScotlandYard.Ticket t : edgeTickets(i)) {
+					//iterate over the tickets of all possible methods of transport to get from destination of first move to destination of second
 
-					if (firstMove.ticket == t.requiredTicket() && playerTickets.getCount(t.requiredTicket()) > 1) {
+					if (firstMove.ticket == t && playerTickets.getCount(t) > 1) {
 						//this checks that a double move can't be made with the same ticket both times if only has one ticket of that type
-						validTicketTypes.add(t.requiredTicket());
-					} else if (firstMove.ticket != t.requiredTicket() && playerTickets.getCount(t.requiredTicket()) > 0){
+						validTicketTypes.add(t);
+					} else if (firstMove.ticket != t && playerTickets.getCount(t) > 0){
 						//the ticket for the second move is a different one to the first one, and we already know we have a ticket for first move
-						validTicketTypes.add(t.requiredTicket());
+						validTicketTypes.add(t);
 					}
 					//if the two tickets are the same, and we don't have >= two tickets of the same type, don't add anything
 
@@ -232,6 +332,11 @@ public final class MyGameStateFactory implements Factory<GameState> {
 
 		private boolean checkMrXWin() {
 			boolean mrXWin = false;
+			for (Player detective : detectives) {
+				if (mrX.location() == detective.location()) return false;
+			}
+			//a capture is always a detective win, even if it used the detectives' last tickets
+
 			//mr x wins if:
 
 			if (remaining.contains(mrX.piece())) {
@@ -244,7 +349,7 @@ public final class MyGameStateFactory implements Factory<GameState> {
 				//if mr x has used all his moves and a detective is not on top of him
 			}
 
-			if (!(remaining.contains(mrX.piece())) && moves.isEmpty()) {
+			if (!(remaining.contains(mrX.piece())) && !hasAnyMove()) {
 				//if remaining doesn't contain mr X then it will contain at least one detective
 				mrXWin = true;
 			}
@@ -271,7 +376,7 @@ public final class MyGameStateFactory implements Factory<GameState> {
 			}
 			//a detective is in the same station as mr x
 
-			if (remaining.contains(mrX.piece()) && moves.isEmpty()) {
+			if (remaining.contains(mrX.piece()) && !hasAnyMove()) {
 				//if it is MrX's turn, but he cannot make any moves -> detectives win
 				detectiveWin = true;
 			}
@@ -296,7 +401,8 @@ public final class MyGameStateFactory implements Factory<GameState> {
 				final ImmutableSet<Piece> remaining,
 				final ImmutableList<LogEntry> log,
 				final Player mrX,
-				final List<Player> detectives) {
+				final List<Player> detectives,
+				final long key) {
 
 			if (setup.moves.isEmpty()) {
 				//if the list of moves provided is empty -> a game of length zero moves makes no sense
@@ -306,6 +412,7 @@ public final class MyGameStateFactory implements Factory<GameState> {
 				throw new IllegalArgumentException("Graph provided in setup is empty");
 			} else {
 				this.setup = setup;
+				this.graphIndex = GraphIndex.of(setup.graph);
 			}
 
 			if (remaining == null) {
@@ -342,8 +449,6 @@ public final class MyGameStateFactory implements Factory<GameState> {
 			checkDetectiveLocations();
 			//checks that all detectives are in a unique location
 
-			this.moves = makeAllMoves();
-
 			boolean detectiveWin = checkDetectivesWin();
 			boolean mrXWin = checkMrXWin();
 
@@ -353,6 +458,8 @@ public final class MyGameStateFactory implements Factory<GameState> {
 			else this.winner = ImmutableSet.of();
 			//winner is an empty set if neither mr X nor detectives have won
 
+			this.key = key;
+
 		}
 
 
@@ -425,10 +532,15 @@ public final class MyGameStateFactory implements Factory<GameState> {
 		@Nonnull
 		@Override
 		public ImmutableSet<Move> getAvailableMoves() {
-			if (winner.isEmpty()) return moves;
+			if (winner.isEmpty()) return getMoves();
 			else return ImmutableSet.of();
 		}
 
+		@Override
+		public long zobristKey() {
+			return key;
+		}
+
 		public boolean hasAnyTickets(Player player) {
 			//helper function -> returns false if the player has NO tickets of any type
 			return (player.has(ScotlandYard.Ticket.TAXI) ||
@@ -474,7 +586,13 @@ public final class MyGameStateFactory implements Factory<GameState> {
 				}
 				//removed mr X from the remaining players set and added all detectives
 
-				return new MyGameState(setup, ImmutableSet.copyOf(newStateRemaining), ImmutableList.copyOf(newStateLog), newMrX, detectives);
+				long newKey = key
+						^ playerDelta(mrX, newMrX)
+						^ remainingDelta(remaining, newStateRemaining)
+						^ Zobrist.round(log.size()) ^ Zobrist.round(newStateLog.size());
+				//only mr X, remaining and the round changed
+
+				return new MyGameState(setup, ImmutableSet.copyOf(newStateRemaining), ImmutableList.copyOf(newStateLog), newMrX, detectives, newKey);
 
 			} else {
 
@@ -502,7 +620,13 @@ public final class MyGameStateFactory implements Factory<GameState> {
 					newStateRemaining.add(mrX.piece());
 				}
 
-				return new MyGameState(setup, ImmutableSet.copyOf(newStateRemaining), log, newMrX, newDetectives);
+				long newKey = key
+						^ playerDelta(getPlayerFromPiece(mover), newDetective)
+						^ playerDelta(mrX, newMrX)
+						^ remainingDelta(remaining, newStateRemaining);
+				//the detective moved and gave its ticket to mr X
+
+				return new MyGameState(setup, ImmutableSet.copyOf(newStateRemaining), log, newMrX, newDetectives, newKey);
 
 			}
 		}
@@ -545,13 +669,18 @@ public final class MyGameStateFactory implements Factory<GameState> {
 			//updates remaining. I don't need to do as much checking here since I know that remaining must contain only MrX
 			//this is because only mr X can have double tickets, so only mr X can make double moves
 
-			return new MyGameState(setup, ImmutableSet.copyOf(newDoubleStateRemaining), ImmutableList.copyOf(newDoubleStateLog), newMrX, detectives);
+			long newKey = key
+					^ playerDelta(mrX, newMrX)
+					^ remainingDelta(remaining, newDoubleStateRemaining)
+					^ Zobrist.round(log.size()) ^ Zobrist.round(newDoubleStateLog.size());
+
+			return new MyGameState(setup, ImmutableSet.copyOf(newDoubleStateRemaining), ImmutableList.copyOf(newDoubleStateLog), newMrX, detectives, newKey);
 		}
 
 		@Nonnull
 		@Override
 		public GameState advance(Move move) {
-			if (!moves.contains(move)) throw new IllegalArgumentException("Illegal move: " + move);
+			if (!getMoves().contains(move)) throw new IllegalArgumentException("Illegal move: " + move);
 			//if an invalid move is trying to be made
 
 			//we want to find the type of move, single or double
@@ -579,9 +708,49 @@ public final class MyGameStateFactory implements Factory<GameState> {
 			GameSetup setup,
 			Player mrX,
 			ImmutableList<Player> detectives) {
-		return new MyGameState(setup, ImmutableSet.of(Piece.MrX.MRX), ImmutableList.of(), mrX, detectives);
+		return start(setup, ImmutableList.of(), mrX, detectives);
 		//makes a new gameState
 
 	}
 
+	/**
+	 * Resumes a game at the start of a round, with MrX to move, for example from a saved
+	 * checkpoint. The state is the same as the one reached by playing the game up to that point.
+	 *
+	 * @param setup the game setup
+	 * @param log MrX's travel log so far, one entry per round played
+	 * @param mrX MrX as he is now
+	 * @param detectives the detectives as they are now
+	 * @return the game state
+	 * @throws IllegalArgumentException if the log does not fit the setup, as well as for
+	 * everything {@link #build} rejects
+	 */
+	@Nonnull public GameState resume(
+			GameSetup setup,
+			ImmutableList<LogEntry> log,
+			Player mrX,
+			ImmutableList<Player> detectives) {
+		//the round starts with MrX, as in build
+		return start(setup, log, mrX, detectives);
+	}
+
+	private MyGameState start(		//checks what the key needs before the state checks the rest
+			GameSetup setup,
+			ImmutableList<LogEntry> log,
+			Player mrX,
+			ImmutableList<Player> detectives) {
+		if (setup == null) throw new NullPointerException("Null setup provided");
+		if (log == null) throw new NullPointerException("Null log provided");
+		if (mrX == null) throw new NullPointerException("Null MrX provided.");
+		if (detectives == null) throw new NullPointerException("Null detectives list provided");
+		if (log.size() > setup.moves.size()) throw new IllegalArgumentException("Log is longer than the game");
+		for (int round = 0; round < log.size(); round++) {
+			//each entry must be revealed exactly when the setup says so
+			if (log.get(round).location().isPresent() != setup.moves.get(round))
+				throw new IllegalArgumentException("Log entry " + round + " does not match the setup's reveal rounds");
+		}
+		ImmutableSet<Piece> remaining = ImmutableSet.of(Piece.MrX.MRX);
+		return new MyGameState(setup, remaining, log, mrX, detectives, hash(remaining, log, mrX, detectives));
+	}
+
 }
@@ -7,7 +7,10 @@ import javax.annotation.Nonnull;
 import com.google.common.collect.ImmutableSet;
 import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Factory;
 
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 
 /**
@@ -16,6 +19,46 @@ import java.util.Set;
  */
 public final class MyModelFactory implements Factory<Model> {
 
+	/**
+	 * An observer that only needs the latest board. With asynchronous dispatch, moves made while
+	 * it is still busy are skipped; the game over event is always delivered.
+	 */
+	public interface LatestOnly extends Model.Observer {}
+
+	private final Factory<Board.GameState> stateFactory;
+	//the factory used to create the initial game state of every model built
+	private final int capacity;
+	//how many events may wait for each observer, 0 when observers are called directly
+
+	public MyModelFactory() {
+		this(new MyGameStateFactory());
+	}
+
+	/**
+	 * @param stateFactory the factory used to create the game state backing each model
+	 */
+	public MyModelFactory(@Nonnull Factory<Board.GameState> stateFactory) {
+		this.stateFactory = Objects.requireNonNull(stateFactory);
+		this.capacity = 0;
+	}
+
+	/**
+	 * Builds models that notify observers asynchronously. Every observer gets its own queue and
+	 * delivery thread, so it sees events in order without holding up the game or the other
+	 * observers. Once an observer has {@code capacity} events waiting, {@link Model#chooseMove}
+	 * waits for it, except for {@link LatestOnly} observers, which skip to the latest move. A
+	 * delivery thread ends after the game over event, when its observer is unregistered or when
+	 * the model is {@link Model#close() closed}.
+	 *
+	 * @param stateFactory the factory used to create the game state backing each model
+	 * @param capacity the most events that may wait for each observer, at least 1
+	 */
+	public MyModelFactory(@Nonnull Factory<Board.GameState> stateFactory, int capacity) {
+		if (capacity < 1) throw new IllegalArgumentException("Capacity must be at least 1");
+		this.stateFactory = Objects.requireNonNull(stateFactory);
+		this.capacity = capacity;
+	}
+
 	@Nonnull @Override public Model build(GameSetup setup,
 	                                      Player mrX,
 	                                      ImmutableList<Player> detectives) {
@@ -25,10 +68,12 @@ public final class MyModelFactory implements Factory<Model> {
 
 			private Set<Observer> observers = new HashSet<>();
 			//creates a set to contain all registered observers
-			private MyGameStateFactory stateFactory = new MyGameStateFactory();
-			//creates a new game state factory to create all the
+			private final Map<Observer, ObserverDispatcher> dispatchers = new HashMap<>();
+			//the delivery queue of every observer, only used when dispatching asynchronously
 			private Board.GameState state = stateFactory.build(setup, mrX, detectives);
 			//creates the initial game state using the created state factory
+			private boolean closed;
+			//whether close() was called, observers can no longer be registered
 
 
 			@Nonnull
@@ -40,9 +85,13 @@ public final class MyModelFactory implements Factory<Model> {
 			@Override
 			public void registerObserver(@Nonnull Observer observer) {
 				if (observer == null) throw new NullPointerException("null observer provided");
+				if (closed) throw new IllegalStateException("Model is closed");
 
 				if(observers.contains(observer)) throw new IllegalArgumentException("observer already registered");
 				else observers.add(observer);
+
+				if (capacity > 0) dispatchers.put(observer,
+						new ObserverDispatcher(observer, capacity, observer instanceof LatestOnly));
 			}
 
 			@Override
@@ -52,6 +101,10 @@ public final class MyModelFactory implements Factory<Model> {
 				if(!observers.remove(observer)) throw new IllegalArgumentException("Observer provided was not registered");
 				//the .remove() function returns a boolean value based on whether the removal was successful or not
 				//if returns true, the observer was removed, and we don't need to do anything else
+
+				ObserverDispatcher dispatcher = dispatchers.remove(observer);
+				if (dispatcher != null) dispatcher.close();
+				//events already queued are still delivered, but no new ones
 			}
 
 			@Nonnull
@@ -66,14 +119,29 @@ public final class MyModelFactory implements Factory<Model> {
 				state = state.advance(move);
 				//advances the game state
 
+				Observer.Event event = state.getWinner().isEmpty()
+						? Observer.Event.MOVE_MADE
+						: Observer.Event.GAME_OVER;
+				//if there's no winner, then we update every observer to say only a move has been made
+				//if there's a winner, then we update every observer to say there's a winner, and the game is over.
+
+				if (closed) return;
+				//a closed model still takes moves but tells no observer
+
 				for (Observer observer : observers) {
-					if (state.getWinner().isEmpty()) observer.onModelChanged(state, Observer.Event.MOVE_MADE);
-					//if there's no winner, then we update every observer to say only a move has been made
-					else observer.onModelChanged(state, Observer.Event.GAME_OVER);
-					//if there's a winner, then we update every observer to say there's a winner, and the game is over.
+					ObserverDispatcher dispatcher = dispatchers.get(observer);
+					if (dispatcher == null) observer.onModelChanged(state, event);
+					else dispatcher.offer(state, event);
 				}
 
 			}
+
+			@Override
+			public void close() {
+				closed = true;
+				for (ObserverDispatcher dispatcher : dispatchers.values()) dispatcher.close();
+				//events already queued are still delivered, then the threads end
+			}
 		};
 	}
 }
@@ -0,0 +1,122 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Model.Observer;
+import uk.ac.bris.cs.scotlandyard.model.Model.Observer.Event;
+
+/**
+ * Delivers one observer's events, in order, on a daemon thread of its own.
+ * <br>
+ * At most {@code capacity} events wait at a time; {@link #offer(Board, Event)} blocks while the
+ * queue is full, so a slow observer holds back the game rather than falling ever further behind.
+ * A coalescing dispatcher never blocks: a new event replaces a {@link Event#MOVE_MADE} still
+ * waiting, so the observer only sees the latest board, and {@link Event#GAME_OVER} is never
+ * replaced. Exceptions thrown by the observer go to the thread's uncaught exception handler and
+ * delivery carries on. The thread ends after delivering {@link Event#GAME_OVER} or once closed
+ * and drained.
+ */
+final class ObserverDispatcher {
+
+	private static final class Pending {
+		final Board board;
+		final Event event;
+
+		Pending(Board board, Event event) {
+			this.board = board;
+			this.event = event;
+		}
+	}
+
+	private static final AtomicInteger THREADS = new AtomicInteger();
+
+	private final Observer observer;
+	private final int capacity;
+	private final boolean coalescing;
+	private final ArrayDeque<Pending> queue = new ArrayDeque<>();
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notEmpty = lock.newCondition();
+	private final Condition notFull = lock.newCondition();
+	private final Thread thread;
+	private boolean closed;
+
+	/**
+	 * @param observer the observer to deliver to
+	 * @param capacity the most events that may wait, at least 1
+	 * @param coalescing whether waiting {@link Event#MOVE_MADE}s are replaced by newer ones
+	 */
+	ObserverDispatcher(@Nonnull Observer observer, int capacity, boolean coalescing) {
+		if (capacity < 1) throw new IllegalArgumentException("Capacity must be at least 1");
+		this.observer = observer;
+		this.capacity = capacity;
+		this.coalescing = coalescing;
+		this.thread = new Thread(this::deliver, "observer-" + THREADS.getAndIncrement());
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Queues an event, waiting for room unless coalescing; events after {@link #close()} are
+	 * dropped
+	 */
+	void offer(@Nonnull Board board, @Nonnull Event event) {
+		lock.lock();
+		try {
+			if (closed) return;
+			if (coalescing) {
+				Pending last = queue.peekLast();
+				if (last != null && last.event == Event.MOVE_MADE) queue.pollLast();
+			} else {
+				while (queue.size() >= capacity && !closed) notFull.awaitUninterruptibly();
+				if (closed) return;
+			}
+			queue.addLast(new Pending(board, event));
+			notEmpty.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Stops taking events; those already queued are still delivered
+	 */
+	void close() {
+		lock.lock();
+		try {
+			closed = true;
+			notEmpty.signal();
+			notFull.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void deliver() {
+		while (true) {
+			Pending next;
+			lock.lock();
+			try {
+				while (queue.isEmpty() && !closed) notEmpty.awaitUninterruptibly();
+				if (queue.isEmpty()) return;
+				next = queue.pollFirst();
+				notFull.signal();
+			} finally {
+				lock.unlock();
+			}
+			try {
+				observer.onModelChanged(next.board, next.event);
+			} catch (RuntimeException e) {
+				thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+			}
+			if (next.event == Event.GAME_OVER) {
+				close();
+				return;
+			}
+		}
+	}
+}
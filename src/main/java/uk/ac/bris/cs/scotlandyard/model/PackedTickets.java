@@ -0,0 +1,57 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableMap;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+/**
+ * Packs and unpacks ticket counts stored as one byte per {@link Ticket} in a {@code long},
+ * indexed by {@link Ticket#ordinal()}.
+ */
+final class PackedTickets {
+
+	private static final Ticket[] TICKETS = Ticket.values();
+	private static final int BITS = 8;
+	private static final int MAX = (1 << BITS) - 1;
+
+	private PackedTickets() {}
+
+	static long pack(ImmutableMap<Ticket, Integer> tickets) {
+		long packed = 0;
+		for (Ticket ticket : TICKETS) packed |= pack(ticket, tickets.getOrDefault(ticket, 0));
+		return packed;
+	}
+
+	static long pack(Ticket ticket, int count) {
+		if (count < 0 || count > MAX)
+			throw new IllegalArgumentException("Ticket count out of range: " + ticket + "=" + count);
+		return (long) count << (ticket.ordinal() * BITS);
+	}
+
+	static int count(long packed, Ticket ticket) {
+		return (int) (packed >>> (ticket.ordinal() * BITS)) & MAX;
+	}
+
+	/**
+	 * @return bit mask by {@link Ticket#ordinal()} of tickets with a non-zero count
+	 */
+	static int availableMask(long packed) {
+		int mask = 0;
+		for (int t = 0; packed != 0; t++, packed >>>= BITS) {
+			if ((packed & MAX) != 0) mask |= 1 << t;
+		}
+		return mask;
+	}
+
+	static long use(long packed, Ticket ticket) {
+		if (count(packed, ticket) == 0)
+			throw new IllegalArgumentException("No " + ticket + " remaining");
+		return packed - (1L << (ticket.ordinal() * BITS));
+	}
+
+	static long give(long packed, Ticket ticket) {
+		if (count(packed, ticket) == MAX)
+			throw new IllegalStateException("Too many " + ticket + " tickets");
+		return packed + (1L << (ticket.ordinal() * BITS));
+	}
+}
@@ -0,0 +1,547 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Optional;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+/**
+ * A mutable game state intended for tree searches. Moves are applied in place with
+ * {@link #makeMove(Move)} and reverted in LIFO order with {@link #unmakeMove()}, so a depth-first
+ * search can walk the game tree without creating a new state for every move. Searches that want
+ * to avoid allocating moves too can use the {@link IntMove} encoded
+ * {@link #availableMoves(IntMoveList)} and {@link #makeMove(int)}, which only work on graphs whose
+ * nodes fit {@link IntMove#MAX_NODE}.
+ * <br>
+ * The rules, available moves and winners are the same as {@link MyGameStateFactory}. MrX's travel
+ * log is not kept; only its length is tracked as {@link #round()}. The state's
+ * {@link Zobrist.Keyed#zobristKey()} is maintained incrementally by every make and unmake.
+ * <br>
+ * Instances are not thread safe, use {@link #copy()} to give each thread its own state.
+ */
+public final class SearchState implements Zobrist.Keyed {
+
+	/**
+	 * The two sides of the game
+	 */
+	public enum Side {MRX, DETECTIVES}
+
+	private static final Ticket[] TICKETS = Ticket.values();
+	private static final int SECRET_BIT = 1 << Ticket.SECRET.ordinal();
+	private static final int FRAME_INTS = 4;
+	private static final int FRAME_LONGS = 3;
+
+	private final GameSetup setup;
+	private final GraphIndex graph;
+	private final Piece[] pieces;
+	// IntMove piece code of every player and the player of every piece code, -1 if absent
+	private final int[] codes;
+	private final int[] players = new int[ScotlandYard.ALL_PIECES.size()];
+	private final int[] locations;
+	private final long[] tickets;
+	private final long[] occupied;
+	private int remaining;
+	private int round;
+	private long key;
+
+	// the winner of the seeding board, used while no moves have been made
+	@Nullable private final Side seededWinner;
+	private boolean winnerKnown;
+	@Nullable private Side winner;
+
+	// undo stack; each frame holds player, previous location, remaining and round followed by
+	// the previous tickets of the mover and of MrX and the previous key
+	private int depth;
+	private int[] undoInts = new int[FRAME_INTS * 32];
+	private long[] undoLongs = new long[FRAME_LONGS * 32];
+
+	private SearchState(GameSetup setup, Piece[] pieces, int[] locations, long[] tickets,
+	                    long[] occupied, int remaining, int round, @Nullable Side seededWinner) {
+		this.setup = setup;
+		this.graph = GraphIndex.of(setup.graph);
+		this.pieces = pieces;
+		this.codes = new int[pieces.length];
+		Arrays.fill(players, -1);
+		for (int i = 0; i < pieces.length; i++) {
+			codes[i] = IntMove.pieceCode(pieces[i]);
+			players[codes[i]] = i;
+		}
+		this.locations = locations;
+		this.tickets = tickets;
+		this.occupied = occupied;
+		this.remaining = remaining;
+		this.round = round;
+		this.seededWinner = seededWinner;
+		this.key = Zobrist.hash(pieces, locations, tickets, remaining, round);
+	}
+
+	/**
+	 * Creates a search state at the start of a game, validating the players the same way
+	 * {@link ScotlandYard.Factory#build(GameSetup, Player, ImmutableList)} does.
+	 *
+	 * @param setup the game setup
+	 * @param mrX MrX player
+	 * @param detectives detective players
+	 * @return a new search state where MrX is to move
+	 */
+	@Nonnull public static SearchState of(GameSetup setup, Player mrX,
+	                                      ImmutableList<Player> detectives) {
+		return of(new BitboardGameStateFactory().build(setup, mrX, detectives), mrX.location());
+	}
+
+	/**
+	 * Seeds a search state from any board. MrX's location is taken from the available moves if
+	 * it is MrX's turn, otherwise from the last reveal in the travel log.
+	 *
+	 * @param board the board to copy
+	 * @return a new search state
+	 * @throws IllegalArgumentException if MrX's location cannot be determined from the board
+	 */
+	@Nonnull public static SearchState of(Board board) {
+		var moves = board.getAvailableMoves();
+		if (!moves.isEmpty() && moves.iterator().next().commencedBy().isMrX())
+			return of(board, moves.iterator().next().source());
+		var log = board.getMrXTravelLog();
+		for (int i = log.size() - 1; i >= 0; i--) {
+			Optional<Integer> location = log.get(i).location();
+			if (location.isPresent()) return of(board, location.get());
+		}
+		throw new IllegalArgumentException("MrX's location is unknown, use of(Board, int)");
+	}
+
+	/**
+	 * Seeds a search state from any board with the given location for MrX. This is typically
+	 * used by detectives to search from a guessed location.
+	 * <br>
+	 * The pieces still to move this round are inferred from the available moves, so a detective
+	 * that has tickets but cannot move is assumed to have already moved.
+	 *
+	 * @param board the board to copy
+	 * @param mrXLocation where MrX is assumed to be
+	 * @return a new search state
+	 * @throws IllegalArgumentException if a node is outside 0 to {@link IntMove#MAX_NODE}
+	 */
+	@Nonnull public static SearchState of(Board board, int mrXLocation) {
+		var players = board.getPlayers().stream()
+				.sorted(ScotlandYard.PIECE_VALUE_ORDER)
+				.toArray(Piece[]::new);
+		if (players.length == 0 || !players[0].isMrX())
+			throw new IllegalArgumentException("Board has no MrX");
+		var locations = new int[players.length];
+		var tickets = new long[players.length];
+		int maxNode = Math.max(GraphIndex.of(board.getSetup().graph).maxNode(), 0);
+		locations[0] = mrXLocation;
+		for (int i = 1; i < players.length; i++) {
+			locations[i] = board.getDetectiveLocation((Piece.Detective) players[i]).orElseThrow();
+			maxNode = Math.max(maxNode, locations[i]);
+		}
+		if (Math.max(maxNode, mrXLocation) > IntMove.MAX_NODE || mrXLocation < 0)
+			throw new IllegalArgumentException("Nodes must be between 0 and " + IntMove.MAX_NODE);
+		var occupied = new long[(Math.max(maxNode, mrXLocation) >>> 6) + 1];
+		for (int i = 0; i < players.length; i++) {
+			var ticketBoard = board.getPlayerTickets(players[i]).orElseThrow();
+			for (Ticket ticket : TICKETS)
+				tickets[i] |= PackedTickets.pack(ticket, ticketBoard.getCount(ticket));
+			if (i > 0) occupied[locations[i] >>> 6] |= 1L << locations[i];
+		}
+
+		int remaining = 0;
+		Side winner = null;
+		if (board.getWinner().isEmpty()) {
+			for (Move move : board.getAvailableMoves()) {
+				for (int i = 0; i < players.length; i++) {
+					if (players[i] == move.commencedBy()) remaining |= 1 << i;
+				}
+			}
+		} else {
+			remaining = 1;
+			winner = board.getWinner().contains(players[0]) ? Side.MRX : Side.DETECTIVES;
+		}
+		return new SearchState(board.getSetup(), players, locations, tickets, occupied,
+				remaining, board.getMrXTravelLog().size(), winner);
+	}
+
+	/**
+	 * @return an independent copy of this state, including its undo history
+	 */
+	@Nonnull public SearchState copy() {
+		var copy = new SearchState(setup, pieces, locations.clone(), tickets.clone(),
+				occupied.clone(), remaining, round, seededWinner);
+		copy.key = key;
+		copy.depth = depth;
+		copy.undoInts = undoInts.clone();
+		copy.undoLongs = undoLongs.clone();
+		return copy;
+	}
+
+	@Override public long zobristKey() { return key; }
+
+	@Nonnull public GameSetup getSetup() { return setup; }
+
+	/**
+	 * @return all pieces, MrX first
+	 */
+	@Nonnull public ImmutableList<Piece> getPieces() { return ImmutableList.copyOf(pieces); }
+
+	private int indexOf(Piece piece) {
+		for (int i = 0; i < pieces.length; i++) {
+			if (pieces[i] == piece) return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * @param piece the piece
+	 * @return the location of the piece
+	 * @throws IllegalArgumentException if the piece is not in the game
+	 */
+	public int location(Piece piece) {
+		int index = indexOf(piece);
+		if (index < 0) throw new IllegalArgumentException(piece + " is not in the game");
+		return locations[index];
+	}
+
+	/**
+	 * @return the number of pieces in the game
+	 */
+	public int pieceCount() { return pieces.length; }
+
+	/**
+	 * @param index the index of a piece in {@link #getPieces()}
+	 * @return the location of the piece
+	 * @throws IndexOutOfBoundsException if there is no such piece
+	 */
+	public int location(int index) {
+		if (index < 0 || index >= pieces.length) throw new IndexOutOfBoundsException(index);
+		return locations[index];
+	}
+
+	/**
+	 * @return MrX's (possibly assumed) location
+	 */
+	public int mrXLocation() { return locations[0]; }
+
+	/**
+	 * @param piece the piece
+	 * @param ticket the ticket
+	 * @return the number of the given ticket the piece holds
+	 */
+	public int ticketCount(Piece piece, Ticket ticket) {
+		int index = indexOf(piece);
+		if (index < 0) throw new IllegalArgumentException(piece + " is not in the game");
+		return PackedTickets.count(tickets[index], ticket);
+	}
+
+	/**
+	 * @return the number of entries MrX's travel log would have
+	 */
+	public int round() { return round; }
+
+	/**
+	 * @return the number of moves made since this state was seeded
+	 */
+	public int depth() { return depth; }
+
+	public boolean isMrXTurn() { return (remaining & 1) != 0; }
+
+	/**
+	 * @param piece the piece
+	 * @return whether the piece is yet to move in the current turn
+	 */
+	public boolean isRemaining(Piece piece) {
+		int index = indexOf(piece);
+		return index >= 0 && (remaining & (1 << index)) != 0;
+	}
+
+	private boolean isOccupied(int node) {
+		return node >>> 6 < occupied.length && (occupied[node >>> 6] & (1L << node)) != 0;
+	}
+
+	private static int usableTickets(int available, int edgeTickets) {
+		return (edgeTickets & available) | (available & SECRET_BIT);
+	}
+
+	private boolean hasAnyMove(int player) {
+		int source = locations[player];
+		int available = PackedTickets.availableMask(tickets[player]);
+		for (int i = graph.start(source), end = graph.end(source); i < end; i++) {
+			if (!isOccupied(graph.neighbour(i)) && usableTickets(available, graph.tickets(i)) != 0)
+				return true;
+		}
+		return false;
+	}
+
+	private boolean hasAnyMove() {
+		if (isMrXTurn()) return hasAnyMove(0);
+		for (int i = 1; i < pieces.length; i++) {
+			if ((remaining & (1 << i)) != 0 && hasAnyMove(i)) return true;
+		}
+		return false;
+	}
+
+	@Nullable private Side computeWinner() {
+		if (depth == 0 && seededWinner != null) return seededWinner;
+		boolean captured = isOccupied(locations[0]);
+		boolean canMove = hasAnyMove();
+		// MyGameStateFactory refuses states where both sides win, we let the detectives have it
+		if (captured || (isMrXTurn() && !canMove) || tickets[0] == 0) return Side.DETECTIVES;
+		boolean detectivesOut = true;
+		for (int i = 1; i < pieces.length; i++) {
+			if (tickets[i] != 0) detectivesOut = false;
+		}
+		if ((isMrXTurn() && round == setup.moves.size()) || !canMove || detectivesOut)
+			return Side.MRX;
+		return null;
+	}
+
+	/**
+	 * @return the winning side; null if the game is not over
+	 */
+	@Nullable public Side winner() {
+		if (!winnerKnown) {
+			winner = computeWinner();
+			winnerKnown = true;
+		}
+		return winner;
+	}
+
+	public boolean isGameOver() { return winner() != null; }
+
+	/**
+	 * @return the winner as pieces, see {@link Board#getWinner()}
+	 */
+	@Nonnull public ImmutableSet<Piece> getWinner() {
+		Side side = winner();
+		if (side == null) return ImmutableSet.of();
+		if (side == Side.MRX) return ImmutableSet.of(pieces[0]);
+		return ImmutableSet.copyOf(Arrays.asList(pieces).subList(1, pieces.length));
+	}
+
+	private void addSingleMoves(IntMoveList out, int player) {
+		int source = locations[player];
+		int available = PackedTickets.availableMask(tickets[player]);
+		for (int i = graph.start(source), end = graph.end(source); i < end; i++) {
+			int destination = graph.neighbour(i);
+			if (isOccupied(destination)) continue;
+			int usable = usableTickets(available, graph.tickets(i));
+			for (int t = 0; usable != 0; t++, usable >>>= 1) {
+				if ((usable & 1) != 0) out.add(IntMove.single(codes[player], source, t, destination));
+			}
+		}
+	}
+
+	private void addMrXMoves(IntMoveList out) {
+		int source = locations[0];
+		long packed = tickets[0];
+		boolean canDouble = PackedTickets.count(packed, Ticket.DOUBLE) > 0
+				&& setup.moves.size() - round > 1;
+		int available = PackedTickets.availableMask(packed);
+		for (int i = graph.start(source), end = graph.end(source); i < end; i++) {
+			int destination1 = graph.neighbour(i);
+			if (isOccupied(destination1)) continue;
+			int usable1 = usableTickets(available, graph.tickets(i));
+			for (int t1 = 0; usable1 != 0; t1++, usable1 >>>= 1) {
+				if ((usable1 & 1) == 0) continue;
+				out.add(IntMove.single(codes[0], source, t1, destination1));
+				if (!canDouble) continue;
+				int availableAfter = PackedTickets.availableMask(PackedTickets.use(packed, TICKETS[t1]));
+				for (int j = graph.start(destination1), end2 = graph.end(destination1); j < end2; j++) {
+					int destination2 = graph.neighbour(j);
+					if (isOccupied(destination2)) continue;
+					int usable2 = usableTickets(availableAfter, graph.tickets(j));
+					for (int t2 = 0; usable2 != 0; t2++, usable2 >>>= 1) {
+						if ((usable2 & 1) != 0) out.add(IntMove.doubleMove(codes[0], source,
+								t1, destination1, t2, destination2));
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds all available moves, encoded with {@link IntMove}, to the given list; nothing is added
+	 * if the game is over. The list is not cleared first.
+	 *
+	 * @param out the list to add moves to
+	 */
+	public void availableMoves(IntMoveList out) {
+		if (isGameOver()) return;
+		if (isMrXTurn()) addMrXMoves(out);
+		else for (int i = 1; i < pieces.length; i++) {
+			if ((remaining & (1 << i)) != 0) addSingleMoves(out, i);
+		}
+	}
+
+	/**
+	 * Adds all available moves to the given collection; nothing is added if the game is over.
+	 *
+	 * @param out the collection to add moves to
+	 */
+	public void availableMoves(Collection<? super Move> out) {
+		var moves = new IntMoveList();
+		availableMoves(moves);
+		for (int i = 0; i < moves.size(); i++) out.add(IntMove.decode(moves.get(i)));
+	}
+
+	/**
+	 * @return the available moves, see {@link Board#getAvailableMoves()}
+	 */
+	@Nonnull public ImmutableSet<Move> getAvailableMoves() {
+		var moves = new IntMoveList();
+		availableMoves(moves);
+		return moves.toMoves();
+	}
+
+	private boolean canTravel(long packed, Ticket ticket, int source, int destination) {
+		if (PackedTickets.count(packed, ticket) == 0 || isOccupied(destination)) return false;
+		int edge = graph.edge(source, destination);
+		if (edge < 0) return false;
+		return ticket == Ticket.SECRET || (graph.tickets(edge) & (1 << ticket.ordinal())) != 0;
+	}
+
+	private void pushFrame(int player) {
+		if ((depth + 1) * FRAME_INTS > undoInts.length) {
+			undoInts = Arrays.copyOf(undoInts, undoInts.length * 2);
+			undoLongs = Arrays.copyOf(undoLongs, undoLongs.length * 2);
+		}
+		int i = depth * FRAME_INTS;
+		undoInts[i] = player;
+		undoInts[i + 1] = locations[player];
+		undoInts[i + 2] = remaining;
+		undoInts[i + 3] = round;
+		int l = depth * FRAME_LONGS;
+		undoLongs[l] = tickets[player];
+		undoLongs[l + 1] = tickets[0];
+		undoLongs[l + 2] = key;
+		depth++;
+		winnerKnown = false;
+	}
+
+	private int detectivesWithTickets() {
+		int mask = 0;
+		for (int i = 1; i < pieces.length; i++) {
+			if (tickets[i] != 0) mask |= 1 << i;
+		}
+		return mask;
+	}
+
+	private void makeSingle(int player, Ticket ticket, int source, int destination) {
+		pushFrame(player);
+		long before = tickets[player];
+		long mrXBefore = tickets[0];
+		int remainingBefore = remaining;
+		locations[player] = destination;
+		tickets[player] = PackedTickets.use(tickets[player], ticket);
+		if (player == 0) {
+			key ^= Zobrist.round(round) ^ Zobrist.round(round + 1);
+			round++;
+			remaining = detectivesWithTickets();
+		} else {
+			tickets[0] = PackedTickets.give(tickets[0], ticket);
+			occupied[source >>> 6] &= ~(1L << source);
+			occupied[destination >>> 6] |= 1L << destination;
+			remaining = Integer.bitCount(remaining) != 1
+					? remaining & ~(1 << player) & detectivesWithTickets()
+					: 1;
+			key ^= Zobrist.ticketsDelta(pieces[0], mrXBefore, tickets[0]);
+		}
+		key ^= Zobrist.location(pieces[player], source)
+				^ Zobrist.location(pieces[player], destination)
+				^ Zobrist.ticketsDelta(pieces[player], before, tickets[player])
+				^ Zobrist.remainingDelta(pieces, remainingBefore, remaining);
+	}
+
+	private void makeDouble(Ticket ticket1, int source, int destination1,
+	                        Ticket ticket2, int destination2) {
+		pushFrame(0);
+		long before = tickets[0];
+		int remainingBefore = remaining;
+		locations[0] = destination2;
+		long packed = PackedTickets.use(before, ticket1);
+		packed = PackedTickets.use(packed, ticket2);
+		tickets[0] = PackedTickets.use(packed, Ticket.DOUBLE);
+		remaining = detectivesWithTickets();
+		key ^= Zobrist.location(pieces[0], source)
+				^ Zobrist.location(pieces[0], destination2)
+				^ Zobrist.ticketsDelta(pieces[0], before, tickets[0])
+				^ Zobrist.remainingDelta(pieces, remainingBefore, remaining)
+				^ Zobrist.round(round) ^ Zobrist.round(round + 2);
+		round += 2;
+	}
+
+	/**
+	 * Applies the move in place. Like {@link Board.GameState#advance(Move)}, the move must be one
+	 * of the available moves of the pieces yet to move.
+	 *
+	 * @param move the move to make, encoded with {@link IntMove}
+	 * @throws IllegalArgumentException if the move is not legal in this state
+	 */
+	public void makeMove(int move) {
+		int code = IntMove.pieceCode(move);
+		int player = code < players.length ? players[code] : -1;
+		int source = IntMove.source(move);
+		if (player < 0 || (remaining & (1 << player)) == 0 || source != locations[player])
+			throw new IllegalArgumentException("Illegal move: " + IntMove.toString(move));
+		long packed = tickets[player];
+		Ticket ticket1 = IntMove.ticket1(move);
+		int destination1 = IntMove.destination1(move);
+		if (!IntMove.isDouble(move)) {
+			if (!canTravel(packed, ticket1, source, destination1))
+				throw new IllegalArgumentException("Illegal move: " + IntMove.toString(move));
+			makeSingle(player, ticket1, source, destination1);
+			return;
+		}
+		Ticket ticket2 = IntMove.ticket2(move);
+		int destination2 = IntMove.destination2(move);
+		if (player != 0
+				|| PackedTickets.count(packed, Ticket.DOUBLE) == 0
+				|| setup.moves.size() - round <= 1
+				|| !canTravel(packed, ticket1, source, destination1)
+				|| !canTravel(PackedTickets.use(packed, ticket1), ticket2, destination1, destination2))
+			throw new IllegalArgumentException("Illegal move: " + IntMove.toString(move));
+		makeDouble(ticket1, source, destination1, ticket2, destination2);
+	}
+
+	/**
+	 * Applies the move in place, see {@link #makeMove(int)}.
+	 *
+	 * @param move the move to make
+	 * @throws IllegalArgumentException if the move is not legal in this state
+	 */
+	public void makeMove(Move move) {
+		if (move == null) throw new IllegalArgumentException("Illegal move: null");
+		makeMove(IntMove.encode(move));
+	}
+
+	/**
+	 * Reverts the last move made with {@link #makeMove(Move)} or {@link #makeMove(int)}.
+	 *
+	 * @throws IllegalStateException if no moves have been made
+	 */
+	public void unmakeMove() {
+		if (depth == 0) throw new IllegalStateException("No moves to unmake");
+		depth--;
+		int i = depth * FRAME_INTS;
+		int player = undoInts[i];
+		int location = locations[player];
+		if (player != 0) {
+			occupied[location >>> 6] &= ~(1L << location);
+			occupied[undoInts[i + 1] >>> 6] |= 1L << undoInts[i + 1];
+		}
+		locations[player] = undoInts[i + 1];
+		remaining = undoInts[i + 2];
+		round = undoInts[i + 3];
+		int l = depth * FRAME_LONGS;
+		tickets[player] = undoLongs[l];
+		tickets[0] = undoLongs[l + 1];
+		key = undoLongs[l + 2];
+		winnerKnown = false;
+	}
+}
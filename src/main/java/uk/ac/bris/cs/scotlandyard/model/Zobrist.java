@@ -0,0 +1,123 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+/**
+ * 64-bit Zobrist keys for game states. A state's key is the XOR of one key for every piece
+ * location, every ticket count, every piece still to move and the round (the travel log size),
+ * so states can update it incrementally as moves are made.
+ * <br>
+ * Keys depend only on the pieces, node numbers and counts, never on the order in which players
+ * were given, so equal positions reached through different move orders have equal keys.
+ */
+public final class Zobrist {
+
+	/**
+	 * A game state that maintains its own Zobrist key
+	 */
+	public interface Keyed {
+		/**
+		 * @return the Zobrist key of this state; O(1)
+		 */
+		long zobristKey();
+	}
+
+	private static final Ticket[] TICKETS = Ticket.values();
+	private static final int PIECES = ScotlandYard.ALL_PIECES.size();
+	private static final int CACHED = 256;
+
+	private static final int LOCATION = 1;
+	private static final int TICKET = 2;
+	private static final int REMAINING = 3;
+	private static final int ROUND = 4;
+
+	private static final long[] LOCATIONS = new long[PIECES * CACHED];
+	private static final long[] COUNTS = new long[PIECES * TICKETS.length * CACHED];
+	private static final long[] ROUNDS = new long[CACHED];
+
+	static {
+		for (int p = 0; p < PIECES; p++) {
+			for (int n = 0; n < CACHED; n++) {
+				LOCATIONS[p * CACHED + n] = key(LOCATION, p, 0, n);
+				for (Ticket t : TICKETS)
+					COUNTS[(p * TICKETS.length + t.ordinal()) * CACHED + n] = key(TICKET, p, t.ordinal(), n);
+			}
+		}
+		for (int r = 0; r < CACHED; r++) ROUNDS[r] = key(ROUND, 0, 0, r);
+	}
+
+	private Zobrist() {}
+
+	// SplitMix64 over the feature id; tables above cache the common range
+	private static long key(int kind, int piece, int a, int value) {
+		long z = ((long) kind << 56 | (long) piece << 48 | (long) a << 40 | (value & 0xFFFFFFFFL))
+				* 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	private static int index(Piece piece) {
+		return piece.isMrX() ? 0 : 1 + ((Piece.Detective) piece).ordinal();
+	}
+
+	static long location(Piece piece, int node) {
+		return node >= 0 && node < CACHED
+				? LOCATIONS[index(piece) * CACHED + node]
+				: key(LOCATION, index(piece), 0, node);
+	}
+
+	static long ticket(Piece piece, Ticket ticket, int count) {
+		return count < CACHED
+				? COUNTS[(index(piece) * TICKETS.length + ticket.ordinal()) * CACHED + count]
+				: key(TICKET, index(piece), ticket.ordinal(), count);
+	}
+
+	static long remaining(Piece piece) { return key(REMAINING, index(piece), 0, 0); }
+
+	static long round(int round) {
+		return round >= 0 && round < CACHED ? ROUNDS[round] : key(ROUND, 0, 0, round);
+	}
+
+	/**
+	 * @return the key of all ticket counts in the packed tickets, see {@link PackedTickets}
+	 */
+	static long tickets(Piece piece, long packed) {
+		long key = 0;
+		for (Ticket t : TICKETS) key ^= ticket(piece, t, PackedTickets.count(packed, t));
+		return key;
+	}
+
+	/**
+	 * @return the key change when a piece's tickets go from before to after
+	 */
+	static long ticketsDelta(Piece piece, long before, long after) {
+		long key = 0;
+		for (Ticket t : TICKETS) {
+			int from = PackedTickets.count(before, t);
+			int to = PackedTickets.count(after, t);
+			if (from != to) key ^= ticket(piece, t, from) ^ ticket(piece, t, to);
+		}
+		return key;
+	}
+
+	/**
+	 * @return the key change when the remaining mask over the given pieces changes
+	 */
+	static long remainingDelta(Piece[] pieces, int before, int after) {
+		long key = 0;
+		for (int changed = before ^ after; changed != 0; changed &= changed - 1)
+			key ^= remaining(pieces[Integer.numberOfTrailingZeros(changed)]);
+		return key;
+	}
+
+	/**
+	 * @return the full key of a state given as parallel arrays indexed by player
+	 */
+	static long hash(Piece[] pieces, int[] locations, long[] tickets, int remaining, int round) {
+		long key = round(round) ^ remainingDelta(pieces, 0, remaining);
+		for (int i = 0; i < pieces.length; i++)
+			key ^= location(pieces[i], locations[i]) ^ tickets(pieces[i], tickets[i]);
+		return key;
+	}
+}
@@ -0,0 +1,541 @@
+package uk.ac.bris.cs.scotlandyard.record;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.IntMove;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+/**
+ * A memory mapped file of many games of one setup, for scanning in bulk.
+ * <br>
+ * {@link #games()} and {@link #plies()} are parallel streams that split the archive by game and
+ * decode straight from the mapped file into one {@link Game} or {@link Ply} per split. They are
+ * flyweights: the same instance is handed to the stream for every element, so they must not be
+ * kept, but scanning allocates nothing per game. Aggregate with primitive collectors, for example
+ * {@code archive.plies().filter(Ply::isMrX).mapToInt(...)} or a {@code collect} into arrays.
+ * <br>
+ * A file is a header of the magic number, version, {@link GameCodec} setup, game count and the
+ * position of the offset table, followed by the games and then the table of each game's position
+ * plus the end of the last game. A game is its outcome as a byte, its {@link GameCodec} players,
+ * its number of moves as an unsigned short and the moves as {@link IntMove}s. Files are written
+ * with {@link #create(Path, GameSetup)}; a file whose writer was not closed has no table and
+ * cannot be opened.
+ * <br>
+ * Opening an archive only reads its header and offset table, so it does not page in the games.
+ * Each game is checked against its offsets when it is first visited, and a corrupt one throws an
+ * {@link IllegalStateException} from the stream or {@link #game(int)}.
+ */
+public final class GameArchive {
+
+	static final int MAGIC = 0x53594152;
+	static final int VERSION = 1;
+	static final int HEADER_BYTES = 2 * Integer.BYTES + GameCodec.SETUP_BYTES + Integer.BYTES + Long.BYTES;
+	// games are mapped in segments of at most this size, as a buffer is limited to 2GB
+	static final long SEGMENT_BYTES = 1L << 30;
+
+	private static final int UNFINISHED = 0;
+	private static final int MRX_WON = 1;
+	private static final int DETECTIVES_WON = 2;
+
+	// an outcome, one player and no moves
+	private static final int MIN_GAME_BYTES = 1 + GameCodec.playersBytes(1) + Short.BYTES;
+
+	private static final Piece[] PIECES = ScotlandYard.ALL_PIECES.toArray(new Piece[0]);
+
+	private final GameSetup setup;
+	private final int size;
+	private final ByteBuffer table;
+	private final ByteBuffer[] segments;
+	private final int[] segmentStarts;
+	private final long[] segmentOffsets;
+
+	private GameArchive(GameSetup setup, int size, ByteBuffer table, ByteBuffer[] segments,
+	                    int[] segmentStarts, long[] segmentOffsets) {
+		this.setup = setup;
+		this.size = size;
+		this.table = table;
+		this.segments = segments;
+		this.segmentStarts = segmentStarts;
+		this.segmentOffsets = segmentOffsets;
+	}
+
+	/**
+	 * Starts a new archive
+	 *
+	 * @param file the archive file, replaced if it exists
+	 * @param setup the setup of every game
+	 * @return the writer, which must be closed to finish the archive
+	 */
+	@Nonnull public static Writer create(@Nonnull Path file, @Nonnull GameSetup setup) throws IOException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			return new Writer(channel, setup);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Maps an archive into memory; the file may be closed or moved once this returns
+	 *
+	 * @param file the archive file
+	 * @param graph the graph the games were played on
+	 * @return the archive
+	 * @throws IOException if the file cannot be read, is not a finished archive or was written for
+	 * another graph
+	 */
+	@Nonnull public static GameArchive open(@Nonnull Path file,
+	                                        @Nonnull ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph)
+			throws IOException {
+		return open(file, graph, SEGMENT_BYTES);
+	}
+
+	static GameArchive open(Path file, ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph,
+	                        long segmentBytes) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long length = channel.size();
+			if (length < HEADER_BYTES) throw new IOException("Not a game archive: " + file);
+			var header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+			if (header.getInt() != MAGIC) throw new IOException("Not a game archive: " + file);
+			int version = header.getInt();
+			if (version != VERSION) throw new IOException("Unsupported game archive version " + version);
+			GameSetup setup = GameCodec.getSetup(header, graph);
+			int size = header.getInt();
+			long tableAt = header.getLong();
+			if (tableAt == 0) throw new IOException("Unfinished game archive: " + file);
+			if (size < 0 || tableAt < HEADER_BYTES || length != tableAt + (size + 1L) * Long.BYTES)
+				throw new IOException("Corrupt game archive header: " + file);
+			var table = channel.map(FileChannel.MapMode.READ_ONLY, tableAt, length - tableAt);
+			if (table.getLong(0) != HEADER_BYTES || table.getLong(size * Long.BYTES) != tableAt)
+				throw new IOException("Corrupt game archive table: " + file);
+			// offsets must increase by at least the smallest game, which with the first and last
+			// offsets checked keeps every game inside the file; the games are checked in Game.moveTo
+			for (int i = 0; i < size; i++) {
+				if (table.getLong((i + 1) * Long.BYTES) - table.getLong(i * Long.BYTES) < MIN_GAME_BYTES)
+					throw new IOException("Corrupt game " + i + " in " + file);
+			}
+
+			// split the games into segments that each fit in a buffer
+			int[] starts = new int[16];
+			long[] offsets = new long[16];
+			int count = 0;
+			for (int game = 0; game < size; ) {
+				long from = table.getLong(game * Long.BYTES);
+				int end = game;
+				while (end < size && table.getLong((end + 1) * Long.BYTES) - from <= segmentBytes) end++;
+				if (end == game) throw new IOException("Corrupt game archive table: " + file);
+				if (count == starts.length) {
+					starts = Arrays.copyOf(starts, count * 2);
+					offsets = Arrays.copyOf(offsets, count * 2);
+				}
+				starts[count] = game;
+				offsets[count++] = from;
+				game = end;
+			}
+			var segments = new ByteBuffer[count];
+			for (int s = 0; s < count; s++) {
+				long to = s + 1 < count ? offsets[s + 1] : tableAt;
+				segments[s] = channel.map(FileChannel.MapMode.READ_ONLY, offsets[s], to - offsets[s]);
+			}
+			return new GameArchive(setup, size, table, segments,
+					Arrays.copyOf(starts, count), Arrays.copyOf(offsets, count));
+		}
+	}
+
+	private long gameBytes(int game) {
+		return table.getLong((game + 1) * Long.BYTES) - table.getLong(game * Long.BYTES);
+	}
+
+	@Nonnull public GameSetup setup() { return setup; }
+
+	/**
+	 * @return the number of games
+	 */
+	public int size() { return size; }
+
+	/**
+	 * @param index between 0 and {@link #size()}, exclusive
+	 * @return a view of the game, which may be kept
+	 */
+	@Nonnull public Game game(int index) {
+		Objects.checkIndex(index, size);
+		var game = new Game();
+		game.moveTo(index);
+		return game;
+	}
+
+	/**
+	 * @return a parallel stream of every game, in order; the elements are one reused
+	 * {@link Game} per split
+	 */
+	@Nonnull public Stream<Game> games() {
+		return StreamSupport.stream(new GameSpliterator(0, size), true);
+	}
+
+	/**
+	 * @return a parallel stream of every move of every game, in order; the elements are one
+	 * reused {@link Ply} per split
+	 */
+	@Nonnull public Stream<Ply> plies() {
+		return StreamSupport.stream(new PlySpliterator(0, size), true);
+	}
+
+	private int segment(int game) {
+		int s = Arrays.binarySearch(segmentStarts, game);
+		return s >= 0 ? s : -s - 2;
+	}
+
+	/**
+	 * A view of one game in the archive, decoded on demand from the mapped file
+	 */
+	public final class Game {
+
+		private ByteBuffer buffer;
+		private int index;
+		private int at;
+		private int players;
+		private int movesAt;
+		private int plies;
+
+		private Game() {}
+
+		// checks that the game is the size its offsets say; open checked that it holds at least
+		// the outcome, player count and one player
+		private void moveTo(int index) {
+			int s = segment(index);
+			this.buffer = segments[s];
+			this.index = index;
+			this.at = (int) (table.getLong(index * Long.BYTES) - segmentOffsets[s]);
+			this.players = buffer.get(at + 1) & 0xFF;
+			long bytes = gameBytes(index);
+			if (players < 1 || players > PIECES.length || bytes < 1 + GameCodec.playersBytes(players) + Short.BYTES)
+				throw new IllegalStateException("Corrupt game " + index);
+			int playsAt = at + 1 + GameCodec.playersBytes(players);
+			this.plies = buffer.getShort(playsAt) & 0xFFFF;
+			this.movesAt = playsAt + Short.BYTES;
+			if (bytes != 1 + ReplayWriter.gameBytes(players, plies))
+				throw new IllegalStateException("Corrupt game " + index);
+		}
+
+		/**
+		 * @return the game's position in the archive
+		 */
+		public int index() { return index; }
+
+		/**
+		 * @return whether the game was played to the end
+		 */
+		public boolean isFinished() { return buffer.get(at) != UNFINISHED; }
+
+		public boolean mrXWon() { return buffer.get(at) == MRX_WON; }
+
+		public boolean detectivesWon() { return buffer.get(at) == DETECTIVES_WON; }
+
+		/**
+		 * @return the number of players, MrX first
+		 */
+		public int players() { return players; }
+
+		/**
+		 * @param player between 0 and {@link #players()}, exclusive; 0 is MrX
+		 * @return the player's piece
+		 */
+		@Nonnull public Piece piece(int player) { return PIECES[buffer.get(player(player)) & 0xFF]; }
+
+		/**
+		 * @return the player's location at the start
+		 */
+		public int location(int player) { return buffer.get(player(player) + 1) & 0xFF; }
+
+		/**
+		 * @return how many of the ticket the player held at the start
+		 */
+		public int tickets(int player, @Nonnull Ticket ticket) {
+			return buffer.get(player(player) + 2 + ticket.ordinal()) & 0xFF;
+		}
+
+		/**
+		 * @return MrX's location at the start
+		 */
+		public int mrXStart() { return location(0); }
+
+		/**
+		 * @return the number of moves made
+		 */
+		public int plies() { return plies; }
+
+		/**
+		 * @param ply between 0 and {@link #plies()}, exclusive
+		 * @return the encoded move made at the ply
+		 */
+		public int move(int ply) {
+			Objects.checkIndex(ply, plies);
+			return buffer.getInt(movesAt + ply * Integer.BYTES);
+		}
+
+		/**
+		 * @return a copy of the game
+		 */
+		@Nonnull public Replay replay() {
+			var starts = ImmutableList.<Player>builder();
+			try {
+				var in = buffer.duplicate().position(at + 1);
+				starts.addAll(GameCodec.getPlayers(in));
+			} catch (IOException e) {
+				throw new IllegalStateException("Corrupt game " + index, e);
+			}
+			var all = starts.build();
+			int[] moves = new int[plies];
+			for (int ply = 0; ply < plies; ply++) moves[ply] = buffer.getInt(movesAt + ply * Integer.BYTES);
+			return Replay.create(setup, all.get(0), all.subList(1, all.size()), moves);
+		}
+
+		private int player(int player) {
+			Objects.checkIndex(player, players);
+			return at + 2 + player * GameCodec.PLAYER_BYTES;
+		}
+	}
+
+	/**
+	 * A view of one move of a game in the archive
+	 */
+	public static final class Ply {
+
+		private Game game;
+		private int ply;
+		private int move;
+		private int round;
+
+		private Ply() {}
+
+		/**
+		 * @return the game the move was made in, a reused view
+		 */
+		@Nonnull public Game game() { return game; }
+
+		/**
+		 * @return the move's position in its game
+		 */
+		public int ply() { return ply; }
+
+		/**
+		 * @return the encoded move, see {@link IntMove}
+		 */
+		public int move() { return move; }
+
+		/**
+		 * @return the number of entries in MrX's travel log before the move
+		 */
+		public int round() { return round; }
+
+		public boolean isMrX() { return IntMove.pieceCode(move) == 0; }
+
+		public boolean isDouble() { return IntMove.isDouble(move); }
+
+		/**
+		 * @return the ticket used, the first ticket of a double move
+		 */
+		@Nonnull public Ticket ticket() { return IntMove.ticket1(move); }
+	}
+
+	private final class GameSpliterator implements Spliterator<Game> {
+
+		private final Game game = new Game();
+		private int next;
+		private final int end;
+
+		GameSpliterator(int next, int end) {
+			this.next = next;
+			this.end = end;
+		}
+
+		@Override public boolean tryAdvance(Consumer<? super Game> action) {
+			if (next >= end) return false;
+			game.moveTo(next++);
+			action.accept(game);
+			return true;
+		}
+
+		@Override public void forEachRemaining(Consumer<? super Game> action) {
+			while (next < end) {
+				game.moveTo(next++);
+				action.accept(game);
+			}
+		}
+
+		@Override public Spliterator<Game> trySplit() {
+			int middle = (next + end) >>> 1;
+			if (middle <= next) return null;
+			var prefix = new GameSpliterator(next, middle);
+			next = middle;
+			return prefix;
+		}
+
+		@Override public long estimateSize() { return end - next; }
+
+		@Override public int characteristics() {
+			return ORDERED | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+		}
+	}
+
+	private final class PlySpliterator implements Spliterator<Ply> {
+
+		private final Game game = new Game();
+		private final Ply ply = new Ply();
+		private int next;
+		private final int end;
+		// the ply to visit next in the current game, -1 before it is started
+		private int at = -1;
+
+		PlySpliterator(int next, int end) {
+			this.next = next;
+			this.end = end;
+			ply.game = game;
+		}
+
+		@Override public boolean tryAdvance(Consumer<? super Ply> action) {
+			while (true) {
+				if (at >= 0 && at < game.plies) {
+					visit(action);
+					return true;
+				}
+				if (next >= end) return false;
+				game.moveTo(next++);
+				at = 0;
+				ply.round = 0;
+			}
+		}
+
+		private void visit(Consumer<? super Ply> action) {
+			int move = game.buffer.getInt(game.movesAt + at * Integer.BYTES);
+			ply.ply = at++;
+			ply.move = move;
+			action.accept(ply);
+			if (IntMove.pieceCode(move) == 0) ply.round += IntMove.isDouble(move) ? 2 : 1;
+		}
+
+		@Override public void forEachRemaining(Consumer<? super Ply> action) {
+			while (tryAdvance(action)) {
+				while (at < game.plies) visit(action);
+			}
+		}
+
+		@Override public Spliterator<Ply> trySplit() {
+			int middle = (next + end) >>> 1;
+			if (middle <= next) return null;
+			var prefix = new PlySpliterator(next, middle);
+			if (at >= 0 && at < game.plies) {
+				// the rest of the game in progress comes first, so it goes with the prefix
+				prefix.game.moveTo(game.index);
+				prefix.at = at;
+				prefix.ply.round = ply.round;
+				at = -1;
+			}
+			next = middle;
+			return prefix;
+		}
+
+		@Override public long estimateSize() { return end - next; }
+
+		@Override public int characteristics() { return ORDERED | NONNULL | IMMUTABLE; }
+	}
+
+	/**
+	 * Appends games to a new archive; instances are not thread safe
+	 */
+	public static final class Writer implements Closeable {
+
+		private final FileChannel channel;
+		private final GameSetup setup;
+		private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+		private long[] offsets = new long[1024];
+		private int size;
+		private long position = HEADER_BYTES;
+
+		private Writer(FileChannel channel, GameSetup setup) throws IOException {
+			this.channel = channel;
+			this.setup = Objects.requireNonNull(setup);
+			var header = ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).putInt(VERSION);
+			GameCodec.putSetup(header, setup);
+			header.putInt(0).putLong(0).flip();
+			while (header.hasRemaining()) channel.write(header);
+		}
+
+		/**
+		 * @param replay a game of the archive's setup
+		 * @param winner the winner of the game, empty if it was not finished
+		 * @throws IllegalArgumentException if the game has another setup
+		 */
+		public void write(@Nonnull Replay replay, @Nonnull ImmutableSet<Piece> winner) throws IOException {
+			if (!replay.setup().equals(setup)) throw new IllegalArgumentException("Replay has another setup");
+			int bytes = 1 + ReplayWriter.gameBytes(replay.detectives().size() + 1, replay.plies());
+			if (bytes > buffer.remaining()) flush();
+			ByteBuffer out = bytes > buffer.capacity() ? ByteBuffer.allocate(bytes) : buffer;
+			int mark = out.position();
+			try {
+				out.put((byte) (winner.isEmpty() ? UNFINISHED
+						: winner.iterator().next().isMrX() ? MRX_WON : DETECTIVES_WON));
+				GameCodec.putPlayers(out, replay.mrX(), replay.detectives());
+				out.putShort((short) replay.plies());
+				for (int i = 0; i < replay.plies(); i++) out.putInt(replay.move(i));
+			} catch (RuntimeException e) {
+				// drop the partly encoded game so the next one starts where this one would have
+				out.position(mark);
+				throw e;
+			}
+			if (out != buffer) write(out.flip());
+			if (size + 1 == offsets.length) offsets = Arrays.copyOf(offsets, offsets.length * 2);
+			offsets[size++] = position;
+			position += bytes;
+		}
+
+		private void flush() throws IOException { write(buffer.flip()); buffer.clear(); }
+
+		private void write(ByteBuffer bytes) throws IOException {
+			while (bytes.hasRemaining()) channel.write(bytes);
+		}
+
+		/**
+		 * Writes the offset table and header, finishing the archive
+		 */
+		@Override public void close() throws IOException {
+			try {
+				flush();
+				offsets[size] = position;
+				var table = ByteBuffer.allocate((size + 1) * Long.BYTES);
+				table.asLongBuffer().put(offsets, 0, size + 1);
+				write(table);
+				channel.force(false);
+				var header = ByteBuffer.allocate(Integer.BYTES + Long.BYTES).putInt(size).putLong(position).flip();
+				while (header.hasRemaining()) channel.write(header, HEADER_BYTES - header.remaining());
+				channel.force(true);
+			} finally {
+				channel.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package uk.ac.bris.cs.scotlandyard.record;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.GraphIndex;
+import uk.ac.bris.cs.scotlandyard.model.IntMove;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+/**
+ * The binary encodings shared by the record formats, all big endian.
+ * <br>
+ * A setup is the {@link GraphIndex#contentHash()} of its graph, the number of rounds as a byte
+ * and a long with bit {@code i} set if round {@code i + 1} reveals MrX; the graph itself is never
+ * stored. A player is its index in {@link ScotlandYard#ALL_PIECES}, its location and one count
+ * per {@link Ticket}, a byte each. Moves are {@link IntMove}s.
+ */
+final class GameCodec {
+
+	static final int MAX_ROUNDS = Long.SIZE;
+	static final int SETUP_BYTES = Long.BYTES + 1 + Long.BYTES;
+	static final int PLAYER_BYTES = 2 + Ticket.values().length;
+
+	private static final Ticket[] TICKETS = Ticket.values();
+	private static final ImmutableList<Piece> PIECES = ScotlandYard.ALL_PIECES.asList();
+
+	private GameCodec() {}
+
+	static long graphHash(@Nonnull ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph) {
+		return GraphIndex.of(graph).contentHash();
+	}
+
+	/**
+	 * @throws IllegalArgumentException if the setup has more than {@link #MAX_ROUNDS} rounds
+	 */
+	static void putSetup(@Nonnull ByteBuffer out, @Nonnull GameSetup setup) {
+		if (setup.moves.size() > MAX_ROUNDS)
+			throw new IllegalArgumentException("At most " + MAX_ROUNDS + " rounds can be recorded");
+		long reveals = 0;
+		for (int i = 0; i < setup.moves.size(); i++) if (setup.moves.get(i)) reveals |= 1L << i;
+		out.putLong(graphHash(setup.graph)).put((byte) setup.moves.size()).putLong(reveals);
+	}
+
+	/**
+	 * @param graph the graph the setup was recorded with
+	 * @throws IOException if the setup was recorded with another graph
+	 */
+	@Nonnull static GameSetup getSetup(@Nonnull ByteBuffer in,
+	                                   @Nonnull ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph)
+			throws IOException {
+		long hash = in.getLong();
+		if (hash != graphHash(graph)) throw new IOException("Recorded with another graph");
+		return new GameSetup(graph, getRounds(in));
+	}
+
+	@Nonnull static ImmutableList<Boolean> getRounds(@Nonnull ByteBuffer in) throws IOException {
+		int rounds = in.get() & 0xFF;
+		long reveals = in.getLong();
+		if (rounds > MAX_ROUNDS) throw new IOException("Bad round count " + rounds);
+		var moves = ImmutableList.<Boolean>builder();
+		for (int i = 0; i < rounds; i++) moves.add((reveals & 1L << i) != 0);
+		return moves.build();
+	}
+
+	/**
+	 * @throws IllegalArgumentException if a location or ticket count does not fit in a byte
+	 */
+	static void putPlayer(@Nonnull ByteBuffer out, @Nonnull Player player) {
+		out.put((byte) IntMove.pieceCode(player.piece())).put(unsigned(player.location()));
+		for (Ticket ticket : TICKETS) out.put(unsigned(player.tickets().getOrDefault(ticket, 0)));
+	}
+
+	@Nonnull static Player getPlayer(@Nonnull ByteBuffer in) throws IOException {
+		int code = in.get() & 0xFF;
+		if (code >= PIECES.size()) throw new IOException("Bad piece " + code);
+		int location = in.get() & 0xFF;
+		var tickets = ImmutableMap.<Ticket, Integer>builder();
+		for (Ticket ticket : TICKETS) tickets.put(ticket, in.get() & 0xFF);
+		return new Player(PIECES.get(code), tickets.build(), location);
+	}
+
+	/**
+	 * Puts MrX and then the detectives, after their count
+	 */
+	static void putPlayers(@Nonnull ByteBuffer out, @Nonnull Player mrX, @Nonnull ImmutableList<Player> detectives) {
+		out.put((byte) (detectives.size() + 1));
+		putPlayer(out, mrX);
+		for (Player detective : detectives) putPlayer(out, detective);
+	}
+
+	/**
+	 * @return MrX and then the detectives
+	 */
+	@Nonnull static ImmutableList<Player> getPlayers(@Nonnull ByteBuffer in) throws IOException {
+		int count = in.get() & 0xFF;
+		if (count < 1 || count > PIECES.size()) throw new IOException("Bad player count " + count);
+		var players = ImmutableList.<Player>builder();
+		for (int i = 0; i < count; i++) players.add(getPlayer(in));
+		return players.build();
+	}
+
+	static int playersBytes(int players) { return 1 + players * PLAYER_BYTES; }
+
+	private static byte unsigned(int value) {
+		if (value < 0 || value > 0xFF) throw new IllegalArgumentException("Value out of range: " + value);
+		return (byte) value;
+	}
+}
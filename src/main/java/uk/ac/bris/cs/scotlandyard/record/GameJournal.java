@@ -0,0 +1,215 @@
+package uk.ac.bris.cs.scotlandyard.record;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.zip.CRC32C;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.IntMove;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+/**
+ * An append-only file of one game's moves.
+ * <br>
+ * The file starts with a header of the magic number, version, {@link GameCodec} setup and
+ * players and a CRC32C of all of those. Every move is then a record of its {@link IntMove} and a
+ * CRC32C of its ply and move, so a record that was torn by a crash, or moved, fails its check.
+ * Opening a journal keeps the moves up to the first bad record and cuts the file there.
+ * <br>
+ * Moves are written to the file as they are appended, which is enough to survive the process
+ * dying, but only forced to the disk every {@code syncEvery} moves and on {@link #sync()} or
+ * {@link #close()}, so that a power cut loses at most that many moves without every move waiting
+ * for the disk. Instances are not thread safe.
+ */
+public final class GameJournal implements Closeable {
+
+	private static final int MAGIC = 0x53594A4C;
+	private static final int VERSION = 1;
+	private static final int RECORD_BYTES = 2 * Integer.BYTES;
+
+	private final FileChannel channel;
+	private final GameSetup setup;
+	private final ImmutableList<Player> players;
+	private final int syncEvery;
+	private final ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES);
+	private final CRC32C crc = new CRC32C();
+	private int[] moves;
+	private int size;
+	private int unsynced;
+
+	private GameJournal(FileChannel channel, GameSetup setup, ImmutableList<Player> players,
+	                    int[] moves, int size, int syncEvery) {
+		this.channel = channel;
+		this.setup = setup;
+		this.players = players;
+		this.moves = moves;
+		this.size = size;
+		this.syncEvery = syncEvery;
+	}
+
+	private static int checkSyncEvery(int syncEvery) {
+		if (syncEvery < 1) throw new IllegalArgumentException("Must sync at least every move");
+		return syncEvery;
+	}
+
+	/**
+	 * Starts a journal for a new game, replacing the file if it exists
+	 *
+	 * @param file the journal file
+	 * @param setup the game setup
+	 * @param mrX MrX at the start
+	 * @param detectives the detectives at the start
+	 * @param syncEvery how many moves may be appended before they are forced to the disk
+	 * @return the empty journal
+	 */
+	@Nonnull public static GameJournal create(@Nonnull Path file, @Nonnull GameSetup setup,
+	                                          @Nonnull Player mrX, @Nonnull ImmutableList<Player> detectives,
+	                                          int syncEvery) throws IOException {
+		checkSyncEvery(syncEvery);
+		var header = ByteBuffer.allocate(2 * Integer.BYTES + GameCodec.SETUP_BYTES
+				+ GameCodec.playersBytes(detectives.size() + 1) + Integer.BYTES);
+		header.putInt(MAGIC).putInt(VERSION);
+		GameCodec.putSetup(header, setup);
+		GameCodec.putPlayers(header, mrX, detectives);
+		var crc = new CRC32C();
+		crc.update(header.array(), 0, header.position());
+		header.putInt((int) crc.getValue()).flip();
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.READ, StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			while (header.hasRemaining()) channel.write(header);
+			channel.force(true);
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+		var players = ImmutableList.<Player>builder().add(mrX).addAll(detectives).build();
+		return new GameJournal(channel, setup, players, new int[64], 0, syncEvery);
+	}
+
+	/**
+	 * Opens a journal to carry on appending to it, cutting off a torn or corrupt tail
+	 *
+	 * @param file the journal file
+	 * @param graph the graph the game is played on
+	 * @param syncEvery how many moves may be appended before they are forced to the disk
+	 * @return the journal with the moves that were intact
+	 * @throws IOException if the file cannot be read, its header is corrupt or it was written
+	 * for another graph
+	 */
+	@Nonnull public static GameJournal open(@Nonnull Path file,
+	                                        @Nonnull ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph,
+	                                        int syncEvery) throws IOException {
+		checkSyncEvery(syncEvery);
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			long length = channel.size();
+			if (length > Integer.MAX_VALUE) throw new IOException("Journal too large: " + file);
+			var buffer = ByteBuffer.allocate((int) length);
+			while (buffer.hasRemaining() && channel.read(buffer) >= 0) ;
+			buffer.flip();
+			GameSetup setup;
+			ImmutableList<Player> players;
+			try {
+				if (buffer.getInt() != MAGIC) throw new IOException("Not a game journal: " + file);
+				int version = buffer.getInt();
+				if (version != VERSION) throw new IOException("Unsupported journal version " + version);
+				setup = GameCodec.getSetup(buffer, graph);
+				players = GameCodec.getPlayers(buffer);
+				var crc = new CRC32C();
+				crc.update(buffer.array(), 0, buffer.position());
+				if (buffer.getInt() != (int) crc.getValue()) throw new IOException("Corrupt journal header: " + file);
+			} catch (BufferUnderflowException e) {
+				throw new IOException("Truncated journal header: " + file, e);
+			}
+			int start = buffer.position();
+			int[] moves = new int[Math.max(64, (buffer.remaining() / RECORD_BYTES) + 1)];
+			int size = 0;
+			var crc = new CRC32C();
+			while (buffer.remaining() >= RECORD_BYTES) {
+				int move = buffer.getInt();
+				if (buffer.getInt() != checksum(crc, size, move)) break;
+				moves[size++] = move;
+			}
+			long end = start + (long) size * RECORD_BYTES;
+			if (end < length) {
+				channel.truncate(end);
+				channel.force(true);
+			}
+			channel.position(end);
+			return new GameJournal(channel, setup, players, moves, size, syncEvery);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	private static int checksum(CRC32C crc, int ply, int move) {
+		crc.reset();
+		var bytes = ByteBuffer.allocate(RECORD_BYTES).putInt(ply).putInt(move);
+		crc.update(bytes.array());
+		return (int) crc.getValue();
+	}
+
+	@Nonnull public GameSetup setup() { return setup; }
+
+	/**
+	 * @return MrX and then the detectives, as the game started
+	 */
+	@Nonnull public ImmutableList<Player> players() { return players; }
+
+	/**
+	 * @return the number of moves in the journal
+	 */
+	public int size() { return size; }
+
+	/**
+	 * @return the encoded moves in the order they were made
+	 */
+	@Nonnull public int[] moves() { return Arrays.copyOf(moves, size); }
+
+	/**
+	 * Writes the move to the file, forcing it to the disk if {@code syncEvery} moves are waiting
+	 */
+	public void append(@Nonnull Move move) throws IOException {
+		int encoded = IntMove.encode(Objects.requireNonNull(move));
+		record.clear();
+		record.putInt(encoded).putInt(checksum(crc, size, encoded)).flip();
+		while (record.hasRemaining()) channel.write(record);
+		if (size == moves.length) moves = Arrays.copyOf(moves, size * 2);
+		moves[size++] = encoded;
+		if (++unsynced >= syncEvery) sync();
+	}
+
+	/**
+	 * Forces every appended move to the disk
+	 */
+	public void sync() throws IOException {
+		if (unsynced == 0) return;
+		channel.force(false);
+		unsynced = 0;
+	}
+
+	@Override public void close() throws IOException {
+		try {
+			if (channel.isOpen()) sync();
+		} finally {
+			channel.close();
+		}
+	}
+}
@@ -0,0 +1,293 @@
+package uk.ac.bris.cs.scotlandyard.record;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.IntMove;
+import uk.ac.bris.cs.scotlandyard.model.LogEntry;
+import uk.ac.bris.cs.scotlandyard.model.MyGameStateFactory;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+/**
+ * A recorded game with checkpoints, so that any ply can be rebuilt without replaying the game
+ * from the start.
+ * <br>
+ * A checkpoint is every player's location and tickets at the start of a round, taken every
+ * {@code interval} rounds. {@link #state(int)} resumes the game from the last checkpoint at or
+ * before the ply with {@link MyGameStateFactory#resume} and makes the moves after it, so it
+ * costs one checkpoint decode and fewer than {@code interval} rounds of
+ * {@link Board.GameState#advance}. MrX's travel log is rebuilt from his moves rather than
+ * stored.
+ * <br>
+ * The encoding is the magic number, version, {@link GameCodec} setup, number of moves and of
+ * checkpoints as unsigned shorts, the ply of each checkpoint as an unsigned short, the moves as
+ * {@link IntMove}s and finally the checkpoints as {@link GameCodec} players, all the same size.
+ * Reads never move the buffer, so instances are safe to share between threads.
+ */
+public final class IndexedReplay {
+
+	/**
+	 * The rounds between checkpoints used by {@link #of(Replay)}
+	 */
+	public static final int DEFAULT_INTERVAL = 2;
+
+	static final int MAGIC = 0x53594958;
+	static final int VERSION = 1;
+
+	private static final MyGameStateFactory FACTORY = new MyGameStateFactory();
+
+	private final GameSetup setup;
+	private final ByteBuffer data;
+	private final int plies;
+	private final int[] checkpoints;
+	private final int movesAt;
+	private final int checkpointsAt;
+	private final int checkpointBytes;
+
+	private IndexedReplay(GameSetup setup, ByteBuffer data, int plies, int[] checkpoints,
+	                      int movesAt, int checkpointsAt, int checkpointBytes) {
+		this.setup = setup;
+		this.data = data;
+		this.plies = plies;
+		this.checkpoints = checkpoints;
+		this.movesAt = movesAt;
+		this.checkpointsAt = checkpointsAt;
+		this.checkpointBytes = checkpointBytes;
+	}
+
+	/**
+	 * @see #of(Replay, int)
+	 */
+	@Nonnull public static IndexedReplay of(@Nonnull Replay replay) { return of(replay, DEFAULT_INTERVAL); }
+
+	/**
+	 * @param replay the game
+	 * @param interval the rounds between checkpoints, at least 1
+	 * @return the indexed game
+	 */
+	@Nonnull public static IndexedReplay of(@Nonnull Replay replay, int interval) {
+		if (interval < 1) throw new IllegalArgumentException("Interval must be at least 1");
+		Player mrX = replay.mrX();
+		Player[] detectives = replay.detectives().toArray(new Player[0]);
+		List<Integer> plies = new ArrayList<>();
+		List<Player[]> players = new ArrayList<>();
+		int rounds = 0;
+		for (int ply = 0; ply <= replay.plies(); ply++) {
+			int move = ply < replay.plies() ? replay.move(ply) : IntMove.NONE;
+			boolean mrXTurn = move != IntMove.NONE && IntMove.piece(move).isMrX();
+			if (ply == 0 || mrXTurn && rounds % interval == 0) {
+				plies.add(ply);
+				Player[] checkpoint = new Player[detectives.length + 1];
+				checkpoint[0] = mrX;
+				System.arraycopy(detectives, 0, checkpoint, 1, detectives.length);
+				players.add(checkpoint);
+			}
+			if (move == IntMove.NONE) break;
+			if (mrXTurn) {
+				rounds++;
+				mrX = mrX.at(IntMove.destination(move)).use(IntMove.ticket1(move));
+				if (IntMove.isDouble(move)) mrX = mrX.use(IntMove.ticket2(move)).use(Ticket.DOUBLE);
+			} else {
+				for (int i = 0; i < detectives.length; i++) {
+					if (detectives[i].piece() != IntMove.piece(move)) continue;
+					detectives[i] = detectives[i].at(IntMove.destination(move)).use(IntMove.ticket1(move));
+				}
+				mrX = mrX.give(IntMove.ticket1(move));
+			}
+		}
+
+		int checkpointBytes = GameCodec.playersBytes(detectives.length + 1);
+		var data = ByteBuffer.allocate(2 * Integer.BYTES + GameCodec.SETUP_BYTES + 2 * Short.BYTES
+				+ plies.size() * Short.BYTES + replay.plies() * Integer.BYTES + plies.size() * checkpointBytes);
+		data.putInt(MAGIC).putInt(VERSION);
+		GameCodec.putSetup(data, replay.setup());
+		data.putShort((short) replay.plies()).putShort((short) plies.size());
+		for (int ply : plies) data.putShort((short) ply);
+		for (int ply = 0; ply < replay.plies(); ply++) data.putInt(replay.move(ply));
+		for (Player[] checkpoint : players) {
+			GameCodec.putPlayers(data, checkpoint[0], ImmutableList.copyOf(checkpoint).subList(1, checkpoint.length));
+		}
+		data.flip();
+		try {
+			return parse(data, replay.setup().graph, replay.setup());
+		} catch (IOException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	/**
+	 * @param data an encoded game, from its position to its limit; not copied, so it must not
+	 * change
+	 * @param graph the graph the game was played on
+	 * @return the game
+	 * @throws IOException if the data is not an indexed game or was written for another graph
+	 */
+	@Nonnull public static IndexedReplay read(@Nonnull ByteBuffer data,
+	                                          @Nonnull ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph)
+			throws IOException {
+		return parse(data.slice(), graph, null);
+	}
+
+	/**
+	 * Maps a game file into memory; the file may be closed or moved once this returns
+	 *
+	 * @param file the file written by {@link #write(OutputStream)}
+	 * @param graph the graph the game was played on
+	 * @return the game
+	 * @throws IOException if the file cannot be read, is not an indexed game or was written for
+	 * another graph
+	 */
+	@Nonnull public static IndexedReplay open(@Nonnull Path file,
+	                                          @Nonnull ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph)
+			throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), graph);
+		}
+	}
+
+	// setup is null when it has to be read and checked
+	private static IndexedReplay parse(ByteBuffer data,
+	                                   ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph,
+	                                   GameSetup setup) throws IOException {
+		var in = data.duplicate();
+		try {
+			if (in.getInt() != MAGIC) throw new IOException("Not an indexed replay");
+			int version = in.getInt();
+			if (version != VERSION) throw new IOException("Unsupported indexed replay version " + version);
+			if (setup == null) setup = GameCodec.getSetup(in, graph);
+			else in.position(in.position() + GameCodec.SETUP_BYTES);
+			int plies = in.getShort() & 0xFFFF;
+			int count = in.getShort() & 0xFFFF;
+			int[] checkpoints = new int[count];
+			for (int i = 0; i < count; i++) {
+				checkpoints[i] = in.getShort() & 0xFFFF;
+				if (i == 0 ? checkpoints[i] != 0 : checkpoints[i] <= checkpoints[i - 1] || checkpoints[i] >= plies)
+					throw new IOException("Corrupt checkpoint index");
+			}
+			if (count == 0) throw new IOException("Corrupt checkpoint index");
+			int movesAt = in.position();
+			int checkpointsAt = movesAt + plies * Integer.BYTES;
+			in.position(checkpointsAt);
+			int players = GameCodec.getPlayers(in).size();
+			int checkpointBytes = GameCodec.playersBytes(players);
+			for (int i = 1; i < count; i++) {
+				if (GameCodec.getPlayers(in).size() != players) throw new IOException("Corrupt checkpoint");
+			}
+			if (in.hasRemaining()) throw new IOException("Trailing bytes after indexed replay");
+			return new IndexedReplay(setup, data, plies, checkpoints, movesAt, checkpointsAt, checkpointBytes);
+		} catch (BufferUnderflowException | IllegalArgumentException e) {
+			throw new IOException("Truncated indexed replay", e);
+		}
+	}
+
+	/**
+	 * @param out where to write the game, left open
+	 */
+	public void write(@Nonnull OutputStream out) throws IOException {
+		WritableByteChannel channel = Channels.newChannel(out);
+		var bytes = data.duplicate();
+		while (bytes.hasRemaining()) channel.write(bytes);
+		out.flush();
+	}
+
+	@Nonnull public GameSetup setup() { return setup; }
+
+	/**
+	 * @return the number of moves made
+	 */
+	public int plies() { return plies; }
+
+	/**
+	 * @param ply between 0 and {@link #plies()}, exclusive
+	 * @return the encoded move made at the ply
+	 */
+	public int move(int ply) {
+		Objects.checkIndex(ply, plies);
+		return data.getInt(movesAt + ply * Integer.BYTES);
+	}
+
+	/**
+	 * @return the game without its checkpoints
+	 */
+	@Nonnull public Replay replay() {
+		var players = checkpoint(0);
+		int[] moves = new int[plies];
+		for (int ply = 0; ply < plies; ply++) moves[ply] = data.getInt(movesAt + ply * Integer.BYTES);
+		return Replay.create(setup, players.get(0), players.subList(1, players.size()), moves);
+	}
+
+	/**
+	 * @param ply between 0 and {@link #plies()}, inclusive
+	 * @return the state after the first {@code ply} moves
+	 */
+	@Nonnull public Board.GameState state(int ply) {
+		Objects.checkIndex(ply, plies + 1);
+		int i = checkpointIndex(ply);
+		int start = checkpoints[i];
+		var players = checkpoint(i);
+		Board.GameState state = FACTORY.resume(setup, log(start), players.get(0), players.subList(1, players.size()));
+		for (int p = start; p < ply; p++) state = state.advance(IntMove.decode(move(p)));
+		return state;
+	}
+
+	/**
+	 * @return the ply of the checkpoint {@link #state(int)} starts from
+	 */
+	int checkpointBefore(int ply) { return checkpoints[checkpointIndex(ply)]; }
+
+	private int checkpointIndex(int ply) {
+		int i = Arrays.binarySearch(checkpoints, ply);
+		return i >= 0 ? i : -i - 2;
+	}
+
+	private ImmutableList<Player> checkpoint(int i) {
+		try {
+			return GameCodec.getPlayers(data.duplicate().position(checkpointsAt + i * checkpointBytes));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	// MrX's travel log after the first plies moves
+	private ImmutableList<LogEntry> log(int plies) {
+		var log = ImmutableList.<LogEntry>builder();
+		int size = 0;
+		for (int ply = 0; ply < plies; ply++) {
+			int move = move(ply);
+			if (!IntMove.piece(move).isMrX()) continue;
+			if (IntMove.isDouble(move)) {
+				log.add(entry(size++, IntMove.ticket1(move), IntMove.destination1(move)));
+				log.add(entry(size++, IntMove.ticket2(move), IntMove.destination2(move)));
+			} else {
+				log.add(entry(size++, IntMove.ticket1(move), IntMove.destination1(move)));
+			}
+		}
+		return log.build();
+	}
+
+	private LogEntry entry(int round, Ticket ticket, int location) {
+		return setup.moves.get(round) ? LogEntry.reveal(ticket, location) : LogEntry.hidden(ticket);
+	}
+}
@@ -0,0 +1,145 @@
+package uk.ac.bris.cs.scotlandyard.record;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.IntMove;
+import uk.ac.bris.cs.scotlandyard.model.Model;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Factory;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+/**
+ * A {@link Model} that writes every move it is given to a {@link GameJournal}, so that a game
+ * cut short by a crash can be carried on with {@link #recover}.
+ * <br>
+ * Moves are checked against the current board and appended before the model makes them, so
+ * illegal moves are never journaled and a move an observer makes while being told of the last
+ * one is journaled after it. The journal is forced to the disk when the game ends. Failures to
+ * write the journal are thrown from {@link #chooseMove(Move)}, before the move is made, and from
+ * {@link #close()} as {@link UncheckedIOException}s.
+ */
+public final class JournalingModel implements Model, Closeable {
+
+	private final Model model;
+	private final GameJournal journal;
+
+	private JournalingModel(Model model, GameJournal journal) {
+		this.model = model;
+		this.journal = journal;
+	}
+
+	/**
+	 * Starts a new game and its journal
+	 *
+	 * @param file the journal file, replaced if it exists
+	 * @param factory the factory for the model being journaled
+	 * @param setup the game setup
+	 * @param mrX MrX
+	 * @param detectives the detectives
+	 * @param syncEvery how many moves may be made before they are forced to the disk
+	 * @return the model
+	 */
+	@Nonnull public static JournalingModel create(@Nonnull Path file, @Nonnull Factory<Model> factory,
+	                                              @Nonnull GameSetup setup, @Nonnull Player mrX,
+	                                              @Nonnull ImmutableList<Player> detectives,
+	                                              int syncEvery) throws IOException {
+		Model model = factory.build(setup, mrX, detectives);
+		return new JournalingModel(model, GameJournal.create(file, setup, mrX, detectives, syncEvery));
+	}
+
+	/**
+	 * Rebuilds a game from its journal by making its moves again, before any observer is
+	 * registered, and carries on journaling to the same file. Moves lost to a torn tail are simply
+	 * not replayed.
+	 *
+	 * @param file the journal file
+	 * @param factory the factory for the model being journaled
+	 * @param graph the graph the game is played on
+	 * @param syncEvery how many moves may be made before they are forced to the disk
+	 * @return the model, at the last intact move
+	 * @throws IOException if the journal cannot be read, was written for another graph or holds a
+	 * move the model does not accept
+	 */
+	@Nonnull public static JournalingModel recover(@Nonnull Path file, @Nonnull Factory<Model> factory,
+	                                               @Nonnull ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph,
+	                                               int syncEvery) throws IOException {
+		GameJournal journal = GameJournal.open(file, graph, syncEvery);
+		try {
+			var players = journal.players();
+			Model model = factory.build(journal.setup(), players.get(0), players.subList(1, players.size()));
+			int[] moves = journal.moves();
+			for (int i = 0; i < moves.length; i++) {
+				try {
+					model.chooseMove(IntMove.decode(moves[i]));
+				} catch (IllegalArgumentException e) {
+					throw new IOException("Journaled move " + i + " is illegal: " + IntMove.toString(moves[i]), e);
+				}
+			}
+			return new JournalingModel(model, journal);
+		} catch (IOException | RuntimeException e) {
+			journal.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return the number of moves in the journal
+	 */
+	public int journaledMoves() { return journal.size(); }
+
+	@Nonnull @Override public Board getCurrentBoard() { return model.getCurrentBoard(); }
+
+	@Override public void registerObserver(@Nonnull Observer observer) { model.registerObserver(observer); }
+
+	@Override public void unregisterObserver(@Nonnull Observer observer) { model.unregisterObserver(observer); }
+
+	@Nonnull @Override public ImmutableSet<Observer> getObservers() { return model.getObservers(); }
+
+	@Override public void chooseMove(@Nonnull Move move) {
+		Objects.requireNonNull(move);
+		if (!model.getCurrentBoard().getAvailableMoves().contains(move))
+			throw new IllegalArgumentException("Illegal move: " + move);
+		try {
+			journal.append(move);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		// observers may make the next moves before this returns
+		model.chooseMove(move);
+		try {
+			if (!model.getCurrentBoard().getWinner().isEmpty()) journal.sync();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Closes the model, then forces the journal to the disk and closes it
+	 *
+	 * @throws UncheckedIOException if the journal cannot be written
+	 */
+	@Override public void close() {
+		try {
+			model.close();
+		} finally {
+			try {
+				journal.close();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+}
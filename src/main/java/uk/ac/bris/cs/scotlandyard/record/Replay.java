@@ -0,0 +1,111 @@
+package uk.ac.bris.cs.scotlandyard.record;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.IntMove;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Factory;
+
+/**
+ * A recorded game: its setup, the players as they started and every move made, as
+ * {@link IntMove}s. Any ply of the game can be rebuilt with {@link #state(Factory, int)}.
+ */
+public final class Replay {
+
+	/**
+	 * The most moves a replay can hold
+	 */
+	public static final int MAX_PLIES = 0xFFFF;
+
+	private final GameSetup setup;
+	private final Player mrX;
+	private final ImmutableList<Player> detectives;
+	private final int[] moves;
+
+	private Replay(GameSetup setup, Player mrX, ImmutableList<Player> detectives, int[] moves) {
+		this.setup = setup;
+		this.mrX = mrX;
+		this.detectives = detectives;
+		this.moves = moves;
+	}
+
+	/**
+	 * @param setup the game setup
+	 * @param mrX MrX at the start
+	 * @param detectives the detectives at the start
+	 * @param moves the encoded moves, in the order they were made; copied
+	 * @return the replay
+	 * @throws IllegalArgumentException if there are more than {@link #MAX_PLIES} moves
+	 */
+	@Nonnull public static Replay of(@Nonnull GameSetup setup, @Nonnull Player mrX,
+	                                 @Nonnull ImmutableList<Player> detectives, @Nonnull int[] moves) {
+		return create(setup, mrX, detectives, moves.clone());
+	}
+
+	/**
+	 * @see #of(GameSetup, Player, ImmutableList, int[])
+	 */
+	@Nonnull public static Replay of(@Nonnull GameSetup setup, @Nonnull Player mrX,
+	                                 @Nonnull ImmutableList<Player> detectives, @Nonnull Iterable<Move> moves) {
+		int[] encoded = new int[16];
+		int size = 0;
+		for (Move move : moves) {
+			if (size == encoded.length) encoded = Arrays.copyOf(encoded, size * 2);
+			encoded[size++] = IntMove.encode(move);
+		}
+		return create(setup, mrX, detectives, Arrays.copyOf(encoded, size));
+	}
+
+	// takes ownership of the moves
+	static Replay create(GameSetup setup, Player mrX, ImmutableList<Player> detectives, int[] moves) {
+		if (moves.length > MAX_PLIES) throw new IllegalArgumentException("At most " + MAX_PLIES + " moves");
+		return new Replay(Objects.requireNonNull(setup), Objects.requireNonNull(mrX),
+				Objects.requireNonNull(detectives), moves);
+	}
+
+	@Nonnull public GameSetup setup() { return setup; }
+
+	@Nonnull public Player mrX() { return mrX; }
+
+	@Nonnull public ImmutableList<Player> detectives() { return detectives; }
+
+	/**
+	 * @return the number of moves made
+	 */
+	public int plies() { return moves.length; }
+
+	/**
+	 * @param ply between 0 and {@link #plies()}, exclusive
+	 * @return the encoded move made at the ply
+	 */
+	public int move(int ply) {
+		Objects.checkIndex(ply, moves.length);
+		return moves[ply];
+	}
+
+	/**
+	 * @return the encoded moves, in the order they were made
+	 */
+	@Nonnull public int[] moves() { return moves.clone(); }
+
+	/**
+	 * @param factory the factory to start the game with
+	 * @param ply between 0 and {@link #plies()}, inclusive
+	 * @return the state after the first {@code ply} moves
+	 * @throws IllegalArgumentException if the factory does not accept one of the moves
+	 */
+	@Nonnull public Board.GameState state(@Nonnull Factory<Board.GameState> factory, int ply) {
+		Objects.checkIndex(ply, moves.length + 1);
+		Board.GameState state = factory.build(setup, mrX, detectives);
+		for (int i = 0; i < ply; i++) state = state.advance(IntMove.decode(moves[i]));
+		return state;
+	}
+}
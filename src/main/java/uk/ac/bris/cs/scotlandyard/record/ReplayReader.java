@@ -0,0 +1,105 @@
+package uk.ac.bris.cs.scotlandyard.record;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+/**
+ * Reads the {@link Replay}s written by a {@link ReplayWriter}, one at a time, through a large
+ * buffer, so that reading a stream costs little more than copying it. The setup is decoded once
+ * and shared by every replay. Instances are not thread safe.
+ */
+public final class ReplayReader implements Closeable {
+
+	private static final int BUFFER_BYTES = 1 << 20;
+
+	private final ReadableByteChannel in;
+	private final GameSetup setup;
+	private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES).flip();
+
+	/**
+	 * @param in the stream, closed with the reader
+	 * @param graph the graph the games were played on
+	 * @throws IOException if the stream cannot be read, is not a replay stream or was written
+	 * for another graph
+	 */
+	public ReplayReader(@Nonnull ReadableByteChannel in,
+	                    @Nonnull ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph) throws IOException {
+		this.in = Objects.requireNonNull(in);
+		if (!fill(ReplayWriter.HEADER_BYTES)) throw new IOException("Not a replay stream");
+		if (buffer.getInt() != ReplayWriter.MAGIC) throw new IOException("Not a replay stream");
+		int version = buffer.getInt();
+		if (version != ReplayWriter.VERSION) throw new IOException("Unsupported replay version " + version);
+		this.setup = GameCodec.getSetup(buffer, graph);
+	}
+
+	/**
+	 * @param file the file to read
+	 * @param graph the graph the games were played on
+	 * @return the reader
+	 */
+	@Nonnull public static ReplayReader open(@Nonnull Path file,
+	                                         @Nonnull ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph)
+			throws IOException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			return new ReplayReader(channel, graph);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return the setup of every game in the stream
+	 */
+	@Nonnull public GameSetup setup() { return setup; }
+
+	/**
+	 * @return the next game, null at the end of the stream
+	 * @throws IOException if the stream cannot be read or ends within a game
+	 */
+	@Nullable public Replay read() throws IOException {
+		if (!fill(1)) return null;
+		int players = buffer.get(buffer.position()) & 0xFF;
+		if (!fill(GameCodec.playersBytes(players) + Short.BYTES)) throw new IOException("Truncated replay");
+		ImmutableList<Player> starts = GameCodec.getPlayers(buffer);
+		int plies = buffer.getShort() & 0xFFFF;
+		if (!fill(plies * Integer.BYTES)) throw new IOException("Truncated replay");
+		int[] moves = new int[plies];
+		buffer.asIntBuffer().get(moves);
+		buffer.position(buffer.position() + plies * Integer.BYTES);
+		return Replay.create(setup, starts.get(0), starts.subList(1, starts.size()), moves);
+	}
+
+	// makes at least the given number of bytes remain, false if the stream ends first
+	private boolean fill(int bytes) throws IOException {
+		if (buffer.remaining() >= bytes) return true;
+		if (bytes > buffer.capacity()) {
+			buffer = ByteBuffer.allocate(Math.max(bytes, buffer.capacity() * 2)).put(buffer);
+		} else {
+			buffer.compact();
+		}
+		while (buffer.position() < bytes && in.read(buffer) >= 0) ;
+		buffer.flip();
+		return buffer.remaining() >= bytes;
+	}
+
+	@Override public void close() throws IOException { in.close(); }
+}
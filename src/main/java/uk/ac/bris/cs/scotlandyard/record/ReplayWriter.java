@@ -0,0 +1,83 @@
+package uk.ac.bris.cs.scotlandyard.record;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+
+/**
+ * Writes {@link Replay}s of one setup to a stream, to be read back by {@link ReplayReader}.
+ * <br>
+ * A stream is the magic number, version and the {@link GameCodec} setup, written once, followed
+ * by the games. A game is its {@link GameCodec} players, its number of moves as an unsigned short
+ * and the moves as {@link uk.ac.bris.cs.scotlandyard.model.IntMove}s, so a game of the standard
+ * setup with five detectives takes 45 bytes and four per move. Instances are not thread safe.
+ */
+public final class ReplayWriter implements Closeable {
+
+	static final int MAGIC = 0x53595250;
+	static final int VERSION = 1;
+	static final int HEADER_BYTES = 2 * Integer.BYTES + GameCodec.SETUP_BYTES;
+
+	private final OutputStream out;
+	private final GameSetup setup;
+	private ByteBuffer buffer = ByteBuffer.allocate(1024);
+
+	/**
+	 * @param out where to write, closed with the writer
+	 * @param setup the setup of every game written
+	 */
+	public ReplayWriter(@Nonnull OutputStream out, @Nonnull GameSetup setup) throws IOException {
+		this.out = new BufferedOutputStream(Objects.requireNonNull(out), 1 << 16);
+		this.setup = Objects.requireNonNull(setup);
+		var header = ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).putInt(VERSION);
+		GameCodec.putSetup(header, setup);
+		this.out.write(header.array());
+	}
+
+	/**
+	 * @param file the file to write, replaced if it exists
+	 * @param setup the setup of every game written
+	 * @return the writer
+	 */
+	@Nonnull public static ReplayWriter open(@Nonnull Path file, @Nonnull GameSetup setup) throws IOException {
+		OutputStream out = Files.newOutputStream(file);
+		try {
+			return new ReplayWriter(out, setup);
+		} catch (IOException | RuntimeException e) {
+			out.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @param replay a game of the writer's setup
+	 * @throws IllegalArgumentException if the game has another setup
+	 */
+	public void write(@Nonnull Replay replay) throws IOException {
+		if (!replay.setup().equals(setup)) throw new IllegalArgumentException("Replay has another setup");
+		int bytes = gameBytes(replay.detectives().size() + 1, replay.plies());
+		if (buffer.capacity() < bytes) buffer = ByteBuffer.allocate(Math.max(bytes, buffer.capacity() * 2));
+		buffer.clear();
+		GameCodec.putPlayers(buffer, replay.mrX(), replay.detectives());
+		buffer.putShort((short) replay.plies());
+		for (int i = 0; i < replay.plies(); i++) buffer.putInt(replay.move(i));
+		out.write(buffer.array(), 0, buffer.position());
+	}
+
+	static int gameBytes(int players, int plies) {
+		return GameCodec.playersBytes(players) + Short.BYTES + plies * Integer.BYTES;
+	}
+
+	public void flush() throws IOException { out.flush(); }
+
+	@Override public void close() throws IOException { out.close(); }
+}
@@ -20,6 +20,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import javax.annotation.Nonnull;
 
@@ -52,6 +53,7 @@ import uk.ac.bris.cs.scotlandyard.ResourceManager;
 import uk.ac.bris.cs.scotlandyard.ResourceManager.ImageResource;
 import uk.ac.bris.cs.scotlandyard.model.Ai;
 import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.Deadline;
 import uk.ac.bris.cs.scotlandyard.model.Model;
 import uk.ac.bris.cs.scotlandyard.model.Move;
 import uk.ac.bris.cs.scotlandyard.model.Move.DoubleMove;
@@ -188,6 +190,8 @@ class MapController implements Controller, GameControl {
 			detectiveAi = config.getDetectivesAi();
 			mrXAi.forEach(Ai::onStart);
 			detectiveAi.forEach(Ai::onStart);
+			// Ais that observe the model, e.g. to ponder, see every move made
+			observingAis().forEach(model::registerObserver);
 			return Executors.newCachedThreadPool(new ThreadFactoryBuilder()
 					.setNameFormat("ai-thread-%d")
 					.setUncaughtExceptionHandler((t, e) -> Utils.handleFatalException(new RuntimeException("An ai instance crashed on thread " + t.getName(), e)))
@@ -200,6 +204,7 @@ class MapController implements Controller, GameControl {
 		clearMoveHints();
 		lock();
 		runInContainment(() -> {
+			observingAis().forEach(model::unregisterObserver);
 			mrXAi.forEach(Ai::onTerminate);
 			detectiveAi.forEach(Ai::onTerminate);
 			aiExecutor.forEach(x -> runInContainment(x::shutdownNow));
@@ -207,6 +212,13 @@ class MapController implements Controller, GameControl {
 		});
 	}
 
+	private List<Model.Observer> observingAis() {
+		return Stream.concat(mrXAi.toStream(), detectiveAi.toStream())
+				.filter(Model.Observer.class::isInstance)
+				.map(Model.Observer.class::cast)
+				.collect(Collectors.toList());
+	}
+
 	private static <T> T runInContainment(Callable<T> r) {
 		try {
 			return r.call();
@@ -219,12 +231,14 @@ class MapController implements Controller, GameControl {
 	double maxLength() { return Math.max(root.getWidth(), root.getHeight()); }
 
 	Runnable requestAi(Model board, Ai ai) {
-		//var terminate = new AtomicBoolean(false);
 		var moves = board.getCurrentBoard().getAvailableMoves();
 		drawMoveHighlights(moves);
+		var timeoutPair = new Pair<>(config.timeoutProperty().get().getSeconds(), TimeUnit.SECONDS);
+		// cancelled by handleAITimeOut so the Ai stops searching when its turn is over
+		var deadline = Deadline.after(timeoutPair);
 		aiExecutor.forEach(x -> x.submit(() -> {
 			try {
-				final var move = ai.pickMove(board.getCurrentBoard(), new Pair<>(config.timeoutProperty().get().getSeconds(), TimeUnit.SECONDS));
+				final var move = ai.pickMove(board.getCurrentBoard(), timeoutPair, deadline);
 				if (!moves.contains(move)) {
 					Utils.handleFatalException(
 							new Exception("Ai(" + ai.name() + ") selected an invalid move, got: " + move + ", was expecting one of " + moves));
@@ -236,10 +250,11 @@ class MapController implements Controller, GameControl {
 						"threw an exception while picking a move", e));
 			}
 		}, aiExecutor));
-		return () -> handleAITimeOut(ai);
+		return () -> handleAITimeOut(ai, deadline);
 	}
 
-	private void handleAITimeOut(Ai ai) {
+	private void handleAITimeOut(Ai ai, Deadline deadline) {
+		deadline.cancel();
 		aiExecutor.forEach(x -> {
 			try {
 				x.awaitTermination(1l, TimeUnit.SECONDS);
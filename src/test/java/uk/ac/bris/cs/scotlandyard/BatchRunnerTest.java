@@ -0,0 +1,82 @@
+package uk.ac.bris.cs.scotlandyard;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+
+import io.atlassian.fugue.Pair;
+import uk.ac.bris.cs.scotlandyard.BatchRunner.Outcome;
+import uk.ac.bris.cs.scotlandyard.model.Ai;
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.MyGameStateFactory;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Plays a few quick games with {@link BatchRunner}
+ */
+public class BatchRunnerTest {
+
+	private static final class RandomAi implements Ai {
+		private final Random random = new Random(42);
+		@Nonnull @Override public String name() { return "random"; }
+		@Nonnull @Override public Move pickMove(@Nonnull Board board, Pair<Long, TimeUnit> timeoutPair) {
+			var moves = board.getAvailableMoves().stream()
+					.sorted(Comparator.comparing(Object::toString))
+					.collect(ImmutableList.toImmutableList());
+			return moves.get(random.nextInt(moves.size()));
+		}
+	}
+
+	private static final class SleepingAi implements Ai {
+		@Nonnull @Override public String name() { return "sleeping"; }
+		@Nonnull @Override public Move pickMove(@Nonnull Board board, Pair<Long, TimeUnit> timeoutPair) {
+			try {
+				Thread.sleep(timeoutPair.right().toMillis(timeoutPair.left()) * 10);
+			} catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+			return board.getAvailableMoves().iterator().next();
+		}
+	}
+
+	private static GameSetup setup() throws IOException {
+		return new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES);
+	}
+
+	@Test public void testPlaysAllGamesAndWritesCsv() throws IOException, InterruptedException {
+		var runner = new BatchRunner(RandomAi::new, RandomAi::new, new MyGameStateFactory(),
+				setup(), 5, Duration.ofSeconds(10), 2);
+		var results = runner.run(4, 7);
+		assertThat(results).hasSize(4);
+		for (int i = 0; i < results.size(); i++) {
+			assertThat(results.get(i).game).isEqualTo(i);
+			assertThat(results.get(i).seed).isEqualTo(7 + i);
+			assertThat(results.get(i).outcome).isIn(Outcome.MRX, Outcome.DETECTIVES);
+			assertThat(results.get(i).mrXMoves).isPositive();
+		}
+		var writer = new StringWriter();
+		BatchRunner.writeCsv(results, writer);
+		var lines = writer.toString().split("\n");
+		assertThat(lines).hasSize(5);
+		assertThat(lines[0]).isEqualTo(BatchRunner.CSV_HEADER);
+	}
+
+	@Test public void testSlowAiLosesOnTimeout() throws IOException, InterruptedException {
+		var runner = new BatchRunner(SleepingAi::new, RandomAi::new, new MyGameStateFactory(),
+				setup(), 2, Duration.ofMillis(50), 1);
+		var result = runner.run(1, 0).get(0);
+		assertThat(result.outcome).isEqualTo(Outcome.MRX_TIMEOUT);
+		assertThat(result.detectivesWon()).isTrue();
+	}
+}
@@ -0,0 +1,59 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import com.google.common.collect.ImmutableList;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+/**
+ * Games shared by the Ai tests
+ */
+final class AiFixtures {
+
+	private static GameSetup setup;
+
+	private AiFixtures() {}
+
+	/**
+	 * @return the standard 24 move game, read once for all tests
+	 */
+	static synchronized GameSetup setup() {
+		if (setup == null) {
+			try {
+				setup = new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+		return setup;
+	}
+
+	/**
+	 * @return all five detectives with default tickets on the start locations of seed 3
+	 */
+	static ImmutableList<Player> detectives() {
+		var locations = ScotlandYard.generateDetectiveLocations(3, 5);
+		var builder = ImmutableList.<Player>builder();
+		for (int i = 0; i < 5; i++) {
+			builder.add(new Player(ScotlandYard.DETECTIVES.asList().get(i),
+					ScotlandYard.defaultDetectiveTickets(), locations.get(i)));
+		}
+		return builder.build();
+	}
+
+	/**
+	 * @return a node one taxi ride from 36 other than 35, where a detective can catch MrX
+	 * moving from 35 to 36
+	 */
+	static int nextTo36() {
+		var graph = setup().graph;
+		return graph.adjacentNodes(36).stream()
+				.filter(n -> n != 35 && graph.edgeValue(n, 36).orElseThrow().contains(Transport.TAXI))
+				.findFirst().orElseThrow();
+	}
+}
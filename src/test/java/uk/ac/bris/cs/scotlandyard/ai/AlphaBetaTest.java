@@ -0,0 +1,111 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import io.atlassian.fugue.Pair;
+import uk.ac.bris.cs.scotlandyard.model.Deadline;
+import uk.ac.bris.cs.scotlandyard.model.DistanceOracle;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.IntMove;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.MyGameStateFactory;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.SearchState;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Checks that {@link AlphaBeta} finds forced wins, restores the state and stops at the deadline
+ */
+public class AlphaBetaTest {
+
+	private static final GameSetup setup = AiFixtures.setup();
+	private static final AlphaBeta.Evaluator evaluator = AlphaBeta.distanceEvaluator(DistanceOracle.of(setup.graph));
+
+	private static SearchState opening() {
+		return SearchState.of(setup, new Player(Piece.MrX.MRX, ScotlandYard.defaultMrXTickets(),
+				ScotlandYard.generateMrXLocation(3)), AiFixtures.detectives());
+	}
+
+	@Test public void testDetectiveTakesCapture() {
+		int red = AiFixtures.nextTo36();
+		var state = SearchState.of(setup,
+				new Player(Piece.MrX.MRX, ScotlandYard.defaultMrXTickets(), 35),
+				ImmutableList.of(new Player(Piece.Detective.RED, ScotlandYard.defaultDetectiveTickets(), red)));
+		state.makeMove(new Move.SingleMove(Piece.MrX.MRX, 35, Ticket.TAXI, 36));
+		var result = new AlphaBeta(evaluator).search(state, Deadline.never());
+		assertThat(IntMove.destination(result.move)).isEqualTo(36);
+		assertThat(result.score).isEqualTo(-AlphaBeta.WIN + 1);
+		// a proven win ends the deepening
+		assertThat(result.depth).isEqualTo(1);
+		assertThat(state.depth()).isEqualTo(1);
+	}
+
+	@Test public void testMovesFirstRemainingDetectiveAndRestoresState() {
+		var state = SearchState.of(setup, new Player(Piece.MrX.MRX, ScotlandYard.defaultMrXTickets(),
+				ScotlandYard.generateMrXLocation(3)), AiFixtures.detectives().subList(0, 2));
+		state.makeMove(state.getAvailableMoves().iterator().next());
+		long key = state.zobristKey();
+		var result = new AlphaBeta(evaluator, 3).search(state, Deadline.never());
+		assertThat(result.depth).isEqualTo(3);
+		assertThat(state.zobristKey()).isEqualTo(key);
+		assertThat(state.depth()).isEqualTo(1);
+		assertThat(state.getAvailableMoves()).contains(IntMove.decode(result.move));
+		assertThat(IntMove.piece(result.move)).isEqualTo(state.getPieces().get(1));
+	}
+
+	@Test public void testStopsAtDeadline() {
+		var state = opening();
+		long start = System.nanoTime();
+		var result = new AlphaBeta(evaluator).search(state, Deadline.after(100, TimeUnit.MILLISECONDS));
+		assertThat(System.nanoTime() - start).isLessThan(TimeUnit.MILLISECONDS.toNanos(300));
+		assertThat(state.depth()).isZero();
+		assertThat(state.getAvailableMoves()).contains(IntMove.decode(result.move));
+		// even a search that is cancelled from the start has a move to play
+		var cancelled = Deadline.never();
+		cancelled.cancel();
+		result = new AlphaBeta(evaluator).search(state, cancelled);
+		assertThat(state.getAvailableMoves()).contains(IntMove.decode(result.move));
+	}
+
+	@Test public void testAiPicksLegalMoveInTime() {
+		var board = new MyGameStateFactory().build(setup, new Player(Piece.MrX.MRX,
+				ScotlandYard.defaultMrXTickets(), ScotlandYard.generateMrXLocation(3)), AiFixtures.detectives());
+		var ai = new AlphaBetaDetectivesAi(new Random(0));
+		var timeout = new Pair<>(300L, TimeUnit.MILLISECONDS);
+		assertThatThrownBy(() -> ai.pickMove(board, timeout))
+				.isInstanceOf(IllegalArgumentException.class);
+		var state = board.advance(board.getAvailableMoves().iterator().next());
+		long start = System.nanoTime();
+		Move move = ai.pickMove(state, timeout);
+		assertThat(System.nanoTime() - start).isLessThan(TimeUnit.MILLISECONDS.toNanos(300));
+		assertThat(state.getAvailableMoves()).contains(move);
+	}
+
+	@Test public void testSharedTableSkipsSearchedPositions() {
+		var state = SearchState.of(setup, new Player(Piece.MrX.MRX, ScotlandYard.defaultMrXTickets(),
+				ScotlandYard.generateMrXLocation(3)), AiFixtures.detectives().subList(0, 2));
+		var table = new TranspositionTable(4);
+		var first = new AlphaBeta(evaluator, 3, table).search(state, Deadline.never());
+		var second = new AlphaBeta(evaluator, 3, table).search(state, Deadline.never());
+		assertThat(second.move).isEqualTo(first.move);
+		assertThat(second.score).isEqualTo(first.score);
+		assertThat(second.nodes).isLessThan(first.nodes);
+	}
+
+	@Test public void testRejectsBadDepth() {
+		assertThatThrownBy(() -> new AlphaBeta(evaluator, 0))
+				.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> new AlphaBeta(evaluator, TranspositionTable.MAX_DEPTH + 1))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+}
@@ -0,0 +1,110 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import io.atlassian.fugue.Pair;
+import uk.ac.bris.cs.scotlandyard.model.Deadline;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.IntMove;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.MyGameStateFactory;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+import uk.ac.bris.cs.scotlandyard.model.SearchState;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Checks that {@link InformationSetMcts} shares one tree between determinizations and that
+ * {@link InformationSetMctsAi} returns legal moves in time
+ */
+public class InformationSetMctsTest {
+
+	private static final GameSetup setup = AiFixtures.setup();
+
+	// red is next to 36 and MrX has just moved from 35 to the given node
+	private static SearchState afterMrX(int red, int destination) {
+		var state = SearchState.of(setup,
+				new Player(Piece.MrX.MRX, ScotlandYard.defaultMrXTickets(), 35),
+				ImmutableList.of(new Player(Piece.Detective.RED, ScotlandYard.defaultDetectiveTickets(), red)));
+		state.makeMove(new Move.SingleMove(Piece.MrX.MRX, 35, Ticket.TAXI, destination));
+		return state;
+	}
+
+	@Test public void testAggregatesAcrossDeterminizations() {
+		int red = AiFixtures.nextTo36();
+		int other = setup.graph.adjacentNodes(35).stream()
+				.filter(n -> n != 36 && n != red && setup.graph.edgeValue(35, n).orElseThrow().contains(Transport.TAXI))
+				.findFirst().orElseThrow();
+		var states = new SearchState[]{afterMrX(red, 36), afterMrX(red, other)};
+		var root = InformationSetMcts.newRoot();
+		long iterations = new InformationSetMcts().search(
+				random -> states[random.nextInt(states.length)], root, Deadline.never(), 3000, new Random(0));
+		assertThat(iterations).isEqualTo(3000);
+		assertThat(root.visits()).isEqualTo(3000);
+		int sum = 0;
+		for (int i = 0; i < root.childCount(); i++) sum += root.child(i).visits();
+		assertThat(sum).isEqualTo(3000);
+		for (SearchState state : states) assertThat(state.depth()).isEqualTo(1);
+		// capturing on 36 wins half of the samples outright
+		assertThat(IntMove.destination(root.mostVisited().move())).isEqualTo(36);
+	}
+
+	private static long bytes(InformationSetMcts.Node node) {
+		long bytes = Mcts.NODE_BYTES + (long) Integer.BYTES * node.children.length;
+		for (int i = 0; i < node.childCount(); i++) bytes += bytes(node.child(i));
+		return bytes;
+	}
+
+	@Test public void testTreeStaysWithinItsMemoryLimit() {
+		var board = new MyGameStateFactory().build(setup, new Player(Piece.MrX.MRX,
+				ScotlandYard.defaultMrXTickets(), ScotlandYard.generateMrXLocation(3)), AiFixtures.detectives());
+		var state = SearchState.of(board.advance(board.getAvailableMoves().iterator().next()),
+				ScotlandYard.generateMrXLocation(3));
+		var root = InformationSetMcts.newRoot();
+		var search = new InformationSetMcts(Mcts.DEFAULT_EXPLORATION, Mcts.RANDOM, 500);
+		long iterations = search.search(random -> state, root, Deadline.never(), 5000, new Random(0));
+		assertThat(iterations).isEqualTo(5000);
+		// the root is not added by the search
+		assertThat(bytes(root) - Mcts.NODE_BYTES).isEqualTo(search.bytes());
+		// the last expansion may overshoot by a node and the growth of its parent's children
+		assertThat(search.bytes()).isBetween(500L * Mcts.NODE_BYTES,
+				501L * Mcts.NODE_BYTES + Integer.BYTES * 512);
+	}
+
+	@Test public void testPicksLegalMovesInTime() {
+		var board = new MyGameStateFactory().build(setup, new Player(Piece.MrX.MRX,
+				ScotlandYard.defaultMrXTickets(), ScotlandYard.generateMrXLocation(3)), AiFixtures.detectives());
+		var ai = new InformationSetMctsAi(2, 2000, new Random(0));
+		try {
+			var timeout = new Pair<>(300L, TimeUnit.MILLISECONDS);
+			assertThatThrownBy(() -> ai.pickMove(board, timeout))
+					.isInstanceOf(IllegalArgumentException.class);
+			var state = board.advance(board.getAvailableMoves().iterator().next());
+			long start = System.nanoTime();
+			Move move = ai.pickMove(state, timeout);
+			assertThat(System.nanoTime() - start).isLessThan(TimeUnit.MILLISECONDS.toNanos(300));
+			assertThat(state.getAvailableMoves()).contains(move);
+		} finally {
+			ai.onTerminate();
+		}
+	}
+
+	@Test public void testRejectsBadArguments() {
+		assertThatThrownBy(() -> new InformationSetMctsAi(0, 1, new Random()))
+				.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> new InformationSetMctsAi(1, 0, new Random()))
+				.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> new InformationSetMcts(-1, Mcts.RANDOM, 1))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+}
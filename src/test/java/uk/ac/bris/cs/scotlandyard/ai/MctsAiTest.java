@@ -0,0 +1,202 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import io.atlassian.fugue.Pair;
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.Deadline;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.IntMove;
+import uk.ac.bris.cs.scotlandyard.model.Model.Observer.Event;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.MrXLocationTracker;
+import uk.ac.bris.cs.scotlandyard.model.MyGameStateFactory;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.SearchState;
+import uk.ac.bris.cs.scotlandyard.model.SearchState.Side;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Checks that {@link Mcts} finds obvious wins and that {@link MctsAi} returns legal moves in time
+ */
+public class MctsAiTest {
+
+	private static final GameSetup setup = AiFixtures.setup();
+
+	static final class TestAi extends MctsAi {
+		private final long iterations;
+		TestAi(Side side, long iterations) {
+			super(side, "test", new Random(1));
+			this.iterations = iterations;
+		}
+		TestAi(Side side) { this(side, 500); }
+		@Override protected long maxIterations() { return iterations; }
+	}
+
+	static final class PonderingAi extends MctsAi {
+		PonderingAi() { super(Side.MRX, "pondering", new Random(1)); }
+		@Override protected long maxIterations() { return 300; }
+		@Override protected boolean ponders() { return true; }
+	}
+
+	@Test public void testDetectiveTakesCapture() {
+		int red = AiFixtures.nextTo36();
+		var state = SearchState.of(setup,
+				new Player(Piece.MrX.MRX, ScotlandYard.defaultMrXTickets(), 35),
+				ImmutableList.of(new Player(Piece.Detective.RED, ScotlandYard.defaultDetectiveTickets(), red)));
+		state.makeMove(new Move.SingleMove(Piece.MrX.MRX, 35, Ticket.TAXI, 36));
+		var root = Mcts.newRoot();
+		long iterations = new Mcts().search(state, root, Deadline.never(), 2000, new Random(0));
+		assertThat(iterations).isEqualTo(2000);
+		assertThat(root.visits()).isEqualTo(2000);
+		assertThat(state.depth()).isEqualTo(1);
+		assertThat(IntMove.destination(root.mostVisited().move())).isEqualTo(36);
+	}
+
+	// the estimated bytes of a subtree, as Mcts counts them
+	private static long bytes(Mcts.Node node) {
+		long bytes = Mcts.NODE_BYTES;
+		if (node.children != null) bytes += (long) Integer.BYTES * node.children.length;
+		if (node.untried != null) bytes += (long) Integer.BYTES * node.untried.length;
+		// a node with every move expanded keeps no move list
+		if (node.untried != null && node.untriedCount == 0) assertThat(node.untried).isEmpty();
+		for (int i = 0; i < node.childCount(); i++) bytes += bytes(node.child(i));
+		return bytes;
+	}
+
+	@Test public void testTreeStaysWithinItsMemoryLimit() {
+		var state = SearchState.of(setup, new Player(Piece.MrX.MRX, ScotlandYard.defaultMrXTickets(),
+				ScotlandYard.generateMrXLocation(3)), AiFixtures.detectives());
+		int maxNodes = 2000;
+		var root = Mcts.newRoot();
+		new Mcts(Mcts.DEFAULT_EXPLORATION, Mcts.RANDOM, maxNodes).search(state, root, Deadline.never(), 20000, new Random(0));
+		// the last node may add one move list and one child array over the limit
+		assertThat(bytes(root) - Mcts.NODE_BYTES)
+				.isLessThanOrEqualTo((long) maxNodes * Mcts.NODE_BYTES + 2L * Integer.BYTES * 1000);
+		assertThat(root.visits()).isEqualTo(20000);
+	}
+
+	@Test public void testPicksLegalMovesForBothSides() {
+		var mrX = new Player(Piece.MrX.MRX, ScotlandYard.defaultMrXTickets(),
+				ScotlandYard.generateMrXLocation(3));
+		var state = new MyGameStateFactory().build(setup, mrX, AiFixtures.detectives());
+		var timeout = new Pair<>(5L, TimeUnit.SECONDS);
+		Move move = new TestAi(Side.MRX).pickMove(state, timeout);
+		assertThat(state.getAvailableMoves()).contains(move);
+		state = state.advance(move);
+		Move detective = new TestAi(Side.DETECTIVES).pickMove(state, timeout);
+		assertThat(state.getAvailableMoves()).contains(detective);
+		var board = state;
+		assertThatThrownBy(() -> new TestAi(Side.MRX).pickMove(board, timeout))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test public void testMrXCandidatesFollowEachGame() {
+		var ai = new TestAi(Side.DETECTIVES);
+		for (long seed = 0; seed < 3; seed++) {
+			var random = new Random(seed);
+			int mrXAt = ScotlandYard.generateMrXLocation((int) seed);
+			Board.GameState state = new MyGameStateFactory().build(setup,
+					new Player(Piece.MrX.MRX, ScotlandYard.defaultMrXTickets(), mrXAt), AiFixtures.detectives());
+			while (state.getWinner().isEmpty()) {
+				if (state.getAvailableMoves().iterator().next().commencedBy().isDetective()) {
+					var fresh = new MrXLocationTracker(setup, ScotlandYard.MRX_LOCATIONS);
+					fresh.update(state);
+					// the kept tracker also remembers where detectives stood earlier in the round
+					int[] candidates = ai.mrXCandidates(state);
+					assertThat(candidates).contains(mrXAt);
+					assertThat(fresh.toArray()).contains(candidates);
+				}
+				var moves = state.getAvailableMoves().asList();
+				Move move = moves.get(random.nextInt(moves.size()));
+				if (move.commencedBy().isMrX()) mrXAt = IntMove.destination(IntMove.encode(move));
+				state = state.advance(move);
+			}
+		}
+	}
+
+	@Test public void testStopsWhenCancelled() throws InterruptedException {
+		var state = new MyGameStateFactory().build(setup, new Player(Piece.MrX.MRX,
+				ScotlandYard.defaultMrXTickets(), ScotlandYard.generateMrXLocation(3)), AiFixtures.detectives());
+		var deadline = Deadline.never();
+		var canceller = new Thread(() -> {
+			try {
+				Thread.sleep(100);
+			} catch (InterruptedException ignored) {}
+			deadline.cancel();
+		});
+		canceller.start();
+		long start = System.nanoTime();
+		Move move = new MctsMrXAi().pickMove(state, new Pair<>(30L, TimeUnit.SECONDS), deadline);
+		assertThat(System.nanoTime() - start).isLessThan(TimeUnit.SECONDS.toNanos(5));
+		assertThat(state.getAvailableMoves()).contains(move);
+		canceller.join();
+	}
+
+	@Test public void testReusesTreeBetweenMoves() {
+		var mrX = new Player(Piece.MrX.MRX, ScotlandYard.defaultMrXTickets(),
+				ScotlandYard.generateMrXLocation(3));
+		var board = new MyGameStateFactory().build(setup, mrX, AiFixtures.detectives().subList(0, 1));
+		// enough iterations for the picked move's node to try every detective reply
+		var ai = new TestAi(Side.MRX, 5000);
+		var timeout = new Pair<>(5L, TimeUnit.SECONDS);
+		Move move = ai.pickMove(board, timeout);
+		assertThat(ai.reusedVisits()).isZero();
+		var afterMrX = board.advance(move);
+		int mrXAt = IntMove.destination(IntMove.encode(move));
+		Move detective = afterMrX.getAvailableMoves().stream()
+				.filter(m -> IntMove.destination(IntMove.encode(m)) != mrXAt)
+				.findFirst().orElseThrow();
+		var afterDetective = afterMrX.advance(detective);
+		Move next = ai.pickMove(afterDetective, timeout);
+		assertThat(ai.reusedVisits()).isPositive();
+		assertThat(afterDetective.getAvailableMoves()).contains(next);
+	}
+
+	@Test public void testPonderingReusesSubtree() throws InterruptedException {
+		var mrX = new Player(Piece.MrX.MRX, ScotlandYard.defaultMrXTickets(),
+				ScotlandYard.generateMrXLocation(3));
+		var board = new MyGameStateFactory().build(setup, mrX, AiFixtures.detectives().subList(0, 1));
+		var ai = new PonderingAi();
+		var timeout = new Pair<>(5L, TimeUnit.SECONDS);
+		try {
+			Move move = ai.pickMove(board, timeout);
+			assertThat(ai.reusedVisits()).isZero();
+			// an event for the position just searched may arrive late, it is ignored
+			ai.onModelChanged(board, Event.MOVE_MADE);
+			var afterMrX = board.advance(move);
+			ai.onModelChanged(afterMrX, Event.MOVE_MADE);
+			Thread.sleep(200);
+			int mrXAt = IntMove.destination(IntMove.encode(move));
+			Move detective = afterMrX.getAvailableMoves().stream()
+					.filter(m -> IntMove.destination(IntMove.encode(m)) != mrXAt)
+					.findFirst().orElseThrow();
+			var afterDetective = afterMrX.advance(detective);
+			ai.onModelChanged(afterDetective, Event.MOVE_MADE);
+			Move next = ai.pickMove(afterDetective, timeout);
+			assertThat(ai.reusedVisits()).isPositive();
+			assertThat(afterDetective.getAvailableMoves()).contains(next);
+		} finally {
+			ai.onTerminate();
+		}
+	}
+
+	@Test public void testRespectsTimeout() {
+		var state = new MyGameStateFactory().build(setup, new Player(Piece.MrX.MRX,
+				ScotlandYard.defaultMrXTickets(), ScotlandYard.generateMrXLocation(3)), AiFixtures.detectives());
+		long start = System.nanoTime();
+		Move move = new MctsMrXAi().pickMove(state, new Pair<>(300L, TimeUnit.MILLISECONDS));
+		assertThat(System.nanoTime() - start).isLessThan(TimeUnit.MILLISECONDS.toNanos(300));
+		assertThat(state.getAvailableMoves()).contains(move);
+	}
+}
@@ -0,0 +1,120 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+
+import io.atlassian.fugue.Pair;
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.Deadline;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.IntMove;
+import uk.ac.bris.cs.scotlandyard.model.MyGameStateFactory;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+import uk.ac.bris.cs.scotlandyard.model.SearchState;
+import uk.ac.bris.cs.scotlandyard.model.SearchState.Side;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Checks that {@link OpeningBookBuilder} covers every start and that {@link OpeningBook}s read
+ * back and answer only for starts
+ */
+public class OpeningBookTest {
+
+	private static GameSetup setup;
+	private static OpeningBook book;
+
+	@BeforeClass public static void setUp() throws IOException {
+		setup = new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES);
+		book = OpeningBookBuilder.build(setup, 1, 5, 4);
+	}
+
+	private static Player detective(Piece.Detective piece, int location) {
+		return new Player(piece, ScotlandYard.defaultDetectiveTickets(), location);
+	}
+
+	@Test public void testCoversEveryStart() {
+		assertThat(book.size()).isEqualTo(ScotlandYard.MRX_LOCATIONS.size()
+				* ScotlandYard.DETECTIVE_LOCATIONS.size());
+		assertThat(book.isFor(setup.graph)).isTrue();
+		for (SearchState start : OpeningBookBuilder.starts(setup, 1)) {
+			assertThat(start.getAvailableMoves()).contains(IntMove.decode(book.move(start)));
+		}
+		assertThat(OpeningBookBuilder.starts(setup, 2)).hasSize(ScotlandYard.MRX_LOCATIONS.size() * 91);
+	}
+
+	@Test public void testOnlyAnswersStarts() {
+		var mrX = new Player(Piece.MrX.MRX, ScotlandYard.defaultMrXTickets(), 35);
+		var start = SearchState.of(setup, mrX, ImmutableList.of(detective(Piece.Detective.BLUE, 26)));
+		// any detective on the same node is the same start
+		int move = book.move(SearchState.of(setup, mrX, ImmutableList.of(detective(Piece.Detective.RED, 26))));
+		assertThat(move).isNotEqualTo(IntMove.NONE).isEqualTo(book.move(start));
+		start.makeMove(move);
+		assertThat(book.move(start)).isEqualTo(IntMove.NONE);
+		var elsewhere = SearchState.of(setup, new Player(Piece.MrX.MRX, ScotlandYard.defaultMrXTickets(), 1),
+				ImmutableList.of(detective(Piece.Detective.RED, 26)));
+		assertThat(book.move(elsewhere)).isEqualTo(IntMove.NONE);
+		var twoDetectives = SearchState.of(setup, mrX,
+				ImmutableList.of(detective(Piece.Detective.RED, 26), detective(Piece.Detective.BLUE, 29)));
+		assertThat(book.move(twoDetectives)).isEqualTo(IntMove.NONE);
+	}
+
+	@Test public void testReadsBackWhatItWrites() throws IOException {
+		var out = new ByteArrayOutputStream();
+		book.write(out);
+		var copy = OpeningBook.read(new ByteArrayInputStream(out.toByteArray()));
+		assertThat(copy.size()).isEqualTo(book.size());
+		for (SearchState start : OpeningBookBuilder.starts(setup, 1))
+			assertThat(copy.move(start)).isEqualTo(book.move(start));
+		byte[] bytes = out.toByteArray();
+		bytes[0]++;
+		assertThatThrownBy(() -> OpeningBook.read(new ByteArrayInputStream(bytes)))
+				.isInstanceOf(IOException.class);
+		assertThatThrownBy(() -> OpeningBook.read(new ByteArrayInputStream(new byte[3])))
+				.isInstanceOf(IOException.class);
+	}
+
+	@Test public void testStandardBookIsEmptyOrComplete() {
+		var standard = OpeningBook.standard();
+		// the game does not ship a book, but one may have been built and copied in
+		if (standard.size() == 0) return;
+		assertThat(standard.isFor(setup.graph)).isTrue();
+		var starts = OpeningBookBuilder.starts(setup, ScotlandYard.DETECTIVES.size());
+		assertThat(standard.size()).isEqualTo(starts.size());
+		for (int i = 0; i < starts.size(); i += 97) {
+			assertThat(starts.get(i).getAvailableMoves()).contains(IntMove.decode(standard.move(starts.get(i))));
+		}
+	}
+
+	@Test public void testMissingResourceGivesEmptyBook() {
+		assertThat(OpeningBook.load("no-such-book.bin").size()).isZero();
+		assertThat(OpeningBook.empty().isFor(setup.graph)).isFalse();
+	}
+
+	@Test public void testAiPlaysBookMoveWithoutSearching() {
+		var mrX = new Player(Piece.MrX.MRX, ScotlandYard.defaultMrXTickets(), 35);
+		var board = new MyGameStateFactory().build(setup, mrX,
+				ImmutableList.of(detective(Piece.Detective.RED, 26)));
+		var ai = new SearchAi(Side.MRX, "book", new Random()) {
+			@Nonnull @Override protected OpeningBook book() { return book; }
+			@Override protected int bestMove(@Nonnull Board board, @Nonnull Deadline deadline) {
+				throw new AssertionError("searched a book position");
+			}
+		};
+		var move = ai.pickMove(board, new Pair<>(1L, TimeUnit.SECONDS));
+		assertThat(IntMove.encode(move)).isEqualTo(book.move(SearchState.of(board)));
+	}
+}
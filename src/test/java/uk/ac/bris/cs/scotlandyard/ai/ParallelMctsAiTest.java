@@ -0,0 +1,147 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.atlassian.fugue.Pair;
+import uk.ac.bris.cs.scotlandyard.ai.ParallelMctsAi.Mode;
+import uk.ac.bris.cs.scotlandyard.model.Deadline;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.IntMove;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.MyGameStateFactory;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.SearchState;
+import uk.ac.bris.cs.scotlandyard.model.SearchState.Side;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Checks that {@link ConcurrentMcts} keeps consistent statistics and that {@link ParallelMctsAi}
+ * returns legal moves in both modes
+ */
+public class ParallelMctsAiTest {
+
+	private static final GameSetup setup = AiFixtures.setup();
+
+	static final class TestAi extends ParallelMctsAi {
+		TestAi(Side side, Mode mode) { super(side, "test", mode, 4, new Random(1)); }
+		@Override protected long maxIterations() { return 2000; }
+	}
+
+	private static SearchState capturePosition() {
+		int red = AiFixtures.nextTo36();
+		var state = SearchState.of(setup,
+				new Player(Piece.MrX.MRX, ScotlandYard.defaultMrXTickets(), 35),
+				ImmutableList.of(new Player(Piece.Detective.RED, ScotlandYard.defaultDetectiveTickets(), red)));
+		state.makeMove(new Move.SingleMove(Piece.MrX.MRX, 35, Ticket.TAXI, 36));
+		return state;
+	}
+
+	@Test public void testSharedTreeFromManyThreads() throws InterruptedException {
+		var engine = new ConcurrentMcts();
+		var root = ConcurrentMcts.newRoot();
+		var iterations = new AtomicLong(4000);
+		var counts = new long[4];
+		var threads = new Thread[counts.length];
+		for (int i = 0; i < threads.length; i++) {
+			int worker = i;
+			var state = capturePosition();
+			threads[i] = new Thread(() -> {
+				counts[worker] = engine.search(state, root, Deadline.never(), iterations, new Random(worker));
+				assertThat(state.depth()).isEqualTo(1);
+			});
+			threads[i].start();
+		}
+		for (Thread thread : threads) thread.join();
+		long total = 0;
+		for (long count : counts) total += count;
+		assertThat(total).isEqualTo(4000);
+		assertThat(root.visits()).isEqualTo(4000);
+		assertThat(IntMove.destination(root.mostVisited().move())).isEqualTo(36);
+	}
+
+	// the estimated bytes of a subtree, as ConcurrentMcts counts them
+	private static long bytes(ConcurrentMcts.Node node) {
+		long bytes = Mcts.NODE_BYTES;
+		if (node.moveCount() > 0) bytes += ConcurrentMcts.EDGES_BYTES + 2L * Integer.BYTES * node.moveCount();
+		for (int i = 0; i < node.moveCount(); i++) {
+			if (node.child(i) != null) bytes += bytes(node.child(i));
+		}
+		return bytes;
+	}
+
+	@Test public void testSharedTreeStaysWithinItsMemoryLimit() throws InterruptedException {
+		int maxNodes = 2000;
+		var engine = new ConcurrentMcts(Mcts.DEFAULT_EXPLORATION, Mcts.RANDOM, maxNodes,
+				ConcurrentMcts.DEFAULT_VIRTUAL_LOSS);
+		var root = ConcurrentMcts.newRoot();
+		var iterations = new AtomicLong(20000);
+		var threads = new Thread[4];
+		for (int i = 0; i < threads.length; i++) {
+			int worker = i;
+			// MrX to move, with double moves on offer
+			var state = SearchState.of(setup, new Player(Piece.MrX.MRX, ScotlandYard.defaultMrXTickets(),
+					ScotlandYard.generateMrXLocation(3)), AiFixtures.detectives());
+			threads[i] = new Thread(() -> engine.search(state, root, Deadline.never(), iterations, new Random(worker)));
+			threads[i].start();
+		}
+		for (Thread thread : threads) thread.join();
+		assertThat(root.visits()).isEqualTo(20000);
+		assertThat(root.moveCount()).isGreaterThan(100);
+		// the root itself was not charged
+		assertThat(bytes(root) - Mcts.NODE_BYTES).isEqualTo(engine.bytes());
+		// each thread may add one node and one move list past the limit
+		assertThat(engine.bytes()).isLessThanOrEqualTo((long) maxNodes * Mcts.NODE_BYTES
+				+ threads.length * (Mcts.NODE_BYTES + ConcurrentMcts.EDGES_BYTES + 2L * Integer.BYTES * 1000));
+	}
+
+	@Test public void testPicksLegalMovesInBothModes() {
+		var mrX = new Player(Piece.MrX.MRX, ScotlandYard.defaultMrXTickets(),
+				ScotlandYard.generateMrXLocation(3));
+		var timeout = new Pair<>(5L, TimeUnit.SECONDS);
+		for (Mode mode : Mode.values()) {
+			var state = new MyGameStateFactory().build(setup, mrX, AiFixtures.detectives());
+			var mrXAi = new TestAi(Side.MRX, mode);
+			var detectivesAi = new TestAi(Side.DETECTIVES, mode);
+			try {
+				Move move = mrXAi.pickMove(state, timeout);
+				assertThat(state.getAvailableMoves()).contains(move);
+				state = state.advance(move);
+				Move detective = detectivesAi.pickMove(state, timeout);
+				assertThat(state.getAvailableMoves()).contains(detective);
+			} finally {
+				mrXAi.onTerminate();
+				detectivesAi.onTerminate();
+			}
+		}
+	}
+
+	@Test public void testRespectsTimeout() {
+		var state = new MyGameStateFactory().build(setup, new Player(Piece.MrX.MRX,
+				ScotlandYard.defaultMrXTickets(), ScotlandYard.generateMrXLocation(3)), AiFixtures.detectives());
+		var ai = new ParallelMctsMrXAi();
+		try {
+			long start = System.nanoTime();
+			Move move = ai.pickMove(state, new Pair<>(300L, TimeUnit.MILLISECONDS));
+			assertThat(System.nanoTime() - start).isLessThan(TimeUnit.MILLISECONDS.toNanos(300));
+			assertThat(state.getAvailableMoves()).contains(move);
+		} finally {
+			ai.onTerminate();
+		}
+	}
+
+	@Test public void testNeedsAWorker() {
+		assertThatThrownBy(() -> new ParallelMctsAi(Side.MRX, "none", Mode.ROOT, 0, new Random()) {})
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+}
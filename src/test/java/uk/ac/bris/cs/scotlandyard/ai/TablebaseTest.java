@@ -0,0 +1,151 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+import com.google.common.graph.ValueGraphBuilder;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+import uk.ac.bris.cs.scotlandyard.model.SearchState;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Checks {@link TablebaseGenerator} against a plain minimax of the same game and that
+ * {@link Tablebase} reads back what was written
+ */
+public class TablebaseTest {
+
+	private static ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph;
+
+	@Rule public TemporaryFolder folder = new TemporaryFolder();
+
+	@BeforeClass public static void setUp() throws IOException {
+		graph = ScotlandYard.standardGraph();
+	}
+
+	// the rounds MrX survives with him to move, by trying every move
+	private static int survive(int mrX, int[] detectives, int rounds) {
+		if (rounds == 0) return 0;
+		int best = 0;
+		for (int destination : graph.adjacentNodes(mrX)) {
+			if (occupied(detectives, destination, -1)) continue;
+			best = Math.max(best, reply(destination, detectives, 0, rounds));
+		}
+		return best;
+	}
+
+	private static int reply(int mrX, int[] detectives, int j, int rounds) {
+		if (j == detectives.length) return 1 + survive(mrX, detectives, rounds - 1);
+		int best = Integer.MAX_VALUE;
+		int from = detectives[j];
+		for (int destination : graph.adjacentNodes(from)) {
+			if (graph.edgeValue(from, destination).orElseThrow().equals(ImmutableSet.of(Transport.FERRY))
+					|| occupied(detectives, destination, j)) continue;
+			if (destination == mrX) return 0;
+			detectives[j] = destination;
+			best = Math.min(best, reply(mrX, detectives, j + 1, rounds));
+			detectives[j] = from;
+		}
+		return best == Integer.MAX_VALUE ? reply(mrX, detectives, j + 1, rounds) : best;
+	}
+
+	private static boolean occupied(int[] detectives, int node, int except) {
+		for (int i = 0; i < detectives.length; i++) if (i != except && detectives[i] == node) return true;
+		return false;
+	}
+
+	@Test public void testMatchesMinimax() throws IOException {
+		Path file = folder.newFile().toPath();
+		TablebaseGenerator.write(file, graph, 1, 3);
+		var table = Tablebase.open(file);
+		assertThat(table.detectives()).isEqualTo(1);
+		assertThat(table.rounds()).isEqualTo(3);
+		assertThat(table.isFor(graph)).isTrue();
+		var random = new Random(0);
+		int caught = 0;
+		for (int i = 0; i < 200; i++) {
+			int mrX = 1 + random.nextInt(199);
+			// keep the detective close so that some positions are lost
+			var near = ImmutableList.copyOf(graph.adjacentNodes(mrX));
+			int detective = near.get(random.nextInt(near.size()));
+			var next = ImmutableList.copyOf(graph.adjacentNodes(detective));
+			detective = next.get(random.nextInt(next.size()));
+			if (detective == mrX) continue;
+			int expected = survive(mrX, new int[]{detective}, 3);
+			assertThat(table.survivableRounds(mrX, detective)).isEqualTo(expected);
+			if (expected < 3) caught++;
+		}
+		assertThat(caught).isPositive();
+		assertThat(table.survivableRounds(1, 1)).isZero();
+	}
+
+	@Test public void testMovesDetectivesInOrder() {
+		byte[] values = TablebaseGenerator.solve(graph, 2, 2);
+		var random = new Random(1);
+		for (int i = 0; i < 50; i++) {
+			int mrX = 1 + random.nextInt(199);
+			int first = ImmutableList.copyOf(graph.adjacentNodes(mrX)).get(0);
+			int second = 1 + random.nextInt(199);
+			if (first == second || second == mrX) continue;
+			assertThat(values[(mrX * 200 + first) * 200 + second] & 0xFF)
+					.isEqualTo(survive(mrX, new int[]{first, second}, 2));
+		}
+	}
+
+	@Test public void testProbesSearchStates() throws IOException {
+		Path file = folder.newFile().toPath();
+		TablebaseGenerator.write(file, graph, 1, 3);
+		var table = Tablebase.open(file);
+		var setup = new GameSetup(graph, ScotlandYard.STANDARD24MOVES);
+		var state = SearchState.of(setup,
+				new Player(Piece.MrX.MRX, ScotlandYard.defaultMrXTickets(), 35),
+				ImmutableList.of(new Player(Piece.Detective.RED, ScotlandYard.defaultDetectiveTickets(), 100)));
+		assertThat(table.survivableRounds(state)).isEqualTo(table.survivableRounds(35, 100));
+		state.makeMove(state.getAvailableMoves().iterator().next());
+		assertThat(table.survivableRounds(state)).isEqualTo(Tablebase.UNKNOWN);
+		assertThatThrownBy(() -> table.survivableRounds(35, 100, 101))
+				.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> table.survivableRounds(35, 1000))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test public void testRejectsOtherFilesAndGraphs() throws IOException {
+		Path file = folder.newFile().toPath();
+		Files.write(file, new byte[64]);
+		assertThatThrownBy(() -> Tablebase.open(file)).isInstanceOf(IOException.class);
+		TablebaseGenerator.write(file, graph, 1, 1);
+		Files.write(file, new byte[]{0}, StandardOpenOption.APPEND);
+		assertThatThrownBy(() -> Tablebase.open(file)).isInstanceOf(IOException.class);
+
+		var builder = ValueGraphBuilder.undirected().<Integer, ImmutableSet<Transport>>immutable();
+		builder.putEdgeValue(1, 2, ImmutableSet.of(Transport.TAXI));
+		var small = builder.build();
+		TablebaseGenerator.write(file, small, 1, 1);
+		var table = Tablebase.open(file);
+		assertThat(table.isFor(small)).isTrue();
+		assertThat(table.isFor(graph)).isFalse();
+		assertThatThrownBy(() -> TablebaseGenerator.solve(graph, 0, 1))
+				.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> TablebaseGenerator.solve(graph, 1, 256))
+				.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> TablebaseGenerator.solve(graph, TablebaseGenerator.MAX_DETECTIVES + 1, 1))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+}
@@ -0,0 +1,92 @@
+package uk.ac.bris.cs.scotlandyard.ai;
+
+import org.junit.Test;
+
+import uk.ac.bris.cs.scotlandyard.model.IntMove;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static uk.ac.bris.cs.scotlandyard.ai.TranspositionTable.EXACT;
+import static uk.ac.bris.cs.scotlandyard.ai.TranspositionTable.LOWER;
+import static uk.ac.bris.cs.scotlandyard.ai.TranspositionTable.MISS;
+import static uk.ac.bris.cs.scotlandyard.ai.TranspositionTable.UPPER;
+
+/**
+ * Checks that {@link TranspositionTable} packs entries losslessly, replaces them by depth and
+ * never hands out torn entries to concurrent readers
+ */
+public class TranspositionTableTest {
+
+	// keys whose halves are equal all fall in the first bucket
+	private static long sameBucket(int i) { return (long) i << 32 | i; }
+
+	@Test public void testStoresAndProbes() {
+		var table = new TranspositionTable(1);
+		assertThat(table.capacity()).isEqualTo((1 << 20) / 16);
+		assertThat(table.probe(42)).isEqualTo(MISS);
+		table.store(42, IntMove.NONE, -TranspositionTable.MAX_SCORE, TranspositionTable.MAX_DEPTH, UPPER);
+		long entry = table.probe(42);
+		assertThat(TranspositionTable.move(entry)).isEqualTo(IntMove.NONE);
+		assertThat(TranspositionTable.score(entry)).isEqualTo(-TranspositionTable.MAX_SCORE);
+		assertThat(TranspositionTable.depth(entry)).isEqualTo(TranspositionTable.MAX_DEPTH);
+		assertThat(TranspositionTable.bound(entry)).isEqualTo(UPPER);
+		table.store(42, 0x12345678, AlphaBeta.WIN, 0, EXACT);
+		entry = table.probe(42);
+		assertThat(TranspositionTable.move(entry)).isEqualTo(0x12345678);
+		assertThat(TranspositionTable.score(entry)).isEqualTo(AlphaBeta.WIN);
+		assertThat(TranspositionTable.depth(entry)).isZero();
+		assertThat(table.probe(43)).isEqualTo(MISS);
+		table.clear();
+		assertThat(table.probe(42)).isEqualTo(MISS);
+	}
+
+	@Test public void testPrefersDepth() {
+		var table = new TranspositionTable(1);
+		table.store(sameBucket(1), 1, 0, 5, EXACT);
+		table.store(sameBucket(2), 2, 0, 3, EXACT);
+		table.store(sameBucket(3), 3, 0, 4, EXACT);
+		// the deep entry stays, the shallower ones take turns in the other slot
+		assertThat(table.probe(sameBucket(1))).isNotEqualTo(MISS);
+		assertThat(table.probe(sameBucket(2))).isEqualTo(MISS);
+		assertThat(TranspositionTable.move(table.probe(sameBucket(3)))).isEqualTo(3);
+		table.store(sameBucket(4), 4, 0, 6, LOWER);
+		assertThat(table.probe(sameBucket(1))).isEqualTo(MISS);
+		assertThat(TranspositionTable.move(table.probe(sameBucket(4)))).isEqualTo(4);
+		// the same position replaces its entry even when searched less deeply
+		table.store(sameBucket(4), 5, 0, 1, UPPER);
+		assertThat(TranspositionTable.move(table.probe(sameBucket(4)))).isEqualTo(5);
+	}
+
+	@Test public void testReadersNeverSeeTornEntries() throws InterruptedException {
+		var table = new TranspositionTable(1);
+		var threads = new Thread[4];
+		var torn = new boolean[1];
+		for (int t = 0; t < threads.length; t++) {
+			int seed = t;
+			threads[t] = new Thread(() -> {
+				for (int i = 0; i < 200_000; i++) {
+					int key = (i * 31 + seed) % 64 + 1;
+					// every writer stores the same entry for a key, so any other entry is torn
+					long entry = table.probe(sameBucket(key));
+					if (entry != MISS && (TranspositionTable.move(entry) != key
+							|| TranspositionTable.score(entry) != -key)) torn[0] = true;
+					table.store(sameBucket(key), key, -key, key % 8, EXACT);
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) thread.join();
+		assertThat(torn[0]).isFalse();
+	}
+
+	@Test public void testRejectsBadArguments() {
+		assertThatThrownBy(() -> new TranspositionTable(0)).isInstanceOf(IllegalArgumentException.class);
+		var table = new TranspositionTable(1);
+		assertThatThrownBy(() -> table.store(1, 0, TranspositionTable.MAX_SCORE + 1, 0, EXACT))
+				.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> table.store(1, 0, 0, -1, EXACT))
+				.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> table.store(1, 0, 0, 0, 0))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+}
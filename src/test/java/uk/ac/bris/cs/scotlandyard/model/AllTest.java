@@ -3,8 +3,24 @@ package uk.ac.bris.cs.scotlandyard.model;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 
+import uk.ac.bris.cs.scotlandyard.BatchRunnerTest;
+import uk.ac.bris.cs.scotlandyard.ai.AlphaBetaTest;
+import uk.ac.bris.cs.scotlandyard.ai.InformationSetMctsTest;
+import uk.ac.bris.cs.scotlandyard.ai.MctsAiTest;
+import uk.ac.bris.cs.scotlandyard.ai.OpeningBookTest;
+import uk.ac.bris.cs.scotlandyard.ai.ParallelMctsAiTest;
+import uk.ac.bris.cs.scotlandyard.ai.TablebaseTest;
+import uk.ac.bris.cs.scotlandyard.ai.TranspositionTableTest;
+import uk.ac.bris.cs.scotlandyard.record.GameArchiveTest;
+import uk.ac.bris.cs.scotlandyard.record.GameJournalTest;
+import uk.ac.bris.cs.scotlandyard.record.IndexedReplayTest;
+import uk.ac.bris.cs.scotlandyard.record.ReplayTest;
+
 /**
- * Includes all test for the actual game model
+ * Includes all tests: those for the actual game model, then those for the code built on it, the
+ * batch runner, the Ais in {@code ai} and the game records in {@code record}
+ * <br>
+ * This is the only suite the build runs, so new test classes must be listed here.
  */
 @RunWith(Suite.class)
 @Suite.SuiteClasses({
@@ -15,6 +31,26 @@ import org.junit.runners.Suite;
 		GameStateDetectivesAvailableMovesTest.class,
 		GameStateMrXAvailableMovesTest.class,
 		GameStatePlayoutTest.class,
-		ModelObserverTest.class
+		ModelObserverTest.class,
+		AsyncObserverTest.class,
+		BitboardGameStateTest.class,
+		SearchStateTest.class,
+		IntMoveTest.class,
+		GraphIndexTest.class,
+		DistanceOracleTest.class,
+		MrXLocationTrackerTest.class,
+		DeadlineTest.class,
+		BatchRunnerTest.class,
+		MctsAiTest.class,
+		ParallelMctsAiTest.class,
+		AlphaBetaTest.class,
+		InformationSetMctsTest.class,
+		TranspositionTableTest.class,
+		TablebaseTest.class,
+		OpeningBookTest.class,
+		GameJournalTest.class,
+		ReplayTest.class,
+		IndexedReplayTest.class,
+		GameArchiveTest.class
 })
 public class AllTest {}
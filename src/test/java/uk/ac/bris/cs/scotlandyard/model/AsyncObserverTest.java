@@ -0,0 +1,187 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Model.Observer;
+import uk.ac.bris.cs.scotlandyard.model.Model.Observer.Event;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Checks that {@link MyModelFactory}'s asynchronous dispatch keeps every observer's events in
+ * order, applies backpressure, coalesces moves for {@link MyModelFactory.LatestOnly} observers and
+ * ends its threads when the model is closed
+ */
+public class AsyncObserverTest {
+
+	private static GameSetup setup;
+
+	@BeforeClass public static void setUp() throws IOException {
+		setup = new GameSetup(ScotlandYard.standardGraph(), ImmutableList.of(false, false, false));
+	}
+
+	// records events, waiting for the gate before handling each one
+	private static class Recorder implements Observer {
+		final List<Event> events = new CopyOnWriteArrayList<>();
+		final List<Board> boards = new CopyOnWriteArrayList<>();
+		final CountDownLatch gate;
+		final CountDownLatch done;
+
+		Recorder(CountDownLatch gate, int expected) {
+			this.gate = gate;
+			this.done = new CountDownLatch(expected);
+		}
+
+		@Override public void onModelChanged(@Nonnull Board board, @Nonnull Event event) {
+			try {
+				gate.await();
+			} catch (InterruptedException e) {
+				throw new AssertionError(e);
+			}
+			boards.add(board);
+			events.add(event);
+			done.countDown();
+		}
+	}
+
+	private static final class LatestRecorder extends Recorder implements MyModelFactory.LatestOnly {
+		LatestRecorder(CountDownLatch gate, int expected) { super(gate, expected); }
+	}
+
+	private static Model model(int capacity) {
+		return new MyModelFactory(new MyGameStateFactory(), capacity).build(setup,
+				new Player(Piece.MrX.MRX, ScotlandYard.defaultMrXTickets(), 35),
+				ImmutableList.of(new Player(Piece.Detective.RED, ScotlandYard.defaultDetectiveTickets(), 26)));
+	}
+
+	// single moves only, so the game lasts two moves a round
+	private static void move(Model model) {
+		model.chooseMove(model.getCurrentBoard().getAvailableMoves().stream()
+				.filter(m -> m instanceof Move.SingleMove)
+				.findFirst().orElseThrow());
+	}
+
+	@Test public void testSlowObserverDoesNotHoldUpOthers() throws InterruptedException {
+		var model = model(16);
+		var closed = new CountDownLatch(1);
+		var slow = new Recorder(closed, 6);
+		var fast = new Recorder(new CountDownLatch(0), 6);
+		model.registerObserver(slow);
+		model.registerObserver(fast);
+		for (int i = 0; i < 6; i++) move(model);
+		assertThat(fast.done.await(5, TimeUnit.SECONDS)).isTrue();
+		assertThat(slow.events).isEmpty();
+		closed.countDown();
+		assertThat(slow.done.await(5, TimeUnit.SECONDS)).isTrue();
+		for (Recorder recorder : List.of(slow, fast)) {
+			assertThat(recorder.events).containsExactly(Event.MOVE_MADE, Event.MOVE_MADE,
+					Event.MOVE_MADE, Event.MOVE_MADE, Event.MOVE_MADE, Event.GAME_OVER);
+			assertThat(recorder.boards.get(5)).isSameAs(model.getCurrentBoard());
+		}
+	}
+
+	@Test public void testFullQueueHoldsBackTheGame() throws InterruptedException {
+		var model = model(1);
+		var gate = new CountDownLatch(1);
+		var slow = new Recorder(gate, 3);
+		model.registerObserver(slow);
+		// the first event is being handled and the second waits, so the third has no room
+		move(model);
+		move(model);
+		var third = new Thread(() -> move(model));
+		third.start();
+		third.join(200);
+		assertThat(third.isAlive()).isTrue();
+		gate.countDown();
+		third.join(5000);
+		assertThat(third.isAlive()).isFalse();
+		assertThat(slow.done.await(5, TimeUnit.SECONDS)).isTrue();
+	}
+
+	@Test public void testLatestOnlySkipsIntermediateMoves() throws InterruptedException {
+		var model = model(1);
+		var gate = new CountDownLatch(1);
+		var latest = new LatestRecorder(gate, 3);
+		model.registerObserver(latest);
+		move(model);
+		// wait for the first event to be taken, the rest then pile up behind it
+		Thread.sleep(100);
+		for (int i = 0; i < 4; i++) move(model);
+		gate.countDown();
+		Thread.sleep(100);
+		assertThat(latest.events).containsExactly(Event.MOVE_MADE, Event.MOVE_MADE);
+		assertThat(latest.boards.get(1)).isSameAs(model.getCurrentBoard());
+		move(model);
+		assertThat(latest.done.await(5, TimeUnit.SECONDS)).isTrue();
+		assertThat(latest.events).containsExactly(Event.MOVE_MADE, Event.MOVE_MADE, Event.GAME_OVER);
+	}
+
+	@Test public void testLatestOnlyAlwaysGetsGameOver() throws InterruptedException {
+		var model = model(1);
+		var gate = new CountDownLatch(1);
+		var latest = new LatestRecorder(gate, 2);
+		model.registerObserver(latest);
+		move(model);
+		Thread.sleep(100);
+		for (int i = 0; i < 5; i++) move(model);
+		gate.countDown();
+		assertThat(latest.done.await(5, TimeUnit.SECONDS)).isTrue();
+		Thread.sleep(100);
+		assertThat(latest.events).containsExactly(Event.MOVE_MADE, Event.GAME_OVER);
+		assertThat(latest.boards.get(1)).isSameAs(model.getCurrentBoard());
+	}
+
+	@Test public void testUnregisteredObserverGetsNoNewEvents() throws InterruptedException {
+		var model = model(4);
+		var recorder = new Recorder(new CountDownLatch(0), 1);
+		model.registerObserver(recorder);
+		move(model);
+		assertThat(recorder.done.await(5, TimeUnit.SECONDS)).isTrue();
+		model.unregisterObserver(recorder);
+		move(model);
+		Thread.sleep(100);
+		assertThat(recorder.events).hasSize(1);
+	}
+
+	@Test public void testClosingAbandonedGameEndsObserverThreads() throws InterruptedException {
+		var model = model(4);
+		var threads = new CopyOnWriteArrayList<Thread>();
+		var recorder = new Recorder(new CountDownLatch(0), 1) {
+			@Override public void onModelChanged(@Nonnull Board board, @Nonnull Event event) {
+				threads.add(Thread.currentThread());
+				super.onModelChanged(board, event);
+			}
+		};
+		model.registerObserver(recorder);
+		move(model);
+		assertThat(recorder.done.await(5, TimeUnit.SECONDS)).isTrue();
+		Thread thread = threads.get(0);
+		assertThat(thread.isAlive()).isTrue();
+		// the game is not over, only closing the model stops the thread
+		model.close();
+		thread.join(5000);
+		assertThat(thread.isAlive()).isFalse();
+		model.close();
+		move(model);
+		assertThat(recorder.events).hasSize(1);
+		assertThatThrownBy(() -> model.registerObserver(new Recorder(new CountDownLatch(0), 1)))
+				.isInstanceOf(IllegalStateException.class);
+	}
+
+	@Test public void testNeedsCapacity() {
+		assertThatThrownBy(() -> new MyModelFactory(new MyGameStateFactory(), 0))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+}
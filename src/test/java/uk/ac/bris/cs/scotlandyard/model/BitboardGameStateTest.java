@@ -0,0 +1,107 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.Random;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.STANDARD24MOVES;
+
+/**
+ * Plays random games on both {@link MyGameStateFactory} and {@link BitboardGameStateFactory} and
+ * checks that every intermediate state is observably identical.
+ */
+public class BitboardGameStateTest {
+
+	private static GameSetup setup;
+
+	@BeforeClass public static void setUp() throws IOException {
+		setup = new GameSetup(ScotlandYard.standardGraph(), STANDARD24MOVES);
+	}
+
+	static ImmutableMap<Ticket, Integer> randomTickets(Random random, boolean mrX) {
+		return ImmutableMap.of(
+				Ticket.TAXI, random.nextInt(mrX ? 5 : 12),
+				Ticket.BUS, random.nextInt(mrX ? 4 : 9),
+				Ticket.UNDERGROUND, random.nextInt(mrX ? 4 : 5),
+				Ticket.DOUBLE, mrX ? random.nextInt(3) : 0,
+				Ticket.SECRET, mrX ? random.nextInt(6) : 0);
+	}
+
+	static void assertSameBoard(Board expected, Board actual) {
+		assertThat(actual.getPlayers()).containsExactlyInAnyOrderElementsOf(expected.getPlayers());
+		assertThat(actual.getWinner()).containsExactlyInAnyOrderElementsOf(expected.getWinner());
+		assertThat(actual.getAvailableMoves())
+				.containsExactlyInAnyOrderElementsOf(expected.getAvailableMoves());
+		assertThat(actual.getMrXTravelLog()).isEqualTo(expected.getMrXTravelLog());
+		for (Piece piece : expected.getPlayers()) {
+			if (piece.isDetective()) {
+				assertThat(actual.getDetectiveLocation((Piece.Detective) piece))
+						.isEqualTo(expected.getDetectiveLocation((Piece.Detective) piece));
+			}
+			for (Ticket ticket : Ticket.values()) {
+				assertThat(actual.getPlayerTickets(piece).orElseThrow().getCount(ticket))
+						.as("%s count for %s", ticket, piece)
+						.isEqualTo(expected.getPlayerTickets(piece).orElseThrow().getCount(ticket));
+			}
+		}
+	}
+
+	@Test public void testRandomPlayoutsMatchMyGameState() {
+		var reference = new MyGameStateFactory();
+		var bitboard = new BitboardGameStateFactory();
+		for (int seed = 0; seed < 200; seed++) {
+			var random = new Random(seed);
+			int count = 1 + random.nextInt(5);
+			var locations = ScotlandYard.generateDetectiveLocations(seed, count);
+			var mrX = new Player(Piece.MrX.MRX, randomTickets(random, true),
+					ScotlandYard.generateMrXLocation(seed));
+			var detectives = ImmutableList.<Player>builder();
+			for (int i = 0; i < count; i++) {
+				detectives.add(new Player(ScotlandYard.DETECTIVES.asList().get(i),
+						randomTickets(random, false), locations.get(i)));
+			}
+			GameState expected;
+			try {
+				expected = reference.build(setup, mrX, detectives.build());
+			} catch (IllegalArgumentException e) {
+				assertThatThrownBy(() -> bitboard.build(setup, mrX, detectives.build()))
+						.isInstanceOf(IllegalArgumentException.class);
+				continue;
+			}
+			GameState actual = bitboard.build(setup, mrX, detectives.build());
+			while (true) {
+				assertSameBoard(expected, actual);
+				assertThat(((Zobrist.Keyed) expected).zobristKey())
+						.isEqualTo(((Zobrist.Keyed) actual).zobristKey());
+				if (!expected.getWinner().isEmpty()) break;
+				var moves = expected.getAvailableMoves().stream()
+						.sorted(Comparator.comparing(Object::toString))
+						.collect(ImmutableList.toImmutableList());
+				Move move = moves.get(random.nextInt(moves.size()));
+				expected = expected.advance(move);
+				actual = actual.advance(move);
+			}
+		}
+	}
+
+	@Test public void testIllegalMoveShouldThrow() {
+		GameState state = new BitboardGameStateFactory().build(setup,
+				new Player(Piece.MrX.MRX, ScotlandYard.defaultMrXTickets(), 35),
+				new Player(Piece.Detective.RED, ScotlandYard.defaultDetectiveTickets(), 50));
+		assertThatThrownBy(() -> state.advance(new Move.SingleMove(Piece.MrX.MRX, 35,
+				Ticket.BUS, 36))).isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> state.advance(new Move.SingleMove(Piece.Detective.RED, 50,
+				Ticket.TAXI, 49))).isInstanceOf(IllegalArgumentException.class);
+	}
+}
@@ -0,0 +1,50 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import io.atlassian.fugue.Pair;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks {@link Deadline} expiry, cancellation and nesting
+ */
+public class DeadlineTest {
+
+	@Test public void testNeverOnlyExpiresWhenCancelled() {
+		var deadline = Deadline.never();
+		assertThat(deadline.isExpired()).isFalse();
+		assertThat(deadline.remainingNanos()).isEqualTo(Long.MAX_VALUE);
+		deadline.cancel();
+		assertThat(deadline.isCancelled()).isTrue();
+		assertThat(deadline.isExpired()).isTrue();
+		assertThat(deadline.remainingNanos()).isZero();
+	}
+
+	@Test public void testAfterExpiresInTime() throws InterruptedException {
+		var deadline = Deadline.after(new Pair<>(20L, TimeUnit.MILLISECONDS));
+		assertThat(deadline.isExpired()).isFalse();
+		assertThat(deadline.remainingNanos()).isBetween(1L, TimeUnit.MILLISECONDS.toNanos(20));
+		Thread.sleep(40);
+		assertThat(deadline.isExpired()).isTrue();
+		assertThat(deadline.isCancelled()).isFalse();
+		assertThat(Deadline.after(0, TimeUnit.SECONDS).isExpired()).isTrue();
+		assertThat(Deadline.after(-1, TimeUnit.SECONDS).isExpired()).isTrue();
+		assertThat(Deadline.after(Long.MAX_VALUE, TimeUnit.DAYS).isExpired()).isFalse();
+	}
+
+	@Test public void testWithinFollowsParent() {
+		var parent = Deadline.after(1, TimeUnit.SECONDS);
+		var child = parent.within(1, TimeUnit.DAYS);
+		assertThat(child.remainingNanos()).isLessThanOrEqualTo(TimeUnit.SECONDS.toNanos(1));
+		var grandchild = child.within(1, TimeUnit.HOURS);
+		grandchild.cancel();
+		assertThat(grandchild.isExpired()).isTrue();
+		assertThat(child.isExpired()).isFalse();
+		parent.cancel();
+		assertThat(child.isExpired()).isTrue();
+		assertThat(Deadline.never().within(0, TimeUnit.SECONDS).isExpired()).isTrue();
+	}
+}
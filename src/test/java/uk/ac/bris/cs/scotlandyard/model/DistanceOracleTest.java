@@ -0,0 +1,72 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks {@link DistanceOracle} against a plain breadth first search on the standard graph.
+ */
+public class DistanceOracleTest {
+
+	private static ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph;
+
+	@BeforeClass public static void setUp() throws IOException {
+		graph = ScotlandYard.standardGraph();
+	}
+
+	private static Map<Integer, Integer> bfs(int source, ImmutableSet<Ticket> tickets) {
+		var distances = new HashMap<Integer, Integer>();
+		var queue = new ArrayDeque<Integer>();
+		distances.put(source, 0);
+		queue.add(source);
+		while (!queue.isEmpty()) {
+			int node = queue.poll();
+			for (int neighbour : graph.adjacentNodes(node)) {
+				if (distances.containsKey(neighbour)) continue;
+				boolean usable = tickets.contains(Ticket.SECRET) || graph.edgeValue(node, neighbour)
+						.orElseThrow().stream().anyMatch(t -> tickets.contains(t.requiredTicket()));
+				if (!usable) continue;
+				distances.put(neighbour, distances.get(node) + 1);
+				queue.add(neighbour);
+			}
+		}
+		return distances;
+	}
+
+	@Test public void testDistancesMatchBreadthFirstSearch() {
+		var oracle = DistanceOracle.of(graph);
+		assertThat(DistanceOracle.of(graph)).isSameAs(oracle);
+		var masks = ImmutableSet.of(
+				ImmutableSet.of(Ticket.TAXI),
+				ImmutableSet.of(Ticket.BUS, Ticket.UNDERGROUND),
+				ImmutableSet.of(Ticket.TAXI, Ticket.BUS, Ticket.UNDERGROUND),
+				ImmutableSet.of(Ticket.SECRET));
+		for (var tickets : masks) {
+			int mask = DistanceOracle.mask(tickets.toArray(new Ticket[0]));
+			for (int source = 1; source <= 199; source += 7) {
+				var expected = bfs(source, tickets);
+				int[] distances = oracle.distances(source, mask);
+				for (int destination : graph.nodes()) {
+					int distance = expected.getOrDefault(destination, DistanceOracle.UNREACHABLE);
+					assertThat(oracle.distance(source, destination, mask)).isEqualTo(distance);
+					assertThat(distances[destination]).isEqualTo(distance);
+				}
+			}
+		}
+		assertThat(oracle.distance(1, 8)).isEqualTo(1);
+		assertThat(oracle.distance(1, 1000)).isEqualTo(DistanceOracle.UNREACHABLE);
+	}
+}
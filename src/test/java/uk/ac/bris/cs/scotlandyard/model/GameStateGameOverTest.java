@@ -67,6 +67,16 @@ public class GameStateGameOverTest extends ParameterisedModelTestBase {
 		assertGameIsOver(state);
 	}
 
+	@Test public void testCaptureWithLastTicketIsDetectivesWin() {
+		var mrX = new Player(MRX, defaultMrXTickets(), 86);
+		var blue = new Player(BLUE, makeTickets(1, 0, 0, 0, 0), 85);
+
+		GameState state = gameStateFactory.build(standard24MoveSetup(), mrX, blue);
+		state = state.advance(taxi(MRX, 86, 103));
+		state = state.advance(taxi(BLUE, 85, 103)); // Blue catches MrX with its last ticket
+		assertThat(state.getWinner()).containsExactly(BLUE);
+	}
+
 	@Test public void testGameOverIfMrXStuck() {
 		var mrX = new Player(MRX, makeTickets(1, 1, 1, 0, 0), 86);
 		var blue = new Player(BLUE, defaultDetectiveTickets(), 108);
@@ -0,0 +1,56 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ValueGraphBuilder;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.HashSet;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Checks that {@link GraphIndex} has the same edges and transports as the graph it indexes.
+ */
+public class GraphIndexTest {
+
+	@Test public void testIndexMatchesStandardGraph() throws IOException {
+		var graph = ScotlandYard.standardGraph();
+		var index = GraphIndex.of(graph);
+		assertThat(GraphIndex.of(graph)).isSameAs(index);
+		assertThat(index.maxNode()).isEqualTo(199);
+		for (int node : graph.nodes()) {
+			assertThat(index.contains(node)).isTrue();
+			var neighbours = new HashSet<Integer>();
+			for (int i = index.start(node); i < index.end(node); i++) {
+				int neighbour = index.neighbour(i);
+				neighbours.add(neighbour);
+				int mask = 0;
+				for (Transport t : graph.edgeValueOrDefault(node, neighbour, ImmutableSet.of()))
+					mask |= 1 << t.requiredTicket().ordinal();
+				assertThat(index.tickets(i)).isEqualTo(mask);
+				assertThat(index.edgeTickets(node, neighbour)).isEqualTo(mask);
+			}
+			assertThat(neighbours).isEqualTo(graph.adjacentNodes(node));
+			assertThat(index.degree(node)).isEqualTo(neighbours.size());
+		}
+		assertThat(index.contains(0)).isFalse();
+		assertThat(index.isAdjacent(1, 2)).isFalse();
+		assertThatThrownBy(() -> index.start(0)).isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test public void testEmptyGraph() {
+		var graph = ValueGraphBuilder.undirected().<Integer, ImmutableSet<Transport>>immutable().build();
+		var index = GraphIndex.of(graph);
+		assertThat(index.maxNode()).isEqualTo(-1);
+		assertThat(index.contains(0)).isFalse();
+		var setup = new GameSetup(graph, ScotlandYard.STANDARD24MOVES);
+		assertThat(new MrXLocationTracker(setup).size()).isZero();
+		assertThat(new MrXLocationTracker(setup, ScotlandYard.MRX_LOCATIONS).toArray()).isEmpty();
+		assertThat(DistanceOracle.of(graph)).isNotNull();
+	}
+}
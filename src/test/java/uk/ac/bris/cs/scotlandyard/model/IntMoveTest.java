@@ -0,0 +1,85 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.Random;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.STANDARD24MOVES;
+
+/**
+ * Checks that {@link IntMove} round trips every move seen in random games and that
+ * {@link SearchState}'s encoded moves match its boxed ones.
+ */
+public class IntMoveTest {
+
+	private static GameSetup setup;
+
+	@BeforeClass public static void setUp() throws IOException {
+		setup = new GameSetup(ScotlandYard.standardGraph(), STANDARD24MOVES);
+	}
+
+	@Test public void testRandomPlayoutMovesRoundTrip() {
+		var list = new IntMoveList(1);
+		for (int seed = 0; seed < 20; seed++) {
+			var random = new Random(seed);
+			var locations = ScotlandYard.generateDetectiveLocations(seed, 5);
+			var detectives = ImmutableList.<Player>builder();
+			for (int i = 0; i < 5; i++) {
+				detectives.add(new Player(ScotlandYard.DETECTIVES.asList().get(i),
+						ScotlandYard.defaultDetectiveTickets(), locations.get(i)));
+			}
+			var mrX = new Player(Piece.MrX.MRX, ScotlandYard.defaultMrXTickets(),
+					ScotlandYard.generateMrXLocation(seed));
+			GameState state = new MyGameStateFactory().build(setup, mrX, detectives.build());
+			var search = SearchState.of(state);
+			while (state.getWinner().isEmpty()) {
+				for (Move move : state.getAvailableMoves()) {
+					int encoded = IntMove.encode(move);
+					assertThat(IntMove.decode(encoded)).isEqualTo(move);
+					assertThat(IntMove.piece(encoded)).isEqualTo(move.commencedBy());
+					assertThat(IntMove.source(encoded)).isEqualTo(move.source());
+				}
+				list.clear();
+				search.availableMoves(list);
+				assertThat(list.toMoves()).containsExactlyInAnyOrderElementsOf(state.getAvailableMoves());
+				var moves = state.getAvailableMoves().stream()
+						.sorted(Comparator.comparing(Object::toString))
+						.collect(ImmutableList.toImmutableList());
+				Move move = moves.get(random.nextInt(moves.size()));
+				try {
+					state = state.advance(move);
+				} catch (IllegalArgumentException e) { break; }
+				search.makeMove(IntMove.encode(move));
+			}
+		}
+	}
+
+	@Test public void testUnencodableMovesShouldThrow() {
+		assertThatThrownBy(() -> IntMove.encode(new Move.SingleMove(Piece.MrX.MRX, 1,
+				Ticket.TAXI, IntMove.MAX_NODE + 1))).isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> IntMove.encode(new Move.SingleMove(Piece.MrX.MRX, 1,
+				Ticket.DOUBLE, 8))).isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> IntMove.decode(IntMove.NONE))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test public void testDoubleMoveFields() {
+		var move = new Move.DoubleMove(Piece.MrX.MRX, 200, Ticket.SECRET, 255, Ticket.BUS, 0);
+		int encoded = IntMove.encode(move);
+		assertThat(IntMove.isDouble(encoded)).isTrue();
+		assertThat(IntMove.ticket1(encoded)).isEqualTo(Ticket.SECRET);
+		assertThat(IntMove.ticket2(encoded)).isEqualTo(Ticket.BUS);
+		assertThat(IntMove.destination(encoded)).isEqualTo(0);
+		assertThat(IntMove.decode(encoded)).isEqualTo(move);
+	}
+}
@@ -0,0 +1,76 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.Random;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.Move.FunctionalVisitor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.STANDARD24MOVES;
+
+/**
+ * Checks that {@link MrXLocationTracker} always contains MrX's real location in random games.
+ */
+public class MrXLocationTrackerTest {
+
+	private static GameSetup setup;
+
+	@BeforeClass public static void setUp() throws IOException {
+		setup = new GameSetup(ScotlandYard.standardGraph(), STANDARD24MOVES);
+	}
+
+	@Test public void testCandidatesContainMrXInRandomGames() {
+		for (int seed = 0; seed < 30; seed++) {
+			var random = new Random(seed);
+			var locations = ScotlandYard.generateDetectiveLocations(seed, 5);
+			var detectives = ImmutableList.<Player>builder();
+			for (int i = 0; i < 5; i++) {
+				detectives.add(new Player(ScotlandYard.DETECTIVES.asList().get(i),
+						ScotlandYard.defaultDetectiveTickets(), locations.get(i)));
+			}
+			int mrXLocation = ScotlandYard.generateMrXLocation(seed);
+			GameState state = new MyGameStateFactory().build(setup, new Player(Piece.MrX.MRX,
+					ScotlandYard.defaultMrXTickets(), mrXLocation), detectives.build());
+			var tracker = new MrXLocationTracker(setup, ScotlandYard.MRX_LOCATIONS);
+			while (state.getWinner().isEmpty()) {
+				tracker.update(state);
+				assertThat(tracker.contains(mrXLocation)).isTrue();
+				assertThat(tracker.processed()).isEqualTo(state.getMrXTravelLog().size());
+				var log = state.getMrXTravelLog();
+				if (!log.isEmpty() && log.get(log.size() - 1).location().isPresent())
+					assertThat(tracker.toArray()).containsExactly(mrXLocation);
+
+				var replayed = new MrXLocationTracker(setup, ScotlandYard.MRX_LOCATIONS);
+				log.forEach(replayed::accept);
+				assertThat(replayed.candidates()).containsAll(tracker.candidates());
+
+				var moves = state.getAvailableMoves().stream()
+						.sorted(Comparator.comparing(Object::toString))
+						.collect(ImmutableList.toImmutableList());
+				Move move = moves.get(random.nextInt(moves.size()));
+				state = state.advance(move);
+				if (move.commencedBy().isMrX()) mrXLocation = move.accept(new FunctionalVisitor<>(
+						m -> m.destination, m -> m.destination2));
+			}
+		}
+	}
+
+	@Test public void testHiddenEntryExpandsAlongTicketEdges() {
+		var tracker = new MrXLocationTracker(setup, ImmutableList.of(1));
+		tracker.accept(LogEntry.hidden(ScotlandYard.Ticket.TAXI));
+		assertThat(tracker.candidates()).containsExactlyInAnyOrder(8, 9);
+		var secret = new MrXLocationTracker(setup, ImmutableList.of(1));
+		secret.accept(LogEntry.hidden(ScotlandYard.Ticket.SECRET));
+		assertThat(secret.candidates()).containsExactlyInAnyOrderElementsOf(
+				setup.graph.adjacentNodes(1));
+		tracker.exclude(8);
+		assertThat(tracker.size()).isEqualTo(1);
+	}
+}
@@ -0,0 +1,132 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.Random;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.Move.FunctionalVisitor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.STANDARD24MOVES;
+
+/**
+ * Checks that {@link SearchState} agrees with {@link MyGameStateFactory} on random games and that
+ * unmaking moves restores the original state.
+ */
+public class SearchStateTest {
+
+	private static GameSetup setup;
+
+	@BeforeClass public static void setUp() throws IOException {
+		setup = new GameSetup(ScotlandYard.standardGraph(), STANDARD24MOVES);
+	}
+
+	@Test public void testRandomPlayoutsMatchMyGameState() {
+		var factory = new MyGameStateFactory();
+		for (int seed = 0; seed < 100; seed++) {
+			var random = new Random(seed);
+			int count = 1 + random.nextInt(5);
+			var locations = ScotlandYard.generateDetectiveLocations(seed, count);
+			var mrX = new Player(Piece.MrX.MRX, BitboardGameStateTest.randomTickets(random, true),
+					ScotlandYard.generateMrXLocation(seed));
+			var builder = ImmutableList.<Player>builder();
+			for (int i = 0; i < count; i++) {
+				builder.add(new Player(ScotlandYard.DETECTIVES.asList().get(i),
+						BitboardGameStateTest.randomTickets(random, false), locations.get(i)));
+			}
+			var detectives = builder.build();
+			GameState expected;
+			try {
+				expected = factory.build(setup, mrX, detectives);
+			} catch (IllegalArgumentException e) { continue; }
+			var search = SearchState.of(setup, mrX, detectives);
+			var initialMoves = search.getAvailableMoves();
+			long initialKey = search.zobristKey();
+			int mrXLocation = mrX.location();
+			while (true) {
+				assertThat(search.getAvailableMoves())
+						.containsExactlyInAnyOrderElementsOf(expected.getAvailableMoves());
+				assertThat(search.getWinner())
+						.containsExactlyInAnyOrderElementsOf(expected.getWinner());
+				var seeded = SearchState.of(expected, mrXLocation);
+				assertThat(seeded.getAvailableMoves())
+						.containsExactlyInAnyOrderElementsOf(expected.getAvailableMoves());
+				assertThat(seeded.getWinner())
+						.containsExactlyInAnyOrderElementsOf(expected.getWinner());
+				if (!expected.getWinner().isEmpty()) break;
+				// a board does not say whether a blocked detective has moved, only compare keys when
+				// the pieces to move are unambiguous
+				if (search.isMrXTurn()) assertThat(search.zobristKey()).isEqualTo(seeded.zobristKey());
+				var moves = expected.getAvailableMoves().stream()
+						.sorted(Comparator.comparing(Object::toString))
+						.collect(ImmutableList.toImmutableList());
+				Move move = moves.get(random.nextInt(moves.size()));
+				try {
+					expected = expected.advance(move);
+				} catch (IllegalArgumentException e) { break; }
+				search.makeMove(move);
+				if (move.commencedBy().isMrX()) mrXLocation = move.accept(new FunctionalVisitor<>(
+						m -> m.destination, m -> m.destination2));
+			}
+			while (search.depth() > 0) search.unmakeMove();
+			assertThat(search.getAvailableMoves()).containsExactlyInAnyOrderElementsOf(initialMoves);
+			assertThat(search.mrXLocation()).isEqualTo(mrX.location());
+			assertThat(search.zobristKey()).isEqualTo(initialKey);
+		}
+	}
+
+	@Test public void testZobristKeyIgnoresDetectiveMoveOrder() {
+		var mrX = new Player(Piece.MrX.MRX, ScotlandYard.defaultMrXTickets(), 35);
+		var detectives = ImmutableList.of(
+				new Player(Piece.Detective.RED, ScotlandYard.defaultDetectiveTickets(), 50),
+				new Player(Piece.Detective.BLUE, ScotlandYard.defaultDetectiveTickets(), 91));
+		var mrXMove = new Move.SingleMove(Piece.MrX.MRX, 35, ScotlandYard.Ticket.TAXI, 36);
+		var red = new Move.SingleMove(Piece.Detective.RED, 50, ScotlandYard.Ticket.TAXI, 49);
+		var blue = new Move.SingleMove(Piece.Detective.BLUE, 91, ScotlandYard.Ticket.TAXI, 90);
+
+		var first = SearchState.of(setup, mrX, detectives);
+		first.makeMove(mrXMove);
+		first.makeMove(red);
+		long afterRed = first.zobristKey();
+		first.makeMove(blue);
+		var second = SearchState.of(setup, mrX, detectives);
+		second.makeMove(mrXMove);
+		second.makeMove(blue);
+		second.makeMove(red);
+		assertThat(first.zobristKey()).isEqualTo(second.zobristKey());
+		assertThat(first.zobristKey()).isNotEqualTo(afterRed);
+
+		GameState state = new BitboardGameStateFactory().build(setup, mrX, detectives)
+				.advance(mrXMove).advance(blue).advance(red);
+		assertThat(((Zobrist.Keyed) state).zobristKey()).isEqualTo(first.zobristKey());
+	}
+
+	@Test public void testCopyIsIndependent() {
+		var search = SearchState.of(setup,
+				new Player(Piece.MrX.MRX, ScotlandYard.defaultMrXTickets(), 35),
+				ImmutableList.of(new Player(Piece.Detective.RED,
+						ScotlandYard.defaultDetectiveTickets(), 50)));
+		var copy = search.copy();
+		search.makeMove(new Move.SingleMove(Piece.MrX.MRX, 35, ScotlandYard.Ticket.TAXI, 36));
+		assertThat(copy.mrXLocation()).isEqualTo(35);
+		assertThat(copy.isMrXTurn()).isTrue();
+		assertThat(search.isMrXTurn()).isFalse();
+	}
+
+	@Test public void testIllegalMoveAndEmptyUnmakeShouldThrow() {
+		var search = SearchState.of(setup,
+				new Player(Piece.MrX.MRX, ScotlandYard.defaultMrXTickets(), 35),
+				ImmutableList.of(new Player(Piece.Detective.RED,
+						ScotlandYard.defaultDetectiveTickets(), 50)));
+		assertThatThrownBy(() -> search.makeMove(new Move.SingleMove(Piece.Detective.RED, 50,
+				ScotlandYard.Ticket.TAXI, 49))).isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(search::unmakeMove).isInstanceOf(IllegalStateException.class);
+	}
+}
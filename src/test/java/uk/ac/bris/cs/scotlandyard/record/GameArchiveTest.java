@@ -0,0 +1,199 @@
+package uk.ac.bris.cs.scotlandyard.record;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.IntMove;
+import uk.ac.bris.cs.scotlandyard.model.MyGameStateFactory;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * Checks that {@link GameArchive}'s parallel streams see every game and move exactly once, in
+ * order, whatever the segment size
+ */
+public class GameArchiveTest {
+
+	private static final int GAMES = 60;
+
+	private static GameSetup setup;
+	private static List<Replay> games;
+	private static List<ImmutableSet<Piece>> winners;
+
+	@Rule public TemporaryFolder folder = new TemporaryFolder();
+
+	@BeforeClass public static void setUp() throws IOException {
+		setup = new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES);
+		games = new ArrayList<>();
+		winners = new ArrayList<>();
+		for (int i = 0; i < GAMES; i++) {
+			Replay game = ReplayTest.play(setup, i);
+			games.add(game);
+			winners.add(game.state(new MyGameStateFactory(), game.plies()).getWinner());
+		}
+	}
+
+	private Path write() throws IOException {
+		Path file = folder.getRoot().toPath().resolve("games.archive");
+		try (var writer = GameArchive.create(file, setup)) {
+			for (int i = 0; i < GAMES; i++) {
+				// the last game is cut short to record an unfinished one
+				if (i == GAMES - 1) writer.write(Replay.of(setup, games.get(i).mrX(), games.get(i).detectives(),
+						Arrays.copyOf(games.get(i).moves(), 3)), ImmutableSet.of());
+				else writer.write(games.get(i), winners.get(i));
+			}
+		}
+		return file;
+	}
+
+	@Test public void testGamesMatchWhatWasWritten() throws IOException {
+		var archive = GameArchive.open(write(), setup.graph);
+		assertThat(archive.size()).isEqualTo(GAMES);
+		for (int i = 0; i < GAMES - 1; i++) {
+			var game = archive.game(i);
+			ReplayTest.assertSameGame(game.replay(), games.get(i));
+			assertThat(game.mrXStart()).isEqualTo(games.get(i).mrX().location());
+			assertThat(game.piece(1)).isEqualTo(games.get(i).detectives().get(0).piece());
+			assertThat(game.tickets(0, Ticket.SECRET))
+					.isEqualTo(games.get(i).mrX().tickets().get(Ticket.SECRET));
+			assertThat(game.mrXWon()).isEqualTo(winners.get(i).contains(Piece.MrX.MRX));
+			assertThat(game.detectivesWon()).isEqualTo(!winners.get(i).contains(Piece.MrX.MRX));
+		}
+		var unfinished = archive.game(GAMES - 1);
+		assertThat(unfinished.isFinished()).isFalse();
+		assertThat(unfinished.plies()).isEqualTo(3);
+	}
+
+	@Test public void testParallelScansSeeEveryGameAndMove() throws IOException {
+		Path file = write();
+		// small segments put a few games in each buffer
+		for (long segment : new long[]{GameArchive.SEGMENT_BYTES, 600}) {
+			var archive = GameArchive.open(file, setup.graph, segment);
+			assertThat(archive.games().mapToInt(GameArchive.Game::index).toArray())
+					.isEqualTo(IntStream.range(0, GAMES).toArray());
+
+			int[] expected = games.stream().limit(GAMES - 1).flatMapToInt(g -> Arrays.stream(g.moves())).toArray();
+			int[] moves = archive.plies().filter(p -> p.game().index() < GAMES - 1)
+					.mapToInt(GameArchive.Ply::move).toArray();
+			assertThat(moves).isEqualTo(expected);
+
+			long mrXWins = archive.games().filter(GameArchive.Game::mrXWon).count();
+			assertThat(mrXWins).isEqualTo(winners.stream().limit(GAMES - 1)
+					.filter(w -> w.contains(Piece.MrX.MRX)).count());
+		}
+		// a segment too small for any game
+		assertThatThrownBy(() -> GameArchive.open(file, setup.graph, 1)).isInstanceOf(IOException.class);
+	}
+
+	@Test public void testRoundCountsMrXsLogEntries() throws IOException {
+		var archive = GameArchive.open(write(), setup.graph);
+		// secret tickets used by MrX in each round, as a bot training query would count them
+		int[] secrets = archive.plies().filter(GameArchive.Ply::isMrX).collect(
+				() -> new int[setup.moves.size()],
+				(counts, ply) -> {
+					if (ply.ticket() == Ticket.SECRET) counts[ply.round()]++;
+					if (ply.isDouble() && IntMove.ticket2(ply.move()) == Ticket.SECRET) counts[ply.round() + 1]++;
+				},
+				(a, b) -> Arrays.setAll(a, i -> a[i] + b[i]));
+
+		int[] expected = new int[setup.moves.size()];
+		for (int i = 0; i < GAMES; i++) {
+			var log = archive.game(i).replay().state(new MyGameStateFactory(), archive.game(i).plies())
+					.getMrXTravelLog();
+			for (int round = 0; round < log.size(); round++) {
+				if (log.get(round).ticket() == Ticket.SECRET) expected[round]++;
+			}
+		}
+		assertThat(secrets).isEqualTo(expected);
+	}
+
+	@Test public void testWinRateByStart() throws IOException {
+		var archive = GameArchive.open(write(), setup.graph);
+		var wins = archive.games().filter(GameArchive.Game::isFinished).collect(
+				Collectors.groupingByConcurrent(GameArchive.Game::mrXStart,
+						Collectors.averagingInt(g -> g.mrXWon() ? 1 : 0)));
+
+		Map<Integer, int[]> expected = new HashMap<>();
+		for (int i = 0; i < GAMES - 1; i++) {
+			int[] counts = expected.computeIfAbsent(games.get(i).mrX().location(), start -> new int[2]);
+			if (winners.get(i).contains(Piece.MrX.MRX)) counts[0]++;
+			counts[1]++;
+		}
+		assertThat(wins.keySet()).containsExactlyInAnyOrderElementsOf(expected.keySet());
+		expected.forEach((start, counts) ->
+				assertThat(wins.get(start)).isCloseTo((double) counts[0] / counts[1], within(1e-9)));
+	}
+
+	@Test public void testUnfinishedArchiveThrows() throws IOException {
+		Path file = folder.getRoot().toPath().resolve("games.archive");
+		var writer = GameArchive.create(file, setup);
+		writer.write(games.get(0), winners.get(0));
+		assertThatThrownBy(() -> GameArchive.open(file, setup.graph)).isInstanceOf(IOException.class);
+		writer.close();
+		assertThat(GameArchive.open(file, setup.graph).size()).isEqualTo(1);
+	}
+
+	@Test public void testCorruptTableThrows() throws IOException {
+		Path file = write();
+		byte[] bytes = Files.readAllBytes(file);
+		// the second last game's offset moves past one of its neighbours'; games are much
+		// smaller than the 16kB it moves by
+		bytes[bytes.length - 2 * Long.BYTES - 2] ^= 0x40;
+		Files.write(file, bytes);
+		assertThatThrownBy(() -> GameArchive.open(file, setup.graph)).isInstanceOf(IOException.class);
+	}
+
+	@Test public void testCorruptGameThrowsWhenVisited() throws IOException {
+		Path file = write();
+		byte[] bytes = Files.readAllBytes(file);
+		// the two games before the last are now a byte longer and shorter than their contents
+		bytes[bytes.length - 2 * Long.BYTES - 1] ^= 1;
+		Files.write(file, bytes);
+		var archive = GameArchive.open(file, setup.graph);
+		assertThat(archive.game(0).plies()).isEqualTo(games.get(0).plies());
+		assertThatThrownBy(() -> archive.game(GAMES - 2)).isInstanceOf(IllegalStateException.class);
+		assertThat(archive.game(GAMES - 1).plies()).isEqualTo(3);
+		assertThatThrownBy(() -> archive.games().mapToInt(GameArchive.Game::plies).sum()).isInstanceOf(IllegalStateException.class);
+		assertThatThrownBy(() -> archive.plies().count()).isInstanceOf(IllegalStateException.class);
+	}
+
+	@Test public void testFailedWriteLeavesNoBytes() throws IOException {
+		Path file = folder.getRoot().toPath().resolve("games.archive");
+		Replay game = games.get(0);
+		// ticket counts are stored as bytes
+		var rich = new Player(game.mrX().piece(), ImmutableMap.of(Ticket.TAXI, 300), game.mrX().location());
+		try (var writer = GameArchive.create(file, setup)) {
+			writer.write(game, winners.get(0));
+			assertThatThrownBy(() -> writer.write(Replay.of(setup, rich, game.detectives(), game.moves()), winners.get(0)))
+					.isInstanceOf(IllegalArgumentException.class);
+			writer.write(games.get(1), winners.get(1));
+		}
+		var archive = GameArchive.open(file, setup.graph);
+		assertThat(archive.size()).isEqualTo(2);
+		ReplayTest.assertSameGame(archive.game(0).replay(), games.get(0));
+		ReplayTest.assertSameGame(archive.game(1).replay(), games.get(1));
+	}
+}
@@ -0,0 +1,211 @@
+package uk.ac.bris.cs.scotlandyard.record;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ValueGraphBuilder;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.IntMove;
+import uk.ac.bris.cs.scotlandyard.model.Model;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.MyModelFactory;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Checks that a {@link JournalingModel} recovers its game from a {@link GameJournal}, and that a
+ * torn or corrupt tail is cut off rather than replayed
+ */
+public class GameJournalTest {
+
+	private static GameSetup setup;
+	private static Player mrX;
+	private static ImmutableList<Player> detectives;
+
+	@Rule public TemporaryFolder folder = new TemporaryFolder();
+
+	@BeforeClass public static void setUp() throws IOException {
+		setup = new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES);
+		mrX = new Player(Piece.MrX.MRX, ScotlandYard.defaultMrXTickets(), 35);
+		detectives = ImmutableList.of(
+				new Player(Piece.Detective.RED, ScotlandYard.defaultDetectiveTickets(), 26),
+				new Player(Piece.Detective.BLUE, ScotlandYard.defaultDetectiveTickets(), 94));
+	}
+
+	private JournalingModel create(Path file) throws IOException {
+		return JournalingModel.create(file, new MyModelFactory(), setup, mrX, detectives, 2);
+	}
+
+	private static JournalingModel recover(Path file) throws IOException {
+		return JournalingModel.recover(file, new MyModelFactory(), setup.graph, 2);
+	}
+
+	// the same move every time for the same board
+	private static void move(JournalingModel model) {
+		model.chooseMove(model.getCurrentBoard().getAvailableMoves().stream()
+				.min(Comparator.comparingInt(IntMove::encode)).orElseThrow());
+	}
+
+	private static void assertSameBoard(Board actual, Board expected) {
+		assertThat(actual.getMrXTravelLog()).isEqualTo(expected.getMrXTravelLog());
+		assertThat(actual.getAvailableMoves()).isEqualTo(expected.getAvailableMoves());
+		for (Player detective : detectives) {
+			assertThat(actual.getDetectiveLocation((Piece.Detective) detective.piece()))
+					.isEqualTo(expected.getDetectiveLocation((Piece.Detective) detective.piece()));
+		}
+	}
+
+	private static long headerBytes() {
+		return 3 * Integer.BYTES + GameCodec.SETUP_BYTES + GameCodec.playersBytes(detectives.size() + 1);
+	}
+
+	@Test public void testRecoverReplaysEveryMove() throws IOException {
+		Path file = folder.getRoot().toPath().resolve("game.journal");
+		Board played;
+		try (var model = create(file)) {
+			for (int i = 0; i < 7; i++) move(model);
+			played = model.getCurrentBoard();
+		}
+		try (var recovered = recover(file)) {
+			assertThat(recovered.journaledMoves()).isEqualTo(7);
+			assertSameBoard(recovered.getCurrentBoard(), played);
+		}
+		assertThat(Files.size(file)).isEqualTo(headerBytes() + 7 * 8);
+	}
+
+	@Test public void testRecoveredModelKeepsJournaling() throws IOException {
+		Path file = folder.getRoot().toPath().resolve("game.journal");
+		try (var model = create(file)) {
+			for (int i = 0; i < 3; i++) move(model);
+		}
+		Board played;
+		try (var recovered = recover(file)) {
+			for (int i = 0; i < 3; i++) move(recovered);
+			played = recovered.getCurrentBoard();
+		}
+		try (var recovered = recover(file)) {
+			assertThat(recovered.journaledMoves()).isEqualTo(6);
+			assertSameBoard(recovered.getCurrentBoard(), played);
+		}
+	}
+
+	@Test public void testMovesOfObserversAreJournaledInOrder() throws IOException {
+		Path file = folder.getRoot().toPath().resolve("game.journal");
+		Board played;
+		try (var model = create(file)) {
+			model.registerObserver(new Model.Observer() {
+				@Override public void onModelChanged(@Nonnull Board board, @Nonnull Event event) {
+					// plays the next move before the model has returned from the last one
+					if (event == Event.MOVE_MADE && model.journaledMoves() < 6) move(model);
+				}
+			});
+			move(model);
+			played = model.getCurrentBoard();
+			assertThat(model.journaledMoves()).isEqualTo(6);
+		}
+		try (var recovered = recover(file)) {
+			assertThat(recovered.journaledMoves()).isEqualTo(6);
+			assertSameBoard(recovered.getCurrentBoard(), played);
+		}
+	}
+
+	@Test public void testTornTailIsCutOff() throws IOException {
+		Path file = folder.getRoot().toPath().resolve("game.journal");
+		try (var model = create(file)) {
+			for (int i = 0; i < 4; i++) move(model);
+		}
+		Files.write(file, new byte[]{1, 2, 3, 4, 5}, StandardOpenOption.APPEND);
+		try (var recovered = recover(file)) {
+			assertThat(recovered.journaledMoves()).isEqualTo(4);
+		}
+		assertThat(Files.size(file)).isEqualTo(headerBytes() + 4 * 8);
+	}
+
+	@Test public void testCorruptRecordDropsItAndEverythingAfter() throws IOException {
+		Path file = folder.getRoot().toPath().resolve("game.journal");
+		try (var model = create(file)) {
+			for (int i = 0; i < 5; i++) move(model);
+		}
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			channel.write(ByteBuffer.wrap(new byte[]{(byte) 0xFF}), headerBytes() + 2 * 8 + 1);
+		}
+		try (var recovered = recover(file)) {
+			assertThat(recovered.journaledMoves()).isEqualTo(2);
+		}
+	}
+
+	@Test public void testSwappedRecordsFailTheirChecksums() throws IOException {
+		Path file = folder.getRoot().toPath().resolve("game.journal");
+		try (var model = create(file)) {
+			for (int i = 0; i < 4; i++) move(model);
+		}
+		byte[] bytes = Files.readAllBytes(file);
+		int first = (int) headerBytes() + 8, second = first + 8;
+		for (int i = 0; i < 8; i++) {
+			byte b = bytes[first + i];
+			bytes[first + i] = bytes[second + i];
+			bytes[second + i] = b;
+		}
+		Files.write(file, bytes);
+		try (var recovered = recover(file)) {
+			assertThat(recovered.journaledMoves()).isEqualTo(1);
+		}
+	}
+
+	@Test public void testCorruptHeaderThrows() throws IOException {
+		Path file = folder.getRoot().toPath().resolve("game.journal");
+		create(file).close();
+		byte[] bytes = Files.readAllBytes(file);
+		bytes[bytes.length - 6] ^= 1;
+		Files.write(file, bytes);
+		assertThatThrownBy(() -> recover(file)).isInstanceOf(IOException.class);
+	}
+
+	@Test public void testOtherGraphThrows() throws IOException {
+		Path file = folder.getRoot().toPath().resolve("game.journal");
+		create(file).close();
+		var other = ValueGraphBuilder.undirected()
+				.<Integer, ImmutableSet<Transport>>immutable()
+				.putEdgeValue(1, 2, ImmutableSet.of(Transport.TAXI))
+				.build();
+		assertThatThrownBy(() -> JournalingModel.recover(file, new MyModelFactory(), other, 1))
+				.isInstanceOf(IOException.class);
+	}
+
+	@Test public void testIllegalMoveIsNotJournaled() throws IOException {
+		Path file = folder.getRoot().toPath().resolve("game.journal");
+		try (var model = create(file)) {
+			move(model);
+			Move illegal = new Move.SingleMove(Piece.MrX.MRX, 1, ScotlandYard.Ticket.TAXI, 8);
+			assertThatThrownBy(() -> model.chooseMove(illegal)).isInstanceOf(IllegalArgumentException.class);
+			assertThat(model.journaledMoves()).isEqualTo(1);
+		}
+	}
+
+	@Test public void testBadSyncIntervalThrows() {
+		Path file = folder.getRoot().toPath().resolve("game.journal");
+		assertThatThrownBy(() -> JournalingModel.create(file, new MyModelFactory(), setup, mrX, detectives, 0))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+}
@@ -0,0 +1,139 @@
+package uk.ac.bris.cs.scotlandyard.record;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ValueGraphBuilder;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.IntMove;
+import uk.ac.bris.cs.scotlandyard.model.LogEntry;
+import uk.ac.bris.cs.scotlandyard.model.MyGameStateFactory;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Checks that every ply rebuilt by {@link IndexedReplay} from a checkpoint matches replaying the
+ * game from the start
+ */
+public class IndexedReplayTest {
+
+	private static GameSetup setup;
+
+	@Rule public TemporaryFolder folder = new TemporaryFolder();
+
+	@BeforeClass public static void setUp() throws IOException {
+		setup = new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES);
+	}
+
+	private static void assertSameState(Board.GameState actual, Board.GameState expected) {
+		assertThat(actual.getMrXTravelLog()).isEqualTo(expected.getMrXTravelLog());
+		assertThat(actual.getAvailableMoves()).isEqualTo(expected.getAvailableMoves());
+		assertThat(actual.getWinner()).isEqualTo(expected.getWinner());
+		assertThat(actual.getPlayers()).containsExactlyInAnyOrderElementsOf(expected.getPlayers());
+		for (Piece piece : expected.getPlayers()) {
+			if (piece.isDetective()) assertThat(actual.getDetectiveLocation((Piece.Detective) piece))
+					.isEqualTo(expected.getDetectiveLocation((Piece.Detective) piece));
+			for (Ticket ticket : Ticket.values()) {
+				assertThat(actual.getPlayerTickets(piece).orElseThrow().getCount(ticket))
+						.isEqualTo(expected.getPlayerTickets(piece).orElseThrow().getCount(ticket));
+			}
+		}
+	}
+
+	private static void assertEveryPly(IndexedReplay indexed, Replay game) {
+		assertThat(indexed.plies()).isEqualTo(game.plies());
+		Board.GameState expected = new MyGameStateFactory().build(setup, game.mrX(), game.detectives());
+		for (int ply = 0; ply <= game.plies(); ply++) {
+			assertSameState(indexed.state(ply), expected);
+			if (ply < game.plies()) expected = expected.advance(IntMove.decode(game.move(ply)));
+		}
+	}
+
+	@Test public void testEveryPlyMatchesReplayingFromTheStart() {
+		for (int interval = 1; interval <= 3; interval++) {
+			for (long seed = 0; seed < 5; seed++) {
+				Replay game = ReplayTest.play(setup, seed);
+				assertEveryPly(IndexedReplay.of(game, interval), game);
+			}
+		}
+	}
+
+	@Test public void testSeeksFromTheLastCheckpointAtMostOneIntervalBack() {
+		Replay game = ReplayTest.play(setup, 3);
+		var indexed = IndexedReplay.of(game, 2);
+		int players = game.detectives().size() + 1;
+		for (int ply = 0; ply <= game.plies(); ply++) {
+			int checkpoint = indexed.checkpointBefore(ply);
+			assertThat(checkpoint).isLessThanOrEqualTo(ply);
+			assertThat(ply - checkpoint).isLessThan(2 * players);
+			assertThat(checkpoint == 0 || IntMove.piece(game.move(checkpoint)).isMrX()).isTrue();
+		}
+	}
+
+	@Test public void testFileRoundTrip() throws IOException {
+		Path file = folder.getRoot().toPath().resolve("game.indexed");
+		Replay game = ReplayTest.play(setup, 11);
+		try (OutputStream out = Files.newOutputStream(file)) {
+			IndexedReplay.of(game).write(out);
+		}
+		var indexed = IndexedReplay.open(file, setup.graph);
+		ReplayTest.assertSameGame(indexed.replay(), game);
+		assertEveryPly(indexed, game);
+	}
+
+	@Test public void testCorruptDataThrows() throws IOException {
+		var out = new ByteArrayOutputStream();
+		IndexedReplay.of(ReplayTest.play(setup, 2)).write(out);
+		byte[] bytes = out.toByteArray();
+		assertThatThrownBy(() -> IndexedReplay.read(ByteBuffer.wrap(bytes, 0, bytes.length - 1), setup.graph))
+				.isInstanceOf(IOException.class);
+		var other = ValueGraphBuilder.undirected()
+				.<Integer, ImmutableSet<Transport>>immutable()
+				.putEdgeValue(1, 2, ImmutableSet.of(Transport.TAXI))
+				.build();
+		assertThatThrownBy(() -> IndexedReplay.read(ByteBuffer.wrap(bytes), other))
+				.isInstanceOf(IOException.class);
+	}
+
+	@Test public void testResumeChecksLikeBuild() {
+		Replay game = ReplayTest.play(setup, 4);
+		var factory = new MyGameStateFactory();
+		var hidden = ImmutableList.of(LogEntry.hidden(Ticket.TAXI), LogEntry.hidden(Ticket.TAXI),
+				LogEntry.hidden(Ticket.TAXI));
+		// the third round reveals MrX
+		assertThat(setup.moves.get(2)).isTrue();
+		assertThatThrownBy(() -> factory.resume(setup, hidden, game.mrX(), game.detectives()))
+				.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> factory.resume(setup, null, game.mrX(), game.detectives()))
+				.isInstanceOf(NullPointerException.class);
+		assertThatThrownBy(() -> factory.resume(setup, ImmutableList.of(), null, game.detectives()))
+				.isInstanceOf(NullPointerException.class);
+		assertThatThrownBy(() -> factory.resume(setup, ImmutableList.of(), game.mrX(), null))
+				.isInstanceOf(NullPointerException.class);
+		assertThat(factory.resume(setup, hidden.subList(0, 2), game.mrX(), game.detectives())
+				.getMrXTravelLog()).hasSize(2);
+	}
+
+	@Test public void testBadIntervalThrows() {
+		assertThatThrownBy(() -> IndexedReplay.of(ReplayTest.play(setup, 1), 0))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+}
@@ -0,0 +1,156 @@
+package uk.ac.bris.cs.scotlandyard.record;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ValueGraphBuilder;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.IntMove;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.MyGameStateFactory;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Checks that {@link ReplayReader} reads back what {@link ReplayWriter} wrote and that a
+ * {@link Replay} rebuilds every ply of its game
+ */
+public class ReplayTest {
+
+	private static GameSetup setup;
+
+	@Rule public TemporaryFolder folder = new TemporaryFolder();
+
+	@BeforeClass public static void setUp() throws IOException {
+		setup = new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES);
+	}
+
+	// a game of random moves, played to the end; moves are sorted so the game does not depend on
+	// the available moves' hash order
+	static Replay play(GameSetup setup, long seed) {
+		var random = new Random(seed);
+		var mrX = new Player(Piece.MrX.MRX, ScotlandYard.defaultMrXTickets(),
+				ScotlandYard.MRX_LOCATIONS.get(random.nextInt(ScotlandYard.MRX_LOCATIONS.size())));
+		var detectives = ImmutableList.of(
+				new Player(Piece.Detective.RED, ScotlandYard.defaultDetectiveTickets(), 26),
+				new Player(Piece.Detective.GREEN, ScotlandYard.defaultDetectiveTickets(), 94),
+				new Player(Piece.Detective.BLUE, ScotlandYard.defaultDetectiveTickets(), 155));
+		Board.GameState state = new MyGameStateFactory().build(setup, mrX, detectives);
+		List<Move> moves = new ArrayList<>();
+		while (state.getWinner().isEmpty()) {
+			int[] available = state.getAvailableMoves().stream().mapToInt(IntMove::encode).sorted().toArray();
+			Move move = IntMove.decode(available[random.nextInt(available.length)]);
+			moves.add(move);
+			state = state.advance(move);
+		}
+		return Replay.of(setup, mrX, detectives, moves);
+	}
+
+	static void assertSameGame(Replay actual, Replay expected) {
+		assertThat(actual.moves()).isEqualTo(expected.moves());
+		var actualPlayers = ImmutableList.<Player>builder().add(actual.mrX()).addAll(actual.detectives()).build();
+		var expectedPlayers = ImmutableList.<Player>builder().add(expected.mrX()).addAll(expected.detectives()).build();
+		assertThat(actualPlayers).hasSameSizeAs(expectedPlayers);
+		for (int i = 0; i < actualPlayers.size(); i++) {
+			assertThat(actualPlayers.get(i).piece()).isEqualTo(expectedPlayers.get(i).piece());
+			assertThat(actualPlayers.get(i).location()).isEqualTo(expectedPlayers.get(i).location());
+			assertThat(actualPlayers.get(i).tickets()).isEqualTo(expectedPlayers.get(i).tickets());
+		}
+	}
+
+	@Test public void testReadsBackEveryGame() throws IOException {
+		Path file = folder.getRoot().toPath().resolve("games.replay");
+		List<Replay> games = new ArrayList<>();
+		long bytes = ReplayWriter.HEADER_BYTES;
+		try (var writer = ReplayWriter.open(file, setup)) {
+			for (int i = 0; i < 50; i++) {
+				Replay game = play(setup, i);
+				games.add(game);
+				writer.write(game);
+				bytes += ReplayWriter.gameBytes(4, game.plies());
+			}
+		}
+		assertThat(Files.size(file)).isEqualTo(bytes);
+		try (var reader = ReplayReader.open(file, setup.graph)) {
+			assertThat(reader.setup()).isEqualTo(setup);
+			for (Replay expected : games) {
+				Replay actual = reader.read();
+				assertThat(actual).isNotNull();
+				assertSameGame(actual, expected);
+			}
+			assertThat(reader.read()).isNull();
+		}
+	}
+
+	@Test public void testStateMatchesPlayingTheMoves() {
+		Replay game = play(setup, 7);
+		Board.GameState state = new MyGameStateFactory().build(setup, game.mrX(), game.detectives());
+		for (int ply = 0; ply <= game.plies(); ply++) {
+			Board.GameState replayed = game.state(new MyGameStateFactory(), ply);
+			assertThat(replayed.getMrXTravelLog()).isEqualTo(state.getMrXTravelLog());
+			assertThat(replayed.getAvailableMoves()).isEqualTo(state.getAvailableMoves());
+			if (ply < game.plies()) state = state.advance(IntMove.decode(game.move(ply)));
+		}
+		assertThat(game.state(new MyGameStateFactory(), game.plies()).getWinner()).isNotEmpty();
+		assertThatThrownBy(() -> game.state(new MyGameStateFactory(), game.plies() + 1))
+				.isInstanceOf(IndexOutOfBoundsException.class);
+	}
+
+	@Test public void testEmptyStreamHasNoGames() throws IOException {
+		Path file = folder.getRoot().toPath().resolve("games.replay");
+		ReplayWriter.open(file, setup).close();
+		try (var reader = ReplayReader.open(file, setup.graph)) {
+			assertThat(reader.read()).isNull();
+		}
+	}
+
+	@Test public void testTruncatedGameThrows() throws IOException {
+		Path file = folder.getRoot().toPath().resolve("games.replay");
+		try (var writer = ReplayWriter.open(file, setup)) {
+			writer.write(play(setup, 1));
+		}
+		byte[] bytes = Files.readAllBytes(file);
+		Files.write(file, Arrays.copyOf(bytes, bytes.length - 3));
+		try (var reader = ReplayReader.open(file, setup.graph)) {
+			assertThatThrownBy(reader::read).isInstanceOf(IOException.class);
+		}
+	}
+
+	@Test public void testOtherGraphThrows() throws IOException {
+		Path file = folder.getRoot().toPath().resolve("games.replay");
+		ReplayWriter.open(file, setup).close();
+		var other = ValueGraphBuilder.undirected()
+				.<Integer, ImmutableSet<Transport>>immutable()
+				.putEdgeValue(1, 2, ImmutableSet.of(Transport.TAXI))
+				.build();
+		assertThatThrownBy(() -> ReplayReader.open(file, other)).isInstanceOf(IOException.class);
+	}
+
+	@Test public void testOtherSetupThrows() throws IOException {
+		Path file = folder.getRoot().toPath().resolve("games.replay");
+		var shorter = new GameSetup(setup.graph, ImmutableList.of(true, false, true));
+		try (var writer = ReplayWriter.open(file, shorter)) {
+			assertThatThrownBy(() -> writer.write(play(setup, 1)))
+					.isInstanceOf(IllegalArgumentException.class);
+		}
+	}
+}